@@ -0,0 +1,135 @@
+package okta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Named accounts selected per request by marker header, host and path prefix. The registry
+ * keeps an immutable host-to-account index that is rebuilt on every change and swapped in
+ * atomically, so lookups from Scanner threads are lock-free map reads.
+ */
+public class AccountRegistry {
+    /**
+     * Request header naming the account explicitly. It is removed before the request is sent.
+     */
+    public static final String MARKER_HEADER = "X-Okta-Account";
+
+    private final AtomicReference<Index> index = new AtomicReference<>(new Index(Collections.emptyList()));
+
+    public void put(OktaAccount account) {
+        index.updateAndGet(current -> {
+            List<OktaAccount> accounts = new ArrayList<>(current.accounts);
+            accounts.removeIf(existing -> existing.getName().equals(account.getName()));
+            accounts.add(account);
+            return new Index(accounts);
+        });
+    }
+
+    public void remove(String name) {
+        index.updateAndGet(current -> {
+            List<OktaAccount> accounts = new ArrayList<>(current.accounts);
+            accounts.removeIf(existing -> existing.getName().equals(name));
+            return new Index(accounts);
+        });
+    }
+
+    /**
+     * @return an immutable view that stays identical until the registry changes
+     */
+    public List<OktaAccount> getAccounts() {
+        return index.get().accounts;
+    }
+
+    public OktaAccount byName(String name) {
+        return name == null ? null : index.get().byName.get(name.trim());
+    }
+
+    /**
+     * Tries exact-host accounts first, then wildcard accounts from the most to the least specific
+     * suffix, then accounts without hosts. Within each group the longest path prefix wins.
+     *
+     * @return the first account whose path prefix matches, or null
+     */
+    public OktaAccount resolve(String host, String path) {
+        Index current = index.get();
+        if (current.accounts.isEmpty()) {
+            return null;
+        }
+
+        OktaAccount[] candidates = current.candidatesFor(host == null ? "" : host.toLowerCase(Locale.ROOT));
+        for (OktaAccount candidate : candidates) {
+            if (candidate.matchesPath(path)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static final class Index {
+        private static final Comparator<OktaAccount> LONGEST_PREFIX_FIRST =
+                Comparator.comparingInt((OktaAccount account) -> account.getPathPrefix().length()).reversed();
+
+        final List<OktaAccount> accounts;
+        final Map<String, OktaAccount> byName = new HashMap<>();
+        // Exact hosts map to themselves, wildcard hosts are keyed by their ".suffix"
+        final Map<String, OktaAccount[]> byHost = new HashMap<>();
+        final OktaAccount[] anyHost;
+
+        Index(List<OktaAccount> accounts) {
+            this.accounts = Collections.unmodifiableList(accounts);
+
+            List<OktaAccount> unrestricted = new ArrayList<>();
+            Map<String, List<OktaAccount>> grouped = new HashMap<>();
+            for (OktaAccount account : accounts) {
+                byName.put(account.getName(), account);
+                if (account.getHosts().isEmpty()) {
+                    unrestricted.add(account);
+                }
+                for (String host : account.getHosts()) {
+                    String key = host.startsWith("*.") ? host.substring(1) : host;
+                    grouped.computeIfAbsent(key, k -> new ArrayList<>()).add(account);
+                }
+            }
+
+            unrestricted.sort(LONGEST_PREFIX_FIRST);
+            this.anyHost = unrestricted.toArray(new OktaAccount[0]);
+
+            // Each host key carries the whole fallback chain: its own accounts, those of every
+            // less specific wildcard suffix, then the unrestricted ones
+            for (Map.Entry<String, List<OktaAccount>> entry : grouped.entrySet()) {
+                entry.getValue().sort(LONGEST_PREFIX_FIRST);
+            }
+            for (Map.Entry<String, List<OktaAccount>> entry : grouped.entrySet()) {
+                String key = entry.getKey();
+                Set<OktaAccount> chain = new LinkedHashSet<>(entry.getValue());
+                for (int dot = key.indexOf('.', 1); dot >= 0; dot = key.indexOf('.', dot + 1)) {
+                    chain.addAll(grouped.getOrDefault(key.substring(dot), Collections.emptyList()));
+                }
+                chain.addAll(unrestricted);
+                byHost.put(key, chain.toArray(new OktaAccount[0]));
+            }
+        }
+
+        OktaAccount[] candidatesFor(String host) {
+            OktaAccount[] exact = byHost.get(host);
+            if (exact != null) {
+                return exact;
+            }
+            for (int dot = host.indexOf('.'); dot >= 0; dot = host.indexOf('.', dot + 1)) {
+                OktaAccount[] wildcard = byHost.get(host.substring(dot));
+                if (wildcard != null) {
+                    return wildcard;
+                }
+            }
+            return anyHost;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package okta;
+
+import java.util.Arrays;
+
+/**
+ * RFC 4648 Base32 decoder for authenticator shared secrets. Padding, whitespace and dashes
+ * are ignored and letters are accepted in either case, matching how secrets are usually
+ * displayed to users.
+ */
+public final class Base32 {
+    private static final int[] LOOKUP = new int[128];
+
+    static {
+        Arrays.fill(LOOKUP, -1);
+        for (int i = 0; i < 26; i++) {
+            LOOKUP['A' + i] = i;
+            LOOKUP['a' + i] = i;
+        }
+        for (int i = 0; i < 6; i++) {
+            LOOKUP['2' + i] = 26 + i;
+        }
+    }
+
+    private Base32() {
+    }
+
+    public static byte[] decode(String encoded) {
+        byte[] output = new byte[encoded.length() * 5 / 8];
+        int buffer = 0;
+        int bitsLeft = 0;
+        int length = 0;
+
+        for (int i = 0; i < encoded.length(); i++) {
+            char c = encoded.charAt(i);
+            if (c == '=' || c == '-' || Character.isWhitespace(c)) {
+                continue;
+            }
+            int value = c < LOOKUP.length ? LOOKUP[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid Base32 character: '" + c + "'");
+            }
+
+            buffer = (buffer << 5) | value;
+            bitsLeft += 5;
+            if (bitsLeft >= 8) {
+                bitsLeft -= 8;
+                output[length++] = (byte) (buffer >> bitsLeft);
+            }
+        }
+
+        return length == output.length ? output : Arrays.copyOf(output, length);
+    }
+}
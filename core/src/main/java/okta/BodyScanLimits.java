@@ -0,0 +1,81 @@
+package okta;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Bounds the regex fallback on request bodies: how many bytes of a body, or of each multipart
+ * part, are scanned, and optionally which multipart parts are scanned at all. File uploads
+ * and binary or compressed content are never scanned.
+ */
+public final class BodyScanLimits {
+    public static final int DEFAULT_MAX_SCAN_BYTES = 256 * 1024;
+    public static final int MAX_SCAN_BYTES_LIMIT = 64 * 1024 * 1024;
+    public static final BodyScanLimits DEFAULT = new BodyScanLimits(DEFAULT_MAX_SCAN_BYTES, Collections.emptyList());
+
+    private static final List<String> BINARY_TYPE_PREFIXES = Arrays.asList(
+            "image/", "audio/", "video/", "font/",
+            "application/octet-stream", "application/zip", "application/gzip", "application/x-gzip",
+            "application/pdf", "application/x-protobuf", "application/protobuf", "application/grpc",
+            "application/x-msdownload", "application/vnd.ms-", "application/x-7z", "application/x-tar");
+
+    private final int maxScanBytes;
+    private final Set<String> partNames;
+
+    /**
+     * @param maxScanBytes how many bytes of the body, or of each multipart part, are scanned
+     * @param partNames    multipart parts to scan; empty means every text part
+     * @throws IllegalArgumentException if the window is not between 1 byte and 64 MB
+     */
+    public BodyScanLimits(int maxScanBytes, Collection<String> partNames) {
+        if (maxScanBytes < 1 || maxScanBytes > MAX_SCAN_BYTES_LIMIT) {
+            throw new IllegalArgumentException("Scan window must be between 1 byte and " + MAX_SCAN_BYTES_LIMIT / (1024 * 1024) + " MB.");
+        }
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : partNames) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        this.maxScanBytes = maxScanBytes;
+        this.partNames = Collections.unmodifiableSet(names);
+    }
+
+    public int getMaxScanBytes() {
+        return maxScanBytes;
+    }
+
+    public Set<String> getPartNames() {
+        return partNames;
+    }
+
+    public boolean scansPart(String name) {
+        return partNames.isEmpty() || partNames.contains(name);
+    }
+
+    /**
+     * @return whether a Content-Type value names content that never carries a TOTP field
+     */
+    public static boolean isBinaryContentType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.trim().toLowerCase(Locale.ROOT);
+        for (String prefix : BINARY_TYPE_PREFIXES) {
+            if (type.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return maxScanBytes / 1024 + " KB" + (partNames.isEmpty() ? "" : ", parts " + String.join(", ", partNames));
+    }
+}
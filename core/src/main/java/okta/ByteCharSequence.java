@@ -0,0 +1,53 @@
+package okta;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A read-only {@link CharSequence} view over a byte range, one char per byte as in ISO-8859-1.
+ * Lets regexes run over request bytes without decoding them into a String first; offsets of a
+ * match are byte offsets into the range.
+ */
+public final class ByteCharSequence implements CharSequence {
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    public ByteCharSequence(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    public ByteCharSequence(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " outside " + bytes.length + " bytes");
+        }
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside " + length + " chars");
+        }
+        return (char) (bytes[offset + index] & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range " + start + "-" + end + " outside " + length + " chars");
+        }
+        return new ByteCharSequence(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+}
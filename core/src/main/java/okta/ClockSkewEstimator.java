@@ -0,0 +1,119 @@
+package okta;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates how far the local clock is from servers' clocks using the {@code Date} headers of
+ * their responses. Each sample is the header time, taken as the middle of its one-second
+ * resolution, minus the local receive time; samples are smoothed per host with an exponential
+ * moving average. Hosts without enough samples of their own fall back to the estimate over all
+ * Okta hosts, then to the estimate over every host.
+ */
+public class ClockSkewEstimator {
+    /**
+     * Samples further off than this come from caches or broken servers and are ignored.
+     */
+    public static final long MAX_ABS_OFFSET_MILLIS = 10 * 60 * 1000L;
+    public static final int MIN_SAMPLES = 3;
+    private static final double SMOOTHING = 0.2;
+    private static final long DATE_RESOLUTION_MILLIS = 1000L;
+    private static final int MAX_HOSTS = 512;
+    private static final String[] OKTA_DOMAINS = {".okta.com", ".oktapreview.com", ".okta-emea.com", ".okta-gov.com", ".okta.mil"};
+
+    /**
+     * A smoothed offset: milliseconds to add to the local clock to get the server's time.
+     */
+    public static final class Estimate {
+        private double offsetMillis;
+        private long samples;
+
+        private synchronized void add(long offset) {
+            offsetMillis = samples == 0 ? offset : offsetMillis + SMOOTHING * (offset - offsetMillis);
+            samples++;
+        }
+
+        public synchronized long getOffsetMillis() {
+            return Math.round(offsetMillis);
+        }
+
+        public synchronized long getSamples() {
+            return samples;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Estimate> hosts = new ConcurrentHashMap<>();
+    private volatile Estimate okta = new Estimate();
+    private volatile Estimate overall = new Estimate();
+
+    public static boolean isOktaHost(String host) {
+        String lower = host.toLowerCase(Locale.ROOT);
+        for (String domain : OKTA_DOMAINS) {
+            if (lower.endsWith(domain)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param serverDateMillis the response's {@code Date} header
+     * @param receivedAtMillis local time the response arrived
+     * @return whether the sample was used
+     */
+    public boolean record(String host, long serverDateMillis, long receivedAtMillis) {
+        long offset = serverDateMillis + DATE_RESOLUTION_MILLIS / 2 - receivedAtMillis;
+        if (Math.abs(offset) > MAX_ABS_OFFSET_MILLIS) {
+            return false;
+        }
+
+        String key = host.toLowerCase(Locale.ROOT);
+        Estimate estimate = hosts.get(key);
+        if (estimate == null && hosts.size() < MAX_HOSTS) {
+            estimate = hosts.computeIfAbsent(key, k -> new Estimate());
+        }
+        if (estimate != null) {
+            estimate.add(offset);
+        }
+        if (isOktaHost(key)) {
+            okta.add(offset);
+        }
+        overall.add(offset);
+        return true;
+    }
+
+    /**
+     * @param host the host a code is meant for, or null for no particular host
+     * @return milliseconds to add to the local clock, or 0 without enough samples
+     */
+    public long offsetFor(String host) {
+        Estimate estimate = host == null ? null : hosts.get(host.toLowerCase(Locale.ROOT));
+        if (estimate != null && estimate.getSamples() >= MIN_SAMPLES) {
+            return estimate.getOffsetMillis();
+        }
+        Estimate fallback = getReference();
+        return fallback.getSamples() >= MIN_SAMPLES ? fallback.getOffsetMillis() : 0L;
+    }
+
+    /**
+     * @return the Okta estimate if there is one, otherwise the estimate over every host
+     */
+    public Estimate getReference() {
+        Estimate oktaEstimate = okta;
+        return oktaEstimate.getSamples() >= MIN_SAMPLES ? oktaEstimate : overall;
+    }
+
+    public Estimate getOkta() {
+        return okta;
+    }
+
+    public Estimate getOverall() {
+        return overall;
+    }
+
+    public void clear() {
+        hosts.clear();
+        okta = new Estimate();
+        overall = new Estimate();
+    }
+}
@@ -0,0 +1,177 @@
+package okta;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands out each TOTP window's code at most a fixed number of times, since Okta rejects a
+ * code it has already accepted. Callers beyond the quota park until the next window opens,
+ * up to a timeout, and at most {@code maxWaiters} callers may be parked at once.
+ * <p>
+ * Quota is tracked per step for the three most recent steps asked for, so callers a window
+ * ahead (rollover guard band) or behind (a host whose clock lags) each draw on their own
+ * window's quota instead of moving everyone else to another window. Claims are a
+ * compare-and-set on an immutable usage record; only callers that have to wait touch the
+ * waiter count.
+ */
+public class CodeReuseGate {
+    public static final CodeReuseGate DISABLED = new CodeReuseGate(0, 0, 0);
+    // Steps with their own quota: the newest step asked for and the two before it
+    private static final int TRACKED_STEPS = 3;
+
+    private final int maxUsesPerWindow;
+    private final int maxWaiters;
+    private final long timeoutMillis;
+    private final AtomicReference<Usage> usage = new AtomicReference<>(new Usage(Long.MIN_VALUE, new int[TRACKED_STEPS]));
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /**
+     * @param maxUsesPerWindow how often one window's code may be handed out; 0 disables the gate
+     * @param maxWaiters       how many callers may wait for the next window at once
+     * @param timeoutMillis    how long a caller may wait before giving up
+     * @throws IllegalArgumentException if any value is negative
+     */
+    public CodeReuseGate(int maxUsesPerWindow, int maxWaiters, long timeoutMillis) {
+        if (maxUsesPerWindow < 0 || maxWaiters < 0 || timeoutMillis < 0) {
+            throw new IllegalArgumentException("Reuse gate settings must not be negative.");
+        }
+        this.maxUsesPerWindow = maxUsesPerWindow;
+        this.maxWaiters = maxWaiters;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public boolean isEnabled() {
+        return maxUsesPerWindow > 0;
+    }
+
+    public int getMaxUsesPerWindow() {
+        return maxUsesPerWindow;
+    }
+
+    public int getMaxWaiters() {
+        return maxWaiters;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @return a gate with the same settings and no uses yet, for a different secret; the
+     * disabled gate itself when disabled
+     */
+    public CodeReuseGate fresh() {
+        return isEnabled() ? new CodeReuseGate(maxUsesPerWindow, maxWaiters, timeoutMillis) : this;
+    }
+
+    /**
+     * Claims one use of a window's code, waiting for a later window if the requested one is
+     * used up.
+     *
+     * @return the time step whose code the caller may send, or -1 if the wait queue is full,
+     * the timeout expired or the thread was interrupted
+     */
+    public long acquire(long requestedStep, long periodMillis, OktaMetrics metrics) {
+        return acquire(requestedStep, periodMillis, metrics, 0L);
+    }
+
+    /**
+     * Same as {@link #acquire(long, long, OktaMetrics)}, with windows opening on a clock that
+     * runs {@code clockOffsetMillis} ahead of the local one.
+     */
+    public long acquire(long requestedStep, long periodMillis, OktaMetrics metrics, long clockOffsetMillis) {
+        long startNanos = System.nanoTime();
+        long deadline = System.currentTimeMillis() + clockOffsetMillis + timeoutMillis;
+        long step = requestedStep;
+        boolean waiting = false;
+
+        try {
+            while (true) {
+                Usage current = usage.get();
+                if (step < current.first) {
+                    // Older than any tracked window, whose uses are forgotten, so join the oldest tracked one
+                    step = current.first;
+                }
+                Usage claimed = current.claim(step, maxUsesPerWindow);
+                if (claimed != null) {
+                    if (usage.compareAndSet(current, claimed)) {
+                        return step;
+                    }
+                    continue;
+                }
+
+                // This window's quota is spent; park until the next one opens
+                long nextStep = step + 1;
+                long opensAt = nextStep * periodMillis;
+                if (opensAt > deadline) {
+                    metrics.recordGateTimeout();
+                    return -1;
+                }
+                if (!waiting) {
+                    if (waiters.incrementAndGet() > maxWaiters) {
+                        waiters.decrementAndGet();
+                        metrics.recordGateRejection();
+                        return -1;
+                    }
+                    waiting = true;
+                }
+
+                long remaining = opensAt - (System.currentTimeMillis() + clockOffsetMillis);
+                if (remaining > 0) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(remaining));
+                    if (Thread.currentThread().isInterrupted()) {
+                        return -1;
+                    }
+                } else {
+                    step = nextStep;
+                }
+            }
+        } finally {
+            if (waiting) {
+                waiters.decrementAndGet();
+                metrics.recordGateWait(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    private static final class Usage {
+        // Oldest tracked step; used[i] counts the uses of step first + i
+        final long first;
+        final int[] used;
+
+        Usage(long first, int[] used) {
+            this.first = first;
+            this.used = used;
+        }
+
+        /**
+         * @return the usage after one more use of {@code step}, or null if its quota is spent
+         */
+        Usage claim(long step, int maxUses) {
+            // acquire never passes a step before first
+            if (step < first + TRACKED_STEPS) {
+                int slot = (int) (step - first);
+                if (used[slot] >= maxUses) {
+                    return null;
+                }
+                int[] next = used.clone();
+                next[slot]++;
+                return new Usage(first, next);
+            }
+
+            // A newer step: shift the tracked range so it ends at that step, keeping the overlap
+            long newFirst = step - TRACKED_STEPS + 1;
+            int[] next = new int[TRACKED_STEPS];
+            for (int slot = 0; slot < TRACKED_STEPS - 1; slot++) {
+                long tracked = newFirst + slot;
+                if (tracked >= first && tracked < first + TRACKED_STEPS) {
+                    next[slot] = used[(int) (tracked - first)];
+                }
+            }
+            next[TRACKED_STEPS - 1] = 1;
+            return new Usage(newFirst, next);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package okta;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Precomputed codes of the default configuration and every account for the windows around
+ * now, so high-rate consumers such as Intruder payloads cost a table read instead of an HMAC.
+ * Each source keeps the codes of {@value #SPAN} windows, from the one before the window the
+ * table was built in to two after it, so the table stays complete for previous, current and
+ * next codes until the window after the build time is over. {@link #update} rebuilds it on the
+ * request path once a source changed or that time has passed; {@link #precompute}, called
+ * from the tick thread, rebuilds it as soon as the build window is over, so normally the
+ * request path never has to.
+ * <p>
+ * Codes of HOTP sources have no windows; every lookup claims the next counter value.
+ */
+public final class CodeTable {
+    private static final int SPAN = 4;
+
+    public enum Window {
+        PREVIOUS(-1),
+        CURRENT(0),
+        NEXT(1);
+
+        private final int offset;
+
+        Window(int offset) {
+            this.offset = offset;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+    }
+
+    private final OktaMetrics metrics;
+    private final AtomicReference<Table> table;
+    private final AtomicLong rotation = new AtomicLong();
+
+    public CodeTable(OktaMetrics metrics) {
+        this.metrics = metrics;
+        // No default configuration, so the first update always rebuilds
+        this.table = new AtomicReference<>(new Table(null, Collections.emptyList(), 0L));
+    }
+
+    /**
+     * Rebuilds the table if the default configuration or the account list changed, or if
+     * {@code timeMillis} has left the windows it covers. Costs a few reference comparisons when
+     * nothing changed.
+     */
+    public void update(OktaConfig defaultConfig, List<OktaAccount> accounts, long timeMillis) {
+        Table current = table.get();
+        if (current.defaultConfig == defaultConfig && current.accounts == accounts && timeMillis < current.validUntilMillis) {
+            return;
+        }
+        // Concurrent rebuilds produce the same table, so the last one simply wins
+        table.set(new Table(defaultConfig, accounts, timeMillis));
+    }
+
+    /**
+     * Like {@link #update}, but also rebuilds once {@code timeMillis} has left the window the
+     * table was built in. Called off the request path.
+     */
+    public void precompute(OktaConfig defaultConfig, List<OktaAccount> accounts, long timeMillis) {
+        Table current = table.get();
+        if (current.defaultConfig == defaultConfig && current.accounts == accounts && timeMillis < current.refreshAfterMillis) {
+            return;
+        }
+        table.set(new Table(defaultConfig, accounts, timeMillis));
+    }
+
+    /**
+     * @return the code of {@code config} for the window relative to {@code timeMillis}, or null
+     * if it has no secret
+     */
+    public String code(OktaConfig config, Window window, long timeMillis) {
+        if (config == null) {
+            return null;
+        }
+        Entry entry = table.get().entries.get(config);
+        if (entry != null) {
+            return entry.code(window, timeMillis);
+        }
+        return compute(config, window, timeMillis);
+    }
+
+    /**
+     * @return the code of the next account in turn, or of the default configuration when there
+     * are no accounts; null if that has no secret
+     */
+    public String rotate(Window window, long timeMillis) {
+        Table current = table.get();
+        if (current.rotation.length == 0) {
+            return code(current.defaultConfig, window, timeMillis);
+        }
+        Entry entry = current.rotation[(int) Math.floorMod(rotation.getAndIncrement(), (long) current.rotation.length)];
+        return entry.code(window, timeMillis);
+    }
+
+    private String compute(OktaConfig config, Window window, long timeMillis) {
+        HotpCounter counter = config.getHotpCounter();
+        if (counter != null) {
+            return counter.claim();
+        }
+        TotpGenerator generator = config.getTotpGenerator();
+        if (generator == null) {
+            return null;
+        }
+        metrics.recordTotpGeneration();
+        return generator.generate(generator.timeStep(timeMillis) + window.getOffset());
+    }
+
+    private final class Entry {
+        final OktaConfig config;
+        final TotpGenerator generator;
+        // Step of codes[0]
+        final long firstStep;
+        final String[] codes;
+
+        Entry(OktaConfig config, long timeMillis) {
+            this.config = config;
+            this.generator = config.getHotpCounter() == null ? config.getTotpGenerator() : null;
+            if (generator == null) {
+                firstStep = 0;
+                codes = null;
+                return;
+            }
+            firstStep = generator.timeStep(timeMillis) - 1;
+            codes = new String[SPAN];
+            for (int i = 0; i < SPAN; i++) {
+                metrics.recordTotpGeneration();
+                codes[i] = generator.generate(firstStep + i);
+            }
+        }
+
+        String code(Window window, long timeMillis) {
+            if (codes == null) {
+                return compute(config, window, timeMillis);
+            }
+            long index = generator.timeStep(timeMillis) + window.getOffset() - firstStep;
+            if (index >= 0 && index < SPAN) {
+                metrics.recordCacheHit();
+                return codes[(int) index];
+            }
+            return compute(config, window, timeMillis);
+        }
+
+        /**
+         * @return when the window after the build window ends, after which a next code is missing
+         */
+        long validUntilMillis() {
+            return generator == null ? Long.MAX_VALUE : (firstStep + SPAN - 1) * generator.getPeriodMillis();
+        }
+
+        /**
+         * @return when the build window ends
+         */
+        long refreshAfterMillis() {
+            return generator == null ? Long.MAX_VALUE : (firstStep + 2) * generator.getPeriodMillis();
+        }
+    }
+
+    private final class Table {
+        final OktaConfig defaultConfig;
+        final List<OktaAccount> accounts;
+        final Map<OktaConfig, Entry> entries = new IdentityHashMap<>();
+        final Entry[] rotation;
+        final long validUntilMillis;
+        final long refreshAfterMillis;
+
+        Table(OktaConfig defaultConfig, List<OktaAccount> accounts, long timeMillis) {
+            this.defaultConfig = defaultConfig;
+            this.accounts = accounts;
+            long validUntil = Long.MAX_VALUE;
+            long refreshAfter = Long.MAX_VALUE;
+            if (defaultConfig != null && defaultConfig.getTotpGenerator() != null) {
+                Entry entry = new Entry(defaultConfig, timeMillis);
+                entries.put(defaultConfig, entry);
+                validUntil = entry.validUntilMillis();
+                refreshAfter = entry.refreshAfterMillis();
+            }
+            rotation = new Entry[accounts.size()];
+            for (int i = 0; i < rotation.length; i++) {
+                OktaConfig config = accounts.get(i).getConfig();
+                // Accounts saved from the default configuration share its entry
+                Entry entry = entries.computeIfAbsent(config, c -> new Entry(c, timeMillis));
+                rotation[i] = entry;
+                validUntil = Math.min(validUntil, entry.validUntilMillis());
+                refreshAfter = Math.min(refreshAfter, entry.refreshAfterMillis());
+            }
+            this.validUntilMillis = validUntil;
+            this.refreshAfterMillis = refreshAfter;
+        }
+    }
+}
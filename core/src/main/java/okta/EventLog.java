@@ -0,0 +1,236 @@
+package okta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A bounded, lock-free ring buffer of structured events for the per-request paths, so
+ * Scanner threads never wait on Burp's output pane.
+ * <p>
+ * Events are grouped by a stable key and their message. The first event of each message in a
+ * summary interval is recorded and forwarded; repeats are only counted and reported as one
+ * summary line such as "TOTP applied to the request (4,812 times in the last 60 s)". Each key
+ * tracks up to {@link #MAX_MESSAGES_PER_KEY} distinct messages per interval; events with further
+ * messages are only counted in a summary for the key. At {@link Level#DEBUG} every
+ * event is also kept in the buffer for the viewer. Forwarding happens in {@link #drain}, which
+ * the caller runs from a background thread.
+ */
+public class EventLog {
+    public static final int DEFAULT_CAPACITY = 2048;
+    public static final long DEFAULT_SUMMARY_INTERVAL_MILLIS = 60_000L;
+    public static final int MAX_MESSAGES_PER_KEY = 32;
+
+    public enum Level {
+        ERROR,
+        INFO,
+        DEBUG
+    }
+
+    public static final class Event {
+        private final long sequence;
+        private final long timeMillis;
+        private final Level level;
+        private final String key;
+        private final String message;
+        private final boolean forwarded;
+
+        private Event(long sequence, long timeMillis, Level level, String key, String message, boolean forwarded) {
+            this.sequence = sequence;
+            this.timeMillis = timeMillis;
+            this.level = level;
+            this.key = key;
+            this.message = message;
+            this.forwarded = forwarded;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public Level getLevel() {
+            return level;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private final AtomicReferenceArray<Event> slots;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final Map<String, KeyGroup> groups = new ConcurrentHashMap<>();
+    private final long summaryIntervalMillis;
+    private volatile Level verbosity = Level.INFO;
+    private long drainedSequence;
+    private long lastSummaryMillis = System.currentTimeMillis();
+
+    public EventLog(int capacity, long summaryIntervalMillis) {
+        if (capacity < 1 || summaryIntervalMillis < 1) {
+            throw new IllegalArgumentException("Event log capacity and summary interval must be positive.");
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.summaryIntervalMillis = summaryIntervalMillis;
+    }
+
+    public Level getVerbosity() {
+        return verbosity;
+    }
+
+    public void setVerbosity(Level verbosity) {
+        this.verbosity = verbosity;
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * Lets callers skip building a message that would be dropped anyway.
+     */
+    public boolean isEnabled(Level level) {
+        return level.compareTo(verbosity) <= 0;
+    }
+
+    /**
+     * Records an event without blocking.
+     *
+     * @param key identifies the kind of event; must come from a small fixed set. Repeats of the
+     *            same message under a key are collapsed, distinct messages are each forwarded
+     */
+    public void log(Level level, String key, String message) {
+        if (!isEnabled(level)) {
+            return;
+        }
+
+        MessageCounter counter = groups.computeIfAbsent(key, k -> new KeyGroup(level)).counterFor(message != null ? message : key);
+        counter.count.increment();
+        if (counter.message != null && !counter.reported.get() && counter.reported.compareAndSet(false, true)) {
+            append(level, key, message, true);
+        } else if (verbosity == Level.DEBUG) {
+            append(level, key, message, false);
+        }
+    }
+
+    /**
+     * Forwards the events recorded since the previous call and, once per summary interval,
+     * the summaries of repeated events. Must only be called from one thread at a time.
+     */
+    public void drain(long nowMillis, Consumer<Event> sink) {
+        long end = nextSequence.get();
+        long sequence = Math.max(drainedSequence, end - slots.length());
+        for (; sequence < end; sequence++) {
+            Event event = slots.get(slotIndex(sequence));
+            if (event == null || event.sequence < sequence) {
+                // A writer has claimed this slot but not filled it yet; resume here next time
+                break;
+            }
+            if (event.sequence == sequence && event.forwarded) {
+                sink.accept(event);
+            }
+        }
+        drainedSequence = sequence;
+
+        if (nowMillis - lastSummaryMillis < summaryIntervalMillis) {
+            return;
+        }
+        long seconds = (nowMillis - lastSummaryMillis) / 1000;
+        lastSummaryMillis = nowMillis;
+        for (Map.Entry<String, KeyGroup> entry : groups.entrySet()) {
+            KeyGroup group = entry.getValue();
+            for (MessageCounter counter : group.messages.values()) {
+                long count = counter.count.sumThenReset();
+                counter.reported.set(false);
+                if (count == 0) {
+                    // Idle messages make room for new ones
+                    group.messages.remove(counter.message, counter);
+                } else if (count > 1) {
+                    // Kept in the buffer for the viewer but handed to the sink directly
+                    sink.accept(append(group.level, entry.getKey(),
+                            String.format("%s (%,d times in the last %d s)", counter.message, count, seconds), false));
+                }
+            }
+            long overflow = group.overflow.count.sumThenReset();
+            if (overflow > 0) {
+                sink.accept(append(group.level, entry.getKey(),
+                        String.format("%s: %,d more events with other messages in the last %d s", entry.getKey(), overflow, seconds), false));
+            }
+        }
+    }
+
+    /**
+     * @return the buffered events with a sequence number greater than {@code sequence}, oldest
+     * first; events already overwritten by newer ones are skipped
+     */
+    public List<Event> eventsAfter(long sequence) {
+        long end = nextSequence.get();
+        long start = Math.max(sequence + 1, end - slots.length());
+        List<Event> events = new ArrayList<>((int) Math.max(0, end - start));
+        for (long s = start; s < end; s++) {
+            Event event = slots.get(slotIndex(s));
+            // Skip slots that a writer has claimed but not filled yet, or has already reused
+            if (event != null && event.sequence == s) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private Event append(Level level, String key, String message, boolean forwarded) {
+        long sequence = nextSequence.getAndIncrement();
+        Event event = new Event(sequence, System.currentTimeMillis(), level, key, message, forwarded);
+        slots.set(slotIndex(sequence), event);
+        return event;
+    }
+
+    private int slotIndex(long sequence) {
+        return (int) Math.floorMod(sequence, (long) slots.length());
+    }
+
+    private static final class KeyGroup {
+        final Level level;
+        final Map<String, MessageCounter> messages = new ConcurrentHashMap<>();
+        // Counts events whose message did not fit under MAX_MESSAGES_PER_KEY
+        final MessageCounter overflow = new MessageCounter(null);
+
+        KeyGroup(Level level) {
+            this.level = level;
+        }
+
+        MessageCounter counterFor(String message) {
+            MessageCounter counter = messages.get(message);
+            if (counter != null) {
+                return counter;
+            }
+            // The size check is racy, so a key may briefly hold a few more messages than the limit
+            if (messages.size() >= MAX_MESSAGES_PER_KEY) {
+                return overflow;
+            }
+            return messages.computeIfAbsent(message, MessageCounter::new);
+        }
+    }
+
+    private static final class MessageCounter {
+        final String message;
+        final LongAdder count = new LongAdder();
+        final AtomicBoolean reported = new AtomicBoolean();
+
+        MessageCounter(String message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package okta;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongFunction;
+
+/**
+ * Hands out RFC 4226 HOTP codes, one counter value per call to {@link #claim()}. Values are
+ * claimed with a single atomic increment, so parallel Scanner threads never get the same value
+ * and never wait for each other.
+ * <p>
+ * Codes are computed in batches of {@value #BATCH_SIZE} ahead of the counter, by
+ * {@link #precompute()} on the tick thread or by whichever claiming thread first sees the
+ * batch running low. A claim that runs past the batch computes its own code. Codes depend only
+ * on the counter value, so a stale batch can never yield a wrong code.
+ */
+public final class HotpCounter {
+    public static final int BATCH_SIZE = 256;
+    // Precomputed codes left when a claim computes the next batch; the tick thread tops up earlier
+    private static final int CLAIM_REFILL_THRESHOLD = BATCH_SIZE / 4;
+    private static final int TICK_REFILL_THRESHOLD = BATCH_SIZE / 2;
+
+    private final LongFunction<String> generator;
+    private final OktaMetrics metrics;
+    private final AtomicLong counter;
+    private final AtomicReference<Batch> batch = new AtomicReference<>();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    /**
+     * @param generator computes the code for a counter value, returning null on failure
+     * @param counter   the first value to hand out
+     * @throws IllegalArgumentException if the counter is negative
+     */
+    public HotpCounter(LongFunction<String> generator, long counter, OktaMetrics metrics) {
+        if (counter < 0) {
+            throw new IllegalArgumentException("HOTP counter must not be negative.");
+        }
+        this.generator = generator;
+        this.metrics = metrics;
+        this.counter = new AtomicLong(counter);
+    }
+
+    /**
+     * @return the value the next claim will get
+     */
+    public long getCounter() {
+        return counter.get();
+    }
+
+    /**
+     * Claims the next counter value for one request.
+     *
+     * @return its code, or null if the code could not be computed
+     */
+    public String claim() {
+        long value = counter.getAndIncrement();
+        if (isLow(batch.get(), value, CLAIM_REFILL_THRESHOLD)) {
+            refill(value);
+        }
+        return codeFor(value);
+    }
+
+    /**
+     * @return the code the next claim will get, without claiming it
+     */
+    public String peek() {
+        return codeFor(counter.get());
+    }
+
+    /**
+     * Computes the next batch if the current one is running low. Called off the request path.
+     */
+    public void precompute() {
+        long value = counter.get();
+        if (isLow(batch.get(), value, TICK_REFILL_THRESHOLD)) {
+            refill(value);
+        }
+    }
+
+    /**
+     * Moves the counter, for example after the server and this counter went out of step.
+     * Claims already in flight keep their old values.
+     *
+     * @throws IllegalArgumentException if the counter is negative
+     */
+    public void resync(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("HOTP counter must not be negative.");
+        }
+        counter.set(value);
+        batch.set(null);
+    }
+
+    /**
+     * Looks for {@code code} among the next {@code window} counter values, starting at the
+     * current one. Used to resync from a code the server last accepted.
+     *
+     * @return the counter value whose code matches, or -1 if none does
+     */
+    public long find(String code, int window) {
+        long start = counter.get();
+        for (long value = start; value < start + window; value++) {
+            if (code.equals(generator.apply(value))) {
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLow(Batch current, long value, int threshold) {
+        // A batch ahead of the value is left over from before a resync
+        return current == null || value < current.start || current.end - value <= threshold;
+    }
+
+    private String codeFor(long value) {
+        Batch current = batch.get();
+        if (current != null && value >= current.start && value < current.end) {
+            String code = current.codes[(int) (value - current.start)];
+            if (code != null) {
+                metrics.recordCacheHit();
+                return code;
+            }
+        }
+        metrics.recordTotpGeneration();
+        return generator.apply(value);
+    }
+
+    private void refill(long from) {
+        // One thread computes the batch; the others go on with the codes they can get
+        if (!refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            String[] codes = new String[BATCH_SIZE];
+            // Codes of the current batch from this value on are carried over, not recomputed
+            int carried = 0;
+            Batch current = batch.get();
+            if (current != null && from >= current.start && from < current.end) {
+                carried = (int) (current.end - from);
+                System.arraycopy(current.codes, (int) (from - current.start), codes, 0, carried);
+            }
+            for (int i = carried; i < BATCH_SIZE; i++) {
+                metrics.recordTotpGeneration();
+                codes[i] = generator.apply(from + i);
+            }
+            batch.set(new Batch(from, codes));
+        } finally {
+            refilling.set(false);
+        }
+    }
+
+    private static final class Batch {
+        final long start;
+        final long end;
+        final String[] codes;
+
+        Batch(long start, String[] codes) {
+            this.start = start;
+            this.end = start + codes.length;
+            this.codes = codes;
+        }
+    }
+}
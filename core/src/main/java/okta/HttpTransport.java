@@ -0,0 +1,32 @@
+package okta;
+
+import java.util.Map;
+
+/**
+ * The HTTP calls enrollment needs, kept abstract so the same code runs inside Burp, where
+ * requests go through Burp's own stack, and in standalone tools using {@link JdkHttpTransport}.
+ */
+public interface HttpTransport {
+    final class Response {
+        private final int statusCode;
+        private final String body;
+
+        public Response(int statusCode, String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * @param body the request body, or null for none
+     */
+    Response send(String method, String url, Map<String, String> headers, String body) throws Exception;
+}
@@ -0,0 +1,172 @@
+package okta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * A TOTP challenge found in an Okta Identity Engine (IDX) response: the
+ * {@code challenge-authenticator} remediation for an authenticator app such as Okta Verify or
+ * Google Authenticator, together with what is needed to answer it.
+ */
+public final class IdxChallenge {
+    /**
+     * Cheap byte-level marker checked before a response body is parsed as JSON.
+     */
+    public static final String REMEDIATION_NAME = "challenge-authenticator";
+
+    private static final String DEFAULT_CONTENT_TYPE = "application/json";
+
+    private final String href;
+    private final String method;
+    private final String contentType;
+    private final String stateHandle;
+    private final String credentialField;
+
+    private IdxChallenge(String href, String method, String contentType, String stateHandle, String credentialField) {
+        this.href = href;
+        this.method = method;
+        this.contentType = contentType;
+        this.stateHandle = stateHandle;
+        this.credentialField = credentialField;
+    }
+
+    /**
+     * @return the TOTP challenge in an IDX response, or null if the response asks for something
+     * else, such as a password or a push approval
+     */
+    public static IdxChallenge parse(JsonNode body) {
+        String authenticatorType = body.path("currentAuthenticatorEnrollment").path("value").path("type").asText(
+                body.path("currentAuthenticator").path("value").path("type").asText(""));
+        if (!"app".equals(authenticatorType)) {
+            return null;
+        }
+
+        for (JsonNode remediation : body.path("remediation").path("value")) {
+            if (!REMEDIATION_NAME.equals(remediation.path("name").asText())) {
+                continue;
+            }
+
+            String href = remediation.path("href").asText(null);
+            String stateHandle = body.path("stateHandle").asText(null);
+            String credentialField = null;
+            for (JsonNode field : remediation.path("value")) {
+                String name = field.path("name").asText();
+                if ("credentials".equals(name)) {
+                    // Okta Verify asks for "totp", Google Authenticator for "passcode"
+                    for (JsonNode credential : field.path("form").path("value")) {
+                        String credentialName = credential.path("name").asText();
+                        if ("totp".equals(credentialName) || "passcode".equals(credentialName)) {
+                            credentialField = credentialName;
+                        }
+                    }
+                } else if ("stateHandle".equals(name) && field.hasNonNull("value")) {
+                    stateHandle = field.path("value").asText();
+                }
+            }
+
+            if (href == null || stateHandle == null || credentialField == null) {
+                return null;
+            }
+            String contentType = remediation.path("accepts").asText(DEFAULT_CONTENT_TYPE);
+            return new IdxChallenge(href, remediation.path("method").asText("POST"), contentType, stateHandle, credentialField);
+        }
+        return null;
+    }
+
+    /**
+     * @return whether an IDX response to an answer reports success rather than asking again
+     * or carrying an error message
+     */
+    public static boolean isSuccess(JsonNode body) {
+        if (body.has("success") || body.has("successWithInteractionCode")) {
+            return true;
+        }
+        for (JsonNode message : body.path("messages").path("value")) {
+            if ("ERROR".equals(message.path("class").asText())) {
+                return false;
+            }
+        }
+        for (JsonNode remediation : body.path("remediation").path("value")) {
+            if (REMEDIATION_NAME.equals(remediation.path("name").asText())) {
+                return false;
+            }
+        }
+        return body.has("stateHandle") || body.has("user");
+    }
+
+    /**
+     * @return the {@code expiresAt} of an IDX response in epoch milliseconds, or -1 if absent
+     */
+    public static long expiresAtMillis(JsonNode body) {
+        String expiresAt = body.path("expiresAt").asText(null);
+        if (expiresAt == null) {
+            return -1;
+        }
+        try {
+            return Instant.parse(expiresAt).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Whether the answer, which carries a live code and the session cookies, may be sent to
+     * {@link #getHref()}: only over https, and only to the host that issued the challenge or to
+     * one of {@code oktaHosts}, given as exact names or wildcards of the form {@code *.okta.com}.
+     * Anything else could be a crafted challenge fishing for codes and cookies.
+     */
+    public boolean isAnswerableFrom(String challengeHost, Collection<String> oktaHosts) {
+        URI uri;
+        try {
+            uri = new URI(href);
+        } catch (URISyntaxException e) {
+            return false;
+        }
+        if (!"https".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null || uri.getRawUserInfo() != null) {
+            return false;
+        }
+
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (challengeHost != null && host.equals(challengeHost.toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        for (String oktaHost : oktaHosts) {
+            String trusted = oktaHost.toLowerCase(Locale.ROOT);
+            if (trusted.startsWith("*.") ? host.endsWith(trusted.substring(1)) : host.equals(trusted)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String answerBody(ObjectMapper objectMapper, String code) {
+        ObjectNode answer = objectMapper.createObjectNode();
+        answer.putObject("credentials").put(credentialField, code);
+        answer.put("stateHandle", stateHandle);
+        return answer.toString();
+    }
+
+    public String getHref() {
+        return href;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getStateHandle() {
+        return stateHandle;
+    }
+}
@@ -0,0 +1,96 @@
+package okta;
+
+import com.fasterxml.jackson.core.JsonPointer;
+
+/**
+ * Where in a request the TOTP code is written. Everything except {@link Type#REGEX} and
+ * {@link Type#TEMPLATE} addresses a single named location, so the request body never has to
+ * be scanned as a whole. {@link Type#TEMPLATE} writes only where the request carries an
+ * explicit placeholder, see {@link PlaceholderTemplate}.
+ */
+public final class InjectionTarget {
+    public enum Type {
+        REGEX("Body regex"),
+        HEADER("Header"),
+        URL_PARAMETER("URL parameter"),
+        BODY_PARAMETER("Body parameter"),
+        JSON_POINTER("JSON pointer"),
+        TEMPLATE("Placeholders");
+
+        private final String label;
+
+        Type(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return whether targets of this type need a header, parameter or pointer name
+         */
+        public boolean isNamed() {
+            return this != REGEX && this != TEMPLATE;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    public static final InjectionTarget BODY_REGEX = new InjectionTarget(Type.REGEX, null, null);
+    public static final InjectionTarget PLACEHOLDERS = new InjectionTarget(Type.TEMPLATE, null, null);
+
+    private final Type type;
+    private final String name;
+    private final JsonPointer jsonPointer;
+
+    private InjectionTarget(Type type, String name, JsonPointer jsonPointer) {
+        this.type = type;
+        this.name = name;
+        this.jsonPointer = jsonPointer;
+    }
+
+    /**
+     * @param name header name, parameter name or JSON pointer; ignored for {@link Type#REGEX}
+     *             and {@link Type#TEMPLATE}
+     * @throws IllegalArgumentException if the name is missing or not a valid JSON pointer
+     */
+    public static InjectionTarget of(Type type, String name) {
+        if (type == Type.REGEX) {
+            return BODY_REGEX;
+        }
+        if (type == Type.TEMPLATE) {
+            return PLACEHOLDERS;
+        }
+
+        String trimmed = name == null ? "" : name.trim();
+        if (trimmed.isEmpty()) {
+            throw new IllegalArgumentException(type + " target requires a name.");
+        }
+
+        if (type == Type.JSON_POINTER) {
+            JsonPointer pointer = JsonPointer.compile(trimmed);
+            if (pointer.matches()) {
+                throw new IllegalArgumentException("JSON pointer must address a field, not the whole document.");
+            }
+            return new InjectionTarget(type, trimmed, pointer);
+        }
+        return new InjectionTarget(type, trimmed, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public JsonPointer getJsonPointer() {
+        return jsonPointer;
+    }
+
+    @Override
+    public String toString() {
+        return name == null ? type.toString() : type + " '" + name + "'";
+    }
+}
@@ -0,0 +1,50 @@
+package okta;
+
+/**
+ * Settings of the Intruder payload generator and processor: which window's code they emit,
+ * for which account or rotating across all accounts, and how many payloads one attack gets.
+ * Immutable, so an attack reads one consistent snapshot per payload.
+ */
+public final class IntruderPayloads {
+    public static final IntruderPayloads DEFAULT = new IntruderPayloads(CodeTable.Window.CURRENT, null, false, 0);
+
+    private final CodeTable.Window window;
+    private final String account;
+    private final boolean rotate;
+    private final long maxPayloads;
+
+    /**
+     * @param account     the account to use, or null or empty for the default configuration;
+     *                    ignored when rotating
+     * @param maxPayloads payloads per attack, or 0 for no limit
+     * @throws IllegalArgumentException if the limit is negative
+     */
+    public IntruderPayloads(CodeTable.Window window, String account, boolean rotate, long maxPayloads) {
+        if (maxPayloads < 0) {
+            throw new IllegalArgumentException("Payload limit must not be negative.");
+        }
+        this.window = window;
+        this.account = account == null || account.trim().isEmpty() ? null : account.trim();
+        this.rotate = rotate;
+        this.maxPayloads = maxPayloads;
+    }
+
+    public CodeTable.Window getWindow() {
+        return window;
+    }
+
+    /**
+     * @return the account name, or null for the default configuration
+     */
+    public String getAccount() {
+        return account;
+    }
+
+    public boolean isRotate() {
+        return rotate;
+    }
+
+    public long getMaxPayloads() {
+        return maxPayloads;
+    }
+}
@@ -0,0 +1,58 @@
+package okta;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * {@link HttpTransport} over the JDK's {@link HttpClient}, for use outside Burp.
+ */
+public class JdkHttpTransport implements HttpTransport {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+
+    @Override
+    public Response send(String method, String url, Map<String, String> headers, String body) throws Exception {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(TIMEOUT)
+                .method(method, body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8));
+        headers.forEach(builder::header);
+
+        HttpResponse<byte[]> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("identity");
+        return new Response(response.statusCode(), new String(decode(response.body(), encoding), StandardCharsets.UTF_8));
+    }
+
+    // HttpClient does not undo the compression the enrollment requests ask for
+    private static byte[] decode(byte[] body, String encoding) throws IOException {
+        if (body.length == 0) {
+            return body;
+        }
+        InputStream in;
+        if (encoding.equalsIgnoreCase("gzip")) {
+            in = new GZIPInputStream(new ByteArrayInputStream(body));
+        } else if (encoding.equalsIgnoreCase("deflate")) {
+            in = new InflaterInputStream(new ByteArrayInputStream(body));
+        } else {
+            return body;
+        }
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package okta;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The shared Jackson {@link ObjectMapper}. It is created, and Jackson loaded, on first use rather
+ * than when the extension starts, since most sessions never touch JSON. A configured mapper is
+ * thread-safe.
+ */
+public final class Json {
+    private Json() {
+    }
+
+    private static final class Holder {
+        static final ObjectMapper MAPPER = new ObjectMapper();
+    }
+
+    public static ObjectMapper mapper() {
+        return Holder.MAPPER;
+    }
+}
@@ -0,0 +1,69 @@
+package okta;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Time-bounded cache of each Okta domain's signing key ({@code kid} and modulus). Concurrent
+ * lookups for the same domain share one in-flight fetch, so a batch of enrollments against
+ * one tenant hits {@code /oauth2/v1/keys} once per TTL.
+ */
+public class JwksCache {
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000L;
+
+    public interface KeyFetcher {
+        String[] fetch(String domain) throws Exception;
+    }
+
+    private final KeyFetcher fetcher;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public JwksCache(KeyFetcher fetcher, long ttlMillis) {
+        this.fetcher = fetcher;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public String[] get(String domain) throws Exception {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.compute(domain, (key, existing) ->
+                existing != null && existing.expiresAt > now ? existing : new Entry(now + ttlMillis));
+
+        if (entry.claimFetch()) {
+            try {
+                entry.keys.complete(fetcher.fetch(domain));
+            } catch (Exception e) {
+                // Do not cache failures; the next caller retries
+                entries.remove(domain, entry);
+                entry.keys.completeExceptionally(e);
+            }
+        }
+
+        try {
+            return entry.keys.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+        final long expiresAt;
+        final CompletableFuture<String[]> keys = new CompletableFuture<>();
+        private final AtomicBoolean fetching = new AtomicBoolean();
+
+        Entry(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        boolean claimFetch() {
+            return fetching.compareAndSet(false, true);
+        }
+    }
+}
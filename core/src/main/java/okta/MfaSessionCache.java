@@ -0,0 +1,112 @@
+package okta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the Okta session cookies obtained by answering an MFA challenge, per account and
+ * host, until they expire. Requests that carry a live session are not challenged again, so
+ * only the first request after expiry pays for the extra round trips.
+ * <p>
+ * Each session also remembers the cookies of the session it replaced, so a stale value that an
+ * earlier session put into a request can be told apart from a cookie the user set on purpose.
+ */
+public class MfaSessionCache {
+    // Used when neither the cookies nor the IDX response say when the session ends
+    public static final long DEFAULT_TTL_MILLIS = 15 * 60_000L;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // Cookies of sessions that expired or were invalidated, until the next session for the key
+    private final Map<String, List<SessionCookie>> retired = new ConcurrentHashMap<>();
+
+    public static final class Session {
+        private final List<SessionCookie> cookies;
+        private final List<SessionCookie> replaced;
+        private final long expiresAtMillis;
+
+        Session(List<SessionCookie> cookies, List<SessionCookie> replaced, long expiresAtMillis) {
+            this.cookies = Collections.unmodifiableList(new ArrayList<>(cookies));
+            this.replaced = replaced;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public List<SessionCookie> getCookies() {
+            return cookies;
+        }
+
+        /**
+         * @return the cookies a request to this host and path would carry
+         */
+        public List<SessionCookie> cookiesFor(String host, String path) {
+            List<SessionCookie> matching = new ArrayList<>(cookies.size());
+            for (SessionCookie cookie : cookies) {
+                if (cookie.matches(host, path)) {
+                    matching.add(cookie);
+                }
+            }
+            return matching;
+        }
+
+        /**
+         * @return whether {@code value} is what an earlier session of this key set for the
+         * cookie, so a request still carrying it may get this session's value instead
+         */
+        public boolean replaces(String name, String value) {
+            for (SessionCookie cookie : replaced) {
+                if (cookie.getName().equals(name) && cookie.getValue().equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
+        }
+    }
+
+    public static String key(String accountName, String host) {
+        return (accountName != null ? accountName : "") + "@" + host;
+    }
+
+    /**
+     * @return the live session for the key, or null if there is none or it has expired
+     */
+    public Session get(String key, long nowMillis) {
+        Session session = sessions.get(key);
+        if (session != null && session.expiresAtMillis <= nowMillis) {
+            if (sessions.remove(key, session)) {
+                retired.put(key, session.cookies);
+            }
+            return null;
+        }
+        return session;
+    }
+
+    public void put(String key, List<SessionCookie> cookies, long expiresAtMillis) {
+        Session previous = sessions.get(key);
+        List<SessionCookie> retiredCookies = retired.remove(key);
+        List<SessionCookie> replaced = previous != null ? previous.cookies
+                : retiredCookies != null ? retiredCookies : Collections.emptyList();
+        sessions.put(key, new Session(cookies, replaced, expiresAtMillis));
+    }
+
+    public void invalidate(String key) {
+        Session session = sessions.remove(key);
+        if (session != null) {
+            retired.put(key, session.cookies);
+        }
+    }
+
+    public boolean isEmpty() {
+        return sessions.isEmpty();
+    }
+
+    public void clear() {
+        sessions.clear();
+        retired.clear();
+    }
+}
@@ -0,0 +1,62 @@
+package okta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A named Okta identity: its own {@link OktaConfig} plus the hosts and path prefix whose
+ * requests it should be used for. Hosts may be exact names or wildcards of the form
+ * {@code *.example.com}; no hosts means any host.
+ */
+public final class OktaAccount {
+    private final String name;
+    private final List<String> hosts;
+    private final String pathPrefix;
+    private final OktaConfig config;
+
+    public OktaAccount(String name, List<String> hosts, String pathPrefix, OktaConfig config) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Account name must not be empty.");
+        }
+        if (config == null || config.getTotpGenerator() == null) {
+            throw new IllegalArgumentException("Account '" + name.trim() + "' has no shared secret.");
+        }
+
+        List<String> normalizedHosts = new ArrayList<>();
+        if (hosts != null) {
+            for (String host : hosts) {
+                String trimmed = host.trim().toLowerCase(Locale.ROOT);
+                if (!trimmed.isEmpty()) {
+                    normalizedHosts.add(trimmed);
+                }
+            }
+        }
+
+        this.name = name.trim();
+        this.hosts = Collections.unmodifiableList(normalizedHosts);
+        this.pathPrefix = pathPrefix == null ? "" : pathPrefix.trim();
+        this.config = config;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getHosts() {
+        return hosts;
+    }
+
+    public String getPathPrefix() {
+        return pathPrefix;
+    }
+
+    public OktaConfig getConfig() {
+        return config;
+    }
+
+    public boolean matchesPath(String path) {
+        return pathPrefix.isEmpty() || (path != null && path.startsWith(pathPrefix));
+    }
+}
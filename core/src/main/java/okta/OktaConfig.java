@@ -0,0 +1,315 @@
+package okta;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable snapshot of everything the request path needs: the injection target, the compiled
+ * regex, the decoded shared secret and its code cache. A new snapshot is built whenever the user changes a
+ * setting and published by its owner, such as {@code OktaHandler}, with a single reference swap, so Scanner
+ * threads never observe a half-applied update.
+ * <p>
+ * All fields are final, so a snapshot is safely published to other threads however it is
+ * handed over. The {@code with...} methods build changed copies through {@link Builder}.
+ */
+public final class OktaConfig {
+    private static final OktaConfig EMPTY = new Builder().build();
+
+    private final String sharedSecretEncoded;
+    private final String decodedSecret;
+    private final TotpGenerator totpGenerator;
+    private final TotpCache totpCache;
+    // Set instead of totpCache when the secret is counter based
+    private final HotpCounter hotpCounter;
+    private final String regex;
+    private final Pattern pattern;
+    private final InjectionTarget injectionTarget;
+    private final RolloverGuard rolloverGuard;
+    private final CodeReuseGate reuseGate;
+    private final BodyScanLimits bodyScanLimits;
+    private final RegexBudget regexBudget;
+
+    private OktaConfig(Builder builder) {
+        this.sharedSecretEncoded = builder.sharedSecretEncoded;
+        this.decodedSecret = builder.decodedSecret;
+        this.totpGenerator = builder.totpGenerator;
+        this.totpCache = builder.totpCache;
+        this.hotpCounter = builder.hotpCounter;
+        this.regex = builder.regex;
+        this.pattern = builder.pattern;
+        this.injectionTarget = builder.injectionTarget;
+        this.rolloverGuard = builder.rolloverGuard;
+        this.reuseGate = builder.reuseGate;
+        this.bodyScanLimits = builder.bodyScanLimits;
+        this.regexBudget = builder.regexBudget;
+    }
+
+    public static OktaConfig empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Validates a user supplied pattern. An empty pattern disables injection and yields null.
+     *
+     * @throws java.util.regex.PatternSyntaxException if the pattern does not compile
+     */
+    public static Pattern compile(String regex) {
+        if (regex == null || regex.isEmpty()) {
+            return null;
+        }
+        return Pattern.compile(regex);
+    }
+
+    public OktaConfig withRegex(String regex, Pattern pattern) {
+        Builder copy = new Builder(this);
+        copy.regex = regex == null ? "" : regex;
+        copy.pattern = pattern;
+        return copy.build();
+    }
+
+    public OktaConfig withSharedSecret(String sharedSecretEncoded, String decodedSecret, TotpGenerator totpGenerator, OktaMetrics metrics) {
+        Builder copy = new Builder(this);
+        copy.sharedSecretEncoded = sharedSecretEncoded;
+        copy.decodedSecret = decodedSecret;
+        copy.totpGenerator = totpGenerator;
+        copy.totpCache = totpGenerator == null ? null : new TotpCache(totpGenerator::generate, totpGenerator.getPeriodMillis(), metrics);
+        copy.hotpCounter = null;
+        // Quotas are per code, so codes of another secret must not count against this one's
+        if (totpGenerator != this.totpGenerator) {
+            copy.reuseGate = reuseGate.fresh();
+        }
+        return copy.build();
+    }
+
+    /**
+     * Sets a Base32 shared secret for counter-based HOTP codes, handed out from {@code counter}
+     * on. Time steps, the rollover guard and the reuse gate do not apply to it.
+     *
+     * @throws IllegalArgumentException if the secret is not valid Base32, the digits are out of
+     *                                  range or the counter is negative
+     */
+    public OktaConfig withHotpSecret(String secret, TotpGenerator.Algorithm algorithm, int digits, long counter, OktaMetrics metrics) {
+        Builder copy = new Builder(withSecret(secret, algorithm, digits, TotpGenerator.DEFAULT_PERIOD_SECONDS, metrics));
+        // HOTP is TOTP with the counter in place of the time step
+        copy.hotpCounter = new HotpCounter(copy.totpGenerator::generate, counter, metrics);
+        copy.totpCache = null;
+        return copy.build();
+    }
+
+    /**
+     * Sets a Base32 shared secret, deriving its generator and the Base64 form it is stored in.
+     *
+     * @throws IllegalArgumentException if the secret is not valid Base32 or the parameters are out of range
+     */
+    public OktaConfig withSecret(String secret, TotpGenerator.Algorithm algorithm, int digits, int periodSeconds, OktaMetrics metrics) {
+        String decodedSecret = secret.trim();
+        TotpGenerator generator = TotpGenerator.fromBase32(decodedSecret, algorithm, digits, periodSeconds);
+        String encodedSecret = Base64.getEncoder().encodeToString(decodedSecret.getBytes(StandardCharsets.UTF_8));
+        return withSharedSecret(encodedSecret, decodedSecret, generator, metrics);
+    }
+
+    public OktaConfig withInjectionTarget(InjectionTarget injectionTarget) {
+        Builder copy = new Builder(this);
+        copy.injectionTarget = injectionTarget;
+        return copy.build();
+    }
+
+    public OktaConfig withRolloverGuard(RolloverGuard rolloverGuard) {
+        Builder copy = new Builder(this);
+        copy.rolloverGuard = rolloverGuard;
+        return copy.build();
+    }
+
+    public OktaConfig withReuseGate(CodeReuseGate reuseGate) {
+        Builder copy = new Builder(this);
+        copy.reuseGate = reuseGate;
+        return copy.build();
+    }
+
+    public OktaConfig withBodyScanLimits(BodyScanLimits bodyScanLimits) {
+        Builder copy = new Builder(this);
+        copy.bodyScanLimits = bodyScanLimits;
+        return copy.build();
+    }
+
+    public OktaConfig withRegexBudget(RegexBudget regexBudget) {
+        Builder copy = new Builder(this);
+        copy.regexBudget = regexBudget;
+        return copy.build();
+    }
+
+    public String getSharedSecretEncoded() {
+        return sharedSecretEncoded;
+    }
+
+    public String getDecodedSecret() {
+        return decodedSecret;
+    }
+
+    public TotpGenerator getTotpGenerator() {
+        return totpGenerator;
+    }
+
+    /**
+     * @return the counter of a HOTP secret, or null for TOTP or no secret
+     */
+    public HotpCounter getHotpCounter() {
+        return hotpCounter;
+    }
+
+    public String getRegex() {
+        return regex;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    public InjectionTarget getInjectionTarget() {
+        return injectionTarget;
+    }
+
+    public RolloverGuard getRolloverGuard() {
+        return rolloverGuard;
+    }
+
+    public CodeReuseGate getReuseGate() {
+        return reuseGate;
+    }
+
+    public BodyScanLimits getBodyScanLimits() {
+        return bodyScanLimits;
+    }
+
+    public RegexBudget getRegexBudget() {
+        return regexBudget;
+    }
+
+    /**
+     * @return the current code, or for HOTP the code the next request will get, without
+     * claiming it; null if there is no secret
+     */
+    public String currentCode() {
+        if (hotpCounter != null) {
+            return hotpCounter.peek();
+        }
+        return totpCache == null ? null : totpCache.codeAt(System.currentTimeMillis());
+    }
+
+    /**
+     * @return the code of the window after the current one, or null if there is no secret. HOTP
+     * has no windows, so there it claims a code like {@link #codeForRequest(OktaMetrics)}.
+     */
+    public String nextCode() {
+        return nextCode(0L);
+    }
+
+    /**
+     * @param clockOffsetMillis added to the local clock, see {@link ClockSkewEstimator}
+     */
+    public String nextCode(long clockOffsetMillis) {
+        if (hotpCounter != null) {
+            return hotpCounter.claim();
+        }
+        return totpCache == null ? null
+                : totpCache.codeForStep(Math.floorDiv(System.currentTimeMillis() + clockOffsetMillis, totpCache.getPeriodMillis()) + 1);
+    }
+
+    /**
+     * Picks the code for a request that is about to be sent. Inside the rollover guard band
+     * this is either the next window's code or, after sleeping until the boundary, the new
+     * window's code, depending on the configured policy. When the reuse gate is enabled the
+     * caller may additionally be held until a window with unused quota opens. For HOTP each
+     * call claims the next counter value instead.
+     *
+     * @return the code, or null if there is no secret or the reuse gate turned the caller away
+     */
+    public String codeForRequest(OktaMetrics metrics) {
+        return codeForRequest(metrics, 0L);
+    }
+
+    /**
+     * Same as {@link #codeForRequest(OktaMetrics)}, but picks windows by the local clock plus
+     * {@code clockOffsetMillis}, so codes follow a server whose clock differs from ours.
+     */
+    public String codeForRequest(OktaMetrics metrics, long clockOffsetMillis) {
+        if (hotpCounter != null) {
+            return hotpCounter.claim();
+        }
+        if (totpCache == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis() + clockOffsetMillis;
+        long step = Math.floorDiv(now, totpCache.getPeriodMillis());
+        long remaining = totpCache.millisUntilNextStep(now);
+        if (rolloverGuard.isEnabled() && remaining <= rolloverGuard.getGuardBandMillis()) {
+            if (rolloverGuard.getPolicy() == RolloverGuard.Policy.USE_NEXT_CODE) {
+                metrics.recordGuardNextCode();
+            } else {
+                metrics.recordGuardWait(remaining);
+                try {
+                    Thread.sleep(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            step++;
+        }
+
+        if (reuseGate.isEnabled()) {
+            step = reuseGate.acquire(step, totpCache.getPeriodMillis(), metrics, clockOffsetMillis);
+            if (step < 0) {
+                return null;
+            }
+        }
+
+        // Keep the common case on the cached read path
+        return step == Math.floorDiv(now, totpCache.getPeriodMillis()) ? totpCache.codeAt(now) : totpCache.codeForStep(step);
+    }
+
+    TotpCache getTotpCache() {
+        return totpCache;
+    }
+
+    /**
+     * Mutable staging area for a new snapshot; never shared between threads.
+     */
+    private static final class Builder {
+        String sharedSecretEncoded;
+        String decodedSecret;
+        TotpGenerator totpGenerator;
+        TotpCache totpCache;
+        HotpCounter hotpCounter;
+        String regex = "";
+        Pattern pattern;
+        InjectionTarget injectionTarget = InjectionTarget.BODY_REGEX;
+        RolloverGuard rolloverGuard = RolloverGuard.DISABLED;
+        CodeReuseGate reuseGate = CodeReuseGate.DISABLED;
+        BodyScanLimits bodyScanLimits = BodyScanLimits.DEFAULT;
+        RegexBudget regexBudget = RegexBudget.DEFAULT;
+
+        Builder() {
+        }
+
+        Builder(OktaConfig config) {
+            sharedSecretEncoded = config.sharedSecretEncoded;
+            decodedSecret = config.decodedSecret;
+            totpGenerator = config.totpGenerator;
+            totpCache = config.totpCache;
+            hotpCounter = config.hotpCounter;
+            regex = config.regex;
+            pattern = config.pattern;
+            injectionTarget = config.injectionTarget;
+            rolloverGuard = config.rolloverGuard;
+            reuseGate = config.reuseGate;
+            bodyScanLimits = config.bodyScanLimits;
+            regexBudget = config.regexBudget;
+        }
+
+        OktaConfig build() {
+            return new OktaConfig(this);
+        }
+    }
+}
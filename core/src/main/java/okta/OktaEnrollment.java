@@ -0,0 +1,166 @@
+package okta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Enrolls a new Okta Verify TOTP authenticator from the URL in an enrollment QR code and
+ * returns its shared secret. All HTTP goes through the given {@link HttpTransport}.
+ */
+public class OktaEnrollment {
+    private static final String USER_AGENT = "D2DD7D3915.com.okta.android.auth/6.8.1 DeviceSDK/0.19.0 Android/7.1.1 unknown/Google";
+
+    private final HttpTransport transport;
+    private final JwksCache jwksCache = new JwksCache(this::getDomainKey, JwksCache.DEFAULT_TTL_MILLIS);
+
+    public OktaEnrollment(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    public static class VerifyData {
+        public String t;
+        public String f;
+        public String domain;
+    }
+
+    public VerifyData extractVerifyData(String qrUrl) {
+        URI uri = URI.create(qrUrl);
+
+        if (!"oktaverify".equals(uri.getScheme())) {
+            throw new IllegalArgumentException("Invalid QR code URL schema. Expected 'oktaverify'.");
+        }
+
+        var queryParams = parseQuery(uri);
+
+        VerifyData verifyData = new VerifyData();
+        verifyData.t = queryParams.get("t");
+        verifyData.f = queryParams.get("f");
+        verifyData.domain = queryParams.get("issuer");
+
+        if (verifyData.domain == null || verifyData.t == null || verifyData.f == null) {
+            throw new IllegalArgumentException("Missing required parameters in QR code URL.");
+        }
+
+        return verifyData;
+    }
+
+    public String[] getDomainKey(String domain) throws Exception {
+        String url = "https://" + domain + "/oauth2/v1/keys";
+        HttpTransport.Response response = transport.send("GET", url, Collections.emptyMap(), null);
+
+        if (response.getStatusCode() != 200) {
+            throw new RuntimeException("Failed to fetch domain keys. HTTP Status: " + response.getStatusCode());
+        }
+
+        JsonNode keysNode = Json.mapper().readTree(response.getBody()).get("keys");
+        if (keysNode == null || !keysNode.isArray() || keysNode.isEmpty()) {
+            throw new IllegalArgumentException("No keys found in the response.");
+        }
+
+        String kid = keysNode.get(0).get("kid").asText();
+        String n = keysNode.get(0).get("n").asText();
+
+        return new String[]{kid, n};
+    }
+
+    /**
+     * Same as {@link #getDomainKey(String)} but served from a TTL cache shared by all callers.
+     */
+    public String[] getDomainKeyCached(String domain) throws Exception {
+        return jwksCache.get(domain);
+    }
+
+    public String createAuthenticator(String deviceName, VerifyData verifyData, String kid, String n) throws Exception {
+        String url = "https://" + verifyData.domain + "/idp/authenticators";
+
+        Map<String, Object> deviceDetails = buildDeviceDetails(deviceName, kid, n);
+
+        List<Map<String, Object>> methods = new ArrayList<>();
+        Map<String, Object> methodDetails = new HashMap<>();
+        methodDetails.put("isFipsCompliant", false);
+        methodDetails.put("supportUserVerification", false);
+        methodDetails.put("type", "totp");
+        methods.add(methodDetails);
+
+        Map<String, Object> requestBodyMap = new HashMap<>();
+        requestBodyMap.put("authenticatorId", verifyData.f);
+        requestBodyMap.put("device", deviceDetails);
+        requestBodyMap.put("key", "okta_verify");
+        requestBodyMap.put("methods", methods);
+
+        String requestBody = Json.mapper().writeValueAsString(requestBodyMap);
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Authorization", "OTDT " + verifyData.t);
+        headers.put("User-Agent", USER_AGENT);
+        headers.put("Accept", "application/json; charset=UTF-8");
+        headers.put("Accept-Encoding", "gzip, deflate");
+        headers.put("Content-Type", "application/json; charset=UTF-8");
+
+        HttpTransport.Response response = transport.send("POST", url, headers, requestBody);
+
+        if (response.getStatusCode() != 200) {
+            throw new RuntimeException("Failed to create Okta authenticator. HTTP Status: " + response.getStatusCode());
+        }
+
+        JsonNode responseNode = Json.mapper().readTree(response.getBody());
+        return responseNode.get("methods").get(0).get("sharedSecret").asText();
+    }
+
+    /**
+     * Runs the whole enrollment for one QR code: parses it, fetches the domain key and creates
+     * the authenticator.
+     *
+     * @return the Base32 shared secret of the new authenticator
+     */
+    public String enroll(String deviceName, String qrUrl) throws Exception {
+        VerifyData verifyData = extractVerifyData(qrUrl);
+        String[] keys = getDomainKeyCached(verifyData.domain);
+        return createAuthenticator(deviceName, verifyData, keys[0], keys[1]);
+    }
+
+    private Map<String, Object> buildDeviceDetails(String deviceName, String kid, String n) {
+        Map<String, Object> clientInstanceKey = new HashMap<>();
+        clientInstanceKey.put("alg", "RS256");
+        clientInstanceKey.put("e", "AQAB");
+        clientInstanceKey.put("okta:isFipsCompliant", false);
+        clientInstanceKey.put("okta:kpr", "SOFTWARE");
+        clientInstanceKey.put("kty", "RSA");
+        clientInstanceKey.put("use", "sig");
+        clientInstanceKey.put("kid", kid);
+        clientInstanceKey.put("n", n);
+
+        Map<String, Object> deviceDetails = new HashMap<>();
+        deviceDetails.put("clientInstanceBundleId", "com.okta.android.auth");
+        deviceDetails.put("clientInstanceDeviceSdkVersion", "DeviceSDK 0.19.0");
+        deviceDetails.put("clientInstanceVersion", "6.8.1");
+        deviceDetails.put("clientInstanceKey", clientInstanceKey);
+        deviceDetails.put("displayName", deviceName);
+        deviceDetails.put("fullDiskEncryption", false);
+        deviceDetails.put("isHardwareProtectionEnabled", false);
+        deviceDetails.put("manufacturer", "unknown");
+        deviceDetails.put("model", "Google");
+        deviceDetails.put("osVersion", "25");
+        deviceDetails.put("platform", "ANDROID");
+        deviceDetails.put("rootPrivileges", true);
+        deviceDetails.put("screenLock", false);
+        deviceDetails.put("secureHardwarePresent", false);
+
+        return deviceDetails;
+    }
+
+    private Map<String, String> parseQuery(URI uri) {
+        Map<String, String> query = new LinkedHashMap<>();
+        String[] pairs = uri.getQuery().split("&");
+        for (String pair : pairs) {
+            int idx = pair.indexOf("=");
+            query.put(URLDecoder.decode(pair.substring(0, idx), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(idx + 1), StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+}
@@ -0,0 +1,152 @@
+package okta;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hot-path counters for the extension. Counters are {@link LongAdder}s, which stripe updates
+ * across cells so Scanner threads do not contend on a single cache line.
+ */
+public class OktaMetrics {
+    private final LongAdder actionCalls = new LongAdder();
+    private final LongAdder matches = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totpGenerations = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder guardNextCodes = new LongAdder();
+    private final LongAdder guardWaits = new LongAdder();
+    private final LongAdder guardWaitMillis = new LongAdder();
+    private final LongAdder gateRejections = new LongAdder();
+    private final LongAdder gateTimeouts = new LongAdder();
+    private final LongAdder mfaAnswers = new LongAdder();
+    private final LongAdder mfaRejections = new LongAdder();
+    private final LongAdder mfaSessionReuses = new LongAdder();
+    private final LongAdder regexAborts = new LongAdder();
+    private final LatencyHistogram actionLatency = new LatencyHistogram();
+    private final LatencyHistogram gateWaitLatency = new LatencyHistogram();
+
+    public void recordAction(long startNanos, Outcome outcome) {
+        actionCalls.increment();
+        switch (outcome) {
+            case MATCH:
+                matches.increment();
+                break;
+            case MISS:
+                misses.increment();
+                break;
+            default:
+                errors.increment();
+                break;
+        }
+        actionLatency.record(System.nanoTime() - startNanos);
+    }
+
+    public void recordTotpGeneration() {
+        totpGenerations.increment();
+    }
+
+    public void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    public void recordGuardNextCode() {
+        guardNextCodes.increment();
+    }
+
+    public void recordGuardWait(long waitMillis) {
+        guardWaits.increment();
+        guardWaitMillis.add(waitMillis);
+    }
+
+    public void recordGateWait(long waitNanos) {
+        gateWaitLatency.record(waitNanos);
+    }
+
+    public void recordGateRejection() {
+        gateRejections.increment();
+    }
+
+    public void recordGateTimeout() {
+        gateTimeouts.increment();
+    }
+
+    public void recordMfaAnswer(boolean accepted) {
+        (accepted ? mfaAnswers : mfaRejections).increment();
+    }
+
+    public void recordMfaSessionReuse() {
+        mfaSessionReuses.increment();
+    }
+
+    public void recordRegexAbort() {
+        regexAborts.increment();
+    }
+
+    public void reset() {
+        actionCalls.reset();
+        matches.reset();
+        misses.reset();
+        errors.reset();
+        totpGenerations.reset();
+        cacheHits.reset();
+        guardNextCodes.reset();
+        guardWaits.reset();
+        guardWaitMillis.reset();
+        gateRejections.reset();
+        gateTimeouts.reset();
+        mfaAnswers.reset();
+        mfaRejections.reset();
+        mfaSessionReuses.reset();
+        regexAborts.reset();
+        actionLatency.reset();
+        gateWaitLatency.reset();
+    }
+
+    /**
+     * @return a point-in-time view suitable for display or JSON export; action latencies are in
+     * microseconds, reuse gate waits in milliseconds
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("actionCalls", actionCalls.sum());
+        snapshot.put("matches", matches.sum());
+        snapshot.put("misses", misses.sum());
+        snapshot.put("errors", errors.sum());
+        snapshot.put("totpGenerations", totpGenerations.sum());
+        snapshot.put("cacheHits", cacheHits.sum());
+        snapshot.put("guardNextCodes", guardNextCodes.sum());
+        snapshot.put("guardWaits", guardWaits.sum());
+        snapshot.put("guardWaitMillis", guardWaitMillis.sum());
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", actionLatency.percentile(50) / 1_000.0);
+        latency.put("p90", actionLatency.percentile(90) / 1_000.0);
+        latency.put("p99", actionLatency.percentile(99) / 1_000.0);
+        latency.put("p999", actionLatency.percentile(99.9) / 1_000.0);
+        latency.put("max", actionLatency.percentile(100) / 1_000.0);
+        snapshot.put("actionLatencyMicros", latency);
+
+        snapshot.put("gateWaits", gateWaitLatency.count());
+        snapshot.put("gateRejections", gateRejections.sum());
+        snapshot.put("gateTimeouts", gateTimeouts.sum());
+        Map<String, Object> gateWait = new LinkedHashMap<>();
+        gateWait.put("p50", gateWaitLatency.percentile(50) / 1_000_000.0);
+        gateWait.put("p99", gateWaitLatency.percentile(99) / 1_000_000.0);
+        gateWait.put("max", gateWaitLatency.percentile(100) / 1_000_000.0);
+        snapshot.put("gateWaitMillis", gateWait);
+
+        snapshot.put("mfaAnswers", mfaAnswers.sum());
+        snapshot.put("mfaRejections", mfaRejections.sum());
+        snapshot.put("mfaSessionReuses", mfaSessionReuses.sum());
+        snapshot.put("regexAborts", regexAborts.sum());
+        return snapshot;
+    }
+
+    public enum Outcome {
+        MATCH,
+        MISS,
+        ERROR
+    }
+}
@@ -0,0 +1,35 @@
+package okta;
+
+import com.google.zxing.NotFoundException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Renders PDF pages, for example a saved enrollment page, and returns the first QR code found.
+ */
+final class PdfQrSource {
+    private static final float RENDER_DPI = 150f;
+
+    private PdfQrSource() {
+    }
+
+    static String decode(File pdfFile, QrDecoder qrDecoder) throws IOException, NotFoundException {
+        try (PDDocument document = PDDocument.load(pdfFile)) {
+            PDFRenderer renderer = new PDFRenderer(document);
+            for (int page = 0; page < document.getNumberOfPages(); page++) {
+                BufferedImage image = renderer.renderImageWithDPI(page, RENDER_DPI, ImageType.GRAY);
+                try {
+                    return qrDecoder.decode(image);
+                } catch (NotFoundException e) {
+                    // Try the next page
+                }
+            }
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+}
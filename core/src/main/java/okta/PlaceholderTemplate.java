@@ -0,0 +1,236 @@
+package okta;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A request parsed into literal byte ranges and placeholders, so the TOTP code is written
+ * exactly where the request asks for it instead of wherever a regex happens to match.
+ * Supported placeholders:
+ * <ul>
+ *     <li>{@code {{totp}}} - the code for the request's account, as the regex target would use</li>
+ *     <li>{@code {{totp:next}}} - the code of the next TOTP window</li>
+ *     <li>{@code {{totp:NAME}}} - the current code of the account named NAME</li>
+ *     <li>{@code {{epoch}}} - the current Unix time in seconds</li>
+ * </ul>
+ * All placeholders share the {@code {{} prefix, so one pass looking for that prefix finds
+ * every candidate. Each spelling is parsed once and interned; rendering is a linear copy.
+ */
+public final class PlaceholderTemplate {
+    public enum Kind {
+        TOTP,
+        TOTP_NEXT,
+        ACCOUNT_TOTP,
+        EPOCH
+    }
+
+    /**
+     * One placeholder spelling. Instances are interned, so equal spellings share one instance.
+     */
+    public static final class Placeholder {
+        private final Kind kind;
+        private final String account;
+        private final byte[] text;
+
+        private Placeholder(Kind kind, String account, String text) {
+            this.kind = kind;
+            this.account = account;
+            this.text = text.getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the account name of a {@link Kind#ACCOUNT_TOTP} placeholder, otherwise null
+         */
+        public String getAccount() {
+            return account;
+        }
+
+        @Override
+        public String toString() {
+            return new String(text, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static final byte OPEN = '{';
+    private static final byte CLOSE = '}';
+    private static final int MAX_PLACEHOLDER_LENGTH = 128;
+    private static final int MAX_INTERNED = 1024;
+    private static final Map<String, Placeholder> INTERNED = new ConcurrentHashMap<>();
+    private static final PlaceholderTemplate EMPTY = new PlaceholderTemplate(0, new int[0], new Placeholder[0]);
+
+    private final int length;
+    private final int[] offsets;
+    private final Placeholder[] placeholders;
+
+    private PlaceholderTemplate(int length, int[] offsets, Placeholder[] placeholders) {
+        this.length = length;
+        this.offsets = offsets;
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * Finds the placeholders in {@code bytes[0, scanEnd)}. Anything that only looks like a
+     * placeholder, such as {@code {{unknown}}}, stays literal.
+     */
+    public static PlaceholderTemplate parse(byte[] bytes, int scanEnd) {
+        int end = Math.min(scanEnd, bytes.length);
+        List<Integer> offsets = null;
+        List<Placeholder> placeholders = null;
+
+        int i = 0;
+        while (i < end - 1) {
+            if (bytes[i] != OPEN || bytes[i + 1] != OPEN) {
+                i++;
+                continue;
+            }
+            Placeholder placeholder = placeholderAt(bytes, i, end);
+            if (placeholder == null) {
+                i++;
+                continue;
+            }
+            if (offsets == null) {
+                offsets = new ArrayList<>();
+                placeholders = new ArrayList<>();
+            }
+            offsets.add(i);
+            placeholders.add(placeholder);
+            i += placeholder.text.length;
+        }
+
+        if (offsets == null) {
+            return EMPTY;
+        }
+        int[] offsetArray = new int[offsets.size()];
+        for (int j = 0; j < offsetArray.length; j++) {
+            offsetArray[j] = offsets.get(j);
+        }
+        return new PlaceholderTemplate(bytes.length, offsetArray, placeholders.toArray(new Placeholder[0]));
+    }
+
+    public boolean isEmpty() {
+        return placeholders.length == 0;
+    }
+
+    public int size() {
+        return placeholders.length;
+    }
+
+    public Placeholder getPlaceholder(int index) {
+        return placeholders[index];
+    }
+
+    public int getOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * Copies {@code source} with every placeholder replaced by its value. Each distinct
+     * placeholder is resolved once, so repeated {@code {{totp}}} placeholders get the same code.
+     * A null value leaves that placeholder as it is.
+     *
+     * @param source the bytes this template was parsed from
+     * @return the rendered bytes, or null if no placeholder was replaced
+     */
+    public byte[] render(byte[] source, Function<Placeholder, String> resolver) {
+        if (source.length != length) {
+            throw new IllegalArgumentException("Template was parsed from " + length + " bytes, not " + source.length + ".");
+        }
+
+        Map<Placeholder, byte[]> values = new HashMap<>();
+        byte[][] replacements = new byte[placeholders.length][];
+        int outputLength = length;
+        boolean replaced = false;
+        for (int i = 0; i < placeholders.length; i++) {
+            Placeholder placeholder = placeholders[i];
+            byte[] value = values.get(placeholder);
+            if (value == null && !values.containsKey(placeholder)) {
+                String resolved = resolver.apply(placeholder);
+                value = resolved == null ? null : resolved.getBytes(StandardCharsets.ISO_8859_1);
+                values.put(placeholder, value);
+            }
+            if (value != null) {
+                replacements[i] = value;
+                replaced = true;
+                outputLength += value.length - placeholder.text.length;
+            }
+        }
+        if (!replaced) {
+            return null;
+        }
+
+        // Linear copy of literal ranges and values
+        byte[] output = new byte[outputLength];
+        int read = 0;
+        int write = 0;
+        for (int i = 0; i < placeholders.length; i++) {
+            byte[] value = replacements[i];
+            if (value == null) {
+                continue;
+            }
+            int literal = offsets[i] - read;
+            System.arraycopy(source, read, output, write, literal);
+            write += literal;
+            System.arraycopy(value, 0, output, write, value.length);
+            write += value.length;
+            read = offsets[i] + placeholders[i].text.length;
+        }
+        System.arraycopy(source, read, output, write, length - read);
+        return output;
+    }
+
+    private static Placeholder placeholderAt(byte[] bytes, int start, int end) {
+        int limit = Math.min(end - 1, start + MAX_PLACEHOLDER_LENGTH);
+        for (int i = start + 2; i < limit; i++) {
+            byte b = bytes[i];
+            if (b == CLOSE && bytes[i + 1] == CLOSE) {
+                return intern(new String(bytes, start, i + 2 - start, StandardCharsets.ISO_8859_1));
+            }
+            if (b == OPEN || b == '\r' || b == '\n') {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static Placeholder intern(String text) {
+        Placeholder placeholder = INTERNED.get(text);
+        if (placeholder != null) {
+            return placeholder;
+        }
+        placeholder = parsePlaceholder(text);
+        if (placeholder != null && INTERNED.size() < MAX_INTERNED) {
+            Placeholder existing = INTERNED.putIfAbsent(text, placeholder);
+            return existing != null ? existing : placeholder;
+        }
+        return placeholder;
+    }
+
+    private static Placeholder parsePlaceholder(String text) {
+        String token = text.substring(2, text.length() - 2).trim();
+        if (token.equals("totp")) {
+            return new Placeholder(Kind.TOTP, null, text);
+        }
+        if (token.equals("epoch")) {
+            return new Placeholder(Kind.EPOCH, null, text);
+        }
+        if (token.startsWith("totp:")) {
+            String argument = token.substring("totp:".length()).trim();
+            if (argument.equals("next")) {
+                return new Placeholder(Kind.TOTP_NEXT, null, text);
+            }
+            if (!argument.isEmpty()) {
+                return new Placeholder(Kind.ACCOUNT_TOTP, argument, text);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,236 @@
+package okta;
+
+import com.google.zxing.*;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Decodes Okta Verify enrollment QR codes from images, clipboard contents and PDFs. Safe to
+ * call from several threads at once. Owns a pool of binarizer threads; call {@link #shutdown()}
+ * when done with it.
+ * <p>
+ * Large screenshots are handled in stages, cheapest first: a downscaled copy of the whole
+ * image, then a crop around the densest high-contrast region, then the full-resolution image
+ * with TRY_HARDER. Each stage runs the hybrid and global-histogram binarizers in parallel and
+ * takes whichever decodes first. Only the QR format is attempted.
+ */
+public class QrDecoder {
+    private static final int FAST_PATH_MAX_DIMENSION = 1600;
+    private static final int ROI_ANALYSIS_DIMENSION = 800;
+    private static final int ROI_TILE_SIZE = 16;
+    private static final int ROI_MARGIN_TILES = 2;
+    private static final int EDGE_THRESHOLD = 64;
+
+    private static final Map<DecodeHintType, Object> QR_HINTS = hints(false);
+    private static final Map<DecodeHintType, Object> QR_HINTS_TRY_HARDER = hints(true);
+
+    // Attempts block until they finish, so the pool grows with concurrent decodes and idles out
+    private final ExecutorService binarizerPool = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "okta-qr-binarizer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Stops the binarizer threads, for example when the extension is unloaded. Decodes still
+     * running are interrupted and later ones find no code.
+     */
+    public void shutdown() {
+        binarizerPool.shutdownNow();
+    }
+
+    public String decode(File qrFile) throws IOException, NotFoundException {
+        if (qrFile.getName().toLowerCase(Locale.ROOT).endsWith(".pdf")) {
+            // Kept in its own class so PDFBox is only loaded when a PDF is actually imported
+            return PdfQrSource.decode(qrFile, this);
+        }
+
+        BufferedImage bufferedImage = ImageIO.read(qrFile);
+        if (bufferedImage == null) {
+            throw new IOException("Unsupported image format: " + qrFile.getName());
+        }
+        return decode(bufferedImage);
+    }
+
+    public String decode(Image image) throws NotFoundException {
+        return decode(toBufferedImage(image));
+    }
+
+    public String decode(BufferedImage image) throws NotFoundException {
+        BufferedImage scaled = downscale(image, FAST_PATH_MAX_DIMENSION);
+        String text = decodeParallel(scaled, QR_HINTS);
+        if (text != null) {
+            return text;
+        }
+
+        Rectangle region = locateRegionOfInterest(image);
+        if (region != null) {
+            BufferedImage crop = image.getSubimage(region.x, region.y, region.width, region.height);
+            text = decodeParallel(downscale(crop, FAST_PATH_MAX_DIMENSION), QR_HINTS);
+            if (text != null) {
+                return text;
+            }
+        }
+
+        text = decodeParallel(image, QR_HINTS_TRY_HARDER);
+        if (text != null) {
+            return text;
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    private String decodeParallel(BufferedImage image, Map<DecodeHintType, Object> hints) {
+        LuminanceSource source = new BufferedImageLuminanceSource(image);
+        List<Callable<String>> attempts = Arrays.asList(
+                () -> new QRCodeReader().decode(new BinaryBitmap(new HybridBinarizer(source)), hints).getText(),
+                () -> new QRCodeReader().decode(new BinaryBitmap(new GlobalHistogramBinarizer(source)), hints).getText());
+        try {
+            return binarizerPool.invokeAny(attempts);
+        } catch (ExecutionException e) {
+            // Neither binarizer found a code
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (RejectedExecutionException e) {
+            // Shut down
+            return null;
+        }
+    }
+
+    /**
+     * Finds the connected cluster of tiles with the most light/dark transitions, which on an
+     * enrollment page screenshot is the QR code, and returns it with a small margin in the
+     * coordinates of the original image.
+     */
+    static Rectangle locateRegionOfInterest(BufferedImage image) {
+        BufferedImage gray = toGray(downscale(image, ROI_ANALYSIS_DIMENSION));
+        double scale = (double) image.getWidth() / gray.getWidth();
+        int columns = gray.getWidth() / ROI_TILE_SIZE;
+        int rows = gray.getHeight() / ROI_TILE_SIZE;
+        if (columns < 2 || rows < 2) {
+            return null;
+        }
+
+        byte[] pixels = new byte[gray.getWidth()];
+        int[][] density = new int[rows][columns];
+        int best = 0;
+        int bestRow = 0;
+        int bestColumn = 0;
+        for (int y = 0; y < rows * ROI_TILE_SIZE; y++) {
+            gray.getRaster().getDataElements(0, y, gray.getWidth(), 1, pixels);
+            for (int x = 1; x < columns * ROI_TILE_SIZE; x++) {
+                if (Math.abs((pixels[x] & 0xff) - (pixels[x - 1] & 0xff)) > EDGE_THRESHOLD) {
+                    int row = y / ROI_TILE_SIZE;
+                    int column = x / ROI_TILE_SIZE;
+                    if (++density[row][column] > best) {
+                        best = density[row][column];
+                        bestRow = row;
+                        bestColumn = column;
+                    }
+                }
+            }
+        }
+        if (best == 0) {
+            return null;
+        }
+
+        // Grow from the densest tile across neighbours that are at least half as dense
+        boolean[][] visited = new boolean[rows][columns];
+        Deque<int[]> pending = new ArrayDeque<>();
+        pending.add(new int[]{bestRow, bestColumn});
+        visited[bestRow][bestColumn] = true;
+        int top = bestRow, bottom = bestRow, left = bestColumn, right = bestColumn;
+        while (!pending.isEmpty()) {
+            int[] tile = pending.poll();
+            top = Math.min(top, tile[0]);
+            bottom = Math.max(bottom, tile[0]);
+            left = Math.min(left, tile[1]);
+            right = Math.max(right, tile[1]);
+            for (int[] step : new int[][]{{1, 0}, {-1, 0}, {0, 1}, {0, -1}}) {
+                int row = tile[0] + step[0];
+                int column = tile[1] + step[1];
+                if (row >= 0 && row < rows && column >= 0 && column < columns
+                        && !visited[row][column] && density[row][column] * 2 >= best) {
+                    visited[row][column] = true;
+                    pending.add(new int[]{row, column});
+                }
+            }
+        }
+
+        int x = (int) (Math.max(0, left - ROI_MARGIN_TILES) * ROI_TILE_SIZE * scale);
+        int y = (int) (Math.max(0, top - ROI_MARGIN_TILES) * ROI_TILE_SIZE * scale);
+        int maxX = (int) Math.min(image.getWidth(), (right + 1 + ROI_MARGIN_TILES) * ROI_TILE_SIZE * scale);
+        int maxY = (int) Math.min(image.getHeight(), (bottom + 1 + ROI_MARGIN_TILES) * ROI_TILE_SIZE * scale);
+        return maxX > x && maxY > y ? new Rectangle(x, y, maxX - x, maxY - y) : null;
+    }
+
+    private static BufferedImage downscale(BufferedImage image, int maxDimension) {
+        int largest = Math.max(image.getWidth(), image.getHeight());
+        if (largest <= maxDimension) {
+            return image;
+        }
+
+        double factor = (double) maxDimension / largest;
+        int width = Math.max(1, (int) (image.getWidth() * factor));
+        int height = Math.max(1, (int) (image.getHeight() * factor));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g2 = scaled.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(image, 0, 0, width, height, null);
+        g2.dispose();
+        return scaled;
+    }
+
+    private static BufferedImage toGray(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return image;
+        }
+        BufferedImage gray = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g2 = gray.createGraphics();
+        g2.drawImage(image, 0, 0, null);
+        g2.dispose();
+        return gray;
+    }
+
+    private static BufferedImage toBufferedImage(Image image) {
+        if (image instanceof BufferedImage) {
+            return (BufferedImage) image;
+        }
+        BufferedImage buffered = new BufferedImage(image.getWidth(null), image.getHeight(null), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = buffered.createGraphics();
+        g2.drawImage(image, 0, 0, null);
+        g2.dispose();
+        return buffered;
+    }
+
+    private static Map<DecodeHintType, Object> hints(boolean tryHarder) {
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singletonList(BarcodeFormat.QR_CODE));
+        if (tryHarder) {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+        return Collections.unmodifiableMap(hints);
+    }
+}
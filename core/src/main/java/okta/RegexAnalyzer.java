@@ -0,0 +1,139 @@
+package okta;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tries a pattern against sample bodies before it goes live, to catch patterns that would blow
+ * the {@link RegexBudget} on real traffic. Besides the given samples it always tries a few
+ * synthetic bodies that are known to trip lookarounds and nested quantifiers: long runs of
+ * digits, digits broken by separators, and a JSON array of numbers.
+ */
+public final class RegexAnalyzer {
+    private static final int SYNTHETIC_SIZE = 64 * 1024;
+    // Samples are held to the step budget only; a cold JIT would make the clock flag good patterns
+    private static final long ANALYSIS_MAX_MILLIS = 2_000;
+
+    public static final class Report {
+        private final RegexBudget budget;
+        private final int samples;
+        private final int aborted;
+        private final long worstNanos;
+        private final double worstStepsPerChar;
+        private final String worstSample;
+
+        Report(RegexBudget budget, int samples, int aborted, long worstNanos, double worstStepsPerChar, String worstSample) {
+            this.budget = budget;
+            this.samples = samples;
+            this.aborted = aborted;
+            this.worstNanos = worstNanos;
+            this.worstStepsPerChar = worstStepsPerChar;
+            this.worstSample = worstSample;
+        }
+
+        public int getSamples() {
+            return samples;
+        }
+
+        /**
+         * @return how many samples ran out of budget
+         */
+        public int getAborted() {
+            return aborted;
+        }
+
+        public long getWorstNanos() {
+            return worstNanos;
+        }
+
+        public double getWorstStepsPerChar() {
+            return worstStepsPerChar;
+        }
+
+        /**
+         * @return a description of the sample that cost the most, or null if there were none
+         */
+        public String getWorstSample() {
+            return worstSample;
+        }
+
+        /**
+         * @return whether a sample ran out of budget or used more than a quarter of it
+         */
+        public boolean isExpensive() {
+            return aborted > 0 || worstStepsPerChar > budget.getMaxStepsPerChar() / 4.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d bodies tested, %d over budget, worst %.1f ms and %.0f reads per character (%s)",
+                    samples, aborted, worstNanos / 1e6, worstStepsPerChar, worstSample);
+        }
+    }
+
+    private RegexAnalyzer() {
+    }
+
+    /**
+     * @param samples request bodies, already cut to the scan window
+     */
+    public static Report analyze(Pattern pattern, List<byte[]> samples, RegexBudget budget) {
+        RegexBudget analysisBudget = new RegexBudget(Math.max(budget.getMaxMillis(), ANALYSIS_MAX_MILLIS), budget.getMaxStepsPerChar());
+        List<byte[]> bodies = new ArrayList<>(samples);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < samples.size(); i++) {
+            names.add("sample body " + (i + 1));
+        }
+        bodies.add(repeat("1234567890", SYNTHETIC_SIZE));
+        names.add(SYNTHETIC_SIZE / 1024 + " KB of digits");
+        bodies.add(repeat("123456-", SYNTHETIC_SIZE));
+        names.add(SYNTHETIC_SIZE / 1024 + " KB of separated digits");
+        bodies.add(repeat("12345678,", SYNTHETIC_SIZE));
+        names.add(SYNTHETIC_SIZE / 1024 + " KB JSON number array");
+
+        int aborted = 0;
+        long worstNanos = 0;
+        double worstStepsPerChar = 0;
+        String worstSample = null;
+        boolean worstAborted = false;
+        for (int i = 0; i < bodies.size(); i++) {
+            byte[] body = bodies.get(i);
+            if (body.length == 0) {
+                continue;
+            }
+            RegexBudget.Meter meter = analysisBudget.start();
+            boolean over = false;
+            try {
+                Matcher matcher = pattern.matcher(RegexBudget.wrap(new ByteCharSequence(body), meter));
+                while (RegexBudget.find(matcher, meter)) {
+                    // Only the work to find the matches is of interest
+                }
+            } catch (RegexBudget.ExceededException e) {
+                over = true;
+                aborted++;
+            }
+
+            // An aborted sample is worse than any that finished
+            double stepsPerChar = (double) meter.getSteps() / body.length;
+            if (worstSample == null || (over && !worstAborted) || (over == worstAborted && stepsPerChar > worstStepsPerChar)) {
+                worstSample = names.get(i);
+                worstAborted = over;
+            }
+            worstStepsPerChar = Math.max(worstStepsPerChar, stepsPerChar);
+            worstNanos = Math.max(worstNanos, meter.getElapsedNanos());
+        }
+        return new Report(budget, bodies.size(), aborted, worstNanos, worstStepsPerChar, worstSample);
+    }
+
+    private static byte[] repeat(String unit, int size) {
+        byte[] bytes = new byte[size];
+        byte[] unitBytes = unit.getBytes(StandardCharsets.ISO_8859_1);
+        for (int i = 0; i < size; i++) {
+            bytes[i] = unitBytes[i % unitBytes.length];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,169 @@
+package okta;
+
+import java.util.regex.Matcher;
+
+/**
+ * Caps how much work one request's regex matching may do, so a pattern that backtracks badly
+ * cannot stall Scanner threads. Work is counted in characters read by the matcher through
+ * {@link #wrap}, which allows a fixed number of reads per character of text wrapped for the
+ * request, and the clock is checked every {@value #CLOCK_CHECK_INTERVAL} reads. When either
+ * limit is hit the matcher is aborted with {@link ExceededException}. Patterns whose recursion
+ * overflows the thread's stack are aborted the same way when run through {@link #find}.
+ */
+public final class RegexBudget {
+    // Generous enough for the first requests, before the JIT has compiled the matcher
+    public static final long DEFAULT_MAX_MILLIS = 200;
+    public static final long MAX_MILLIS_LIMIT = 10_000;
+    // Linear patterns read each character a few times; catastrophic ones read it thousands of times
+    public static final int DEFAULT_MAX_STEPS_PER_CHAR = 64;
+    public static final RegexBudget DEFAULT = new RegexBudget(DEFAULT_MAX_MILLIS, DEFAULT_MAX_STEPS_PER_CHAR);
+    private static final int CLOCK_CHECK_INTERVAL = 4096;
+    // Allowance every request starts with, so short bodies may use patterns with long lookarounds
+    private static final long BASE_STEPS = 100_000;
+
+    private final long maxMillis;
+    private final int maxStepsPerChar;
+
+    /**
+     * @throws IllegalArgumentException if a limit is not positive or the time is over 10 seconds
+     */
+    public RegexBudget(long maxMillis, int maxStepsPerChar) {
+        if (maxMillis < 1 || maxMillis > MAX_MILLIS_LIMIT) {
+            throw new IllegalArgumentException("Regex time budget must be between 1 and " + MAX_MILLIS_LIMIT + " ms.");
+        }
+        if (maxStepsPerChar < 1) {
+            throw new IllegalArgumentException("Regex step budget must be positive.");
+        }
+        this.maxMillis = maxMillis;
+        this.maxStepsPerChar = maxStepsPerChar;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public int getMaxStepsPerChar() {
+        return maxStepsPerChar;
+    }
+
+    /**
+     * Starts the budget for one request. A meter is not thread-safe; use one per request.
+     */
+    public Meter start() {
+        return new Meter(this);
+    }
+
+    /**
+     * @return {@code text} reading through the meter, whose step allowance grows with its length
+     */
+    public static CharSequence wrap(CharSequence text, Meter meter) {
+        meter.maxSteps += (long) text.length() * meter.budget.maxStepsPerChar;
+        return new MeteredCharSequence(text, meter);
+    }
+
+    /**
+     * {@link Matcher#find()} over text from {@link #wrap}, turning a stack overflow in the
+     * matcher into {@link ExceededException}.
+     */
+    public static boolean find(Matcher matcher, Meter meter) {
+        try {
+            return matcher.find();
+        } catch (StackOverflowError e) {
+            throw new ExceededException("Regex ran out of stack after " + meter.getSteps() + " steps.", meter);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return maxMillis + " ms, " + maxStepsPerChar + " steps per character";
+    }
+
+    /**
+     * The work done so far for one request.
+     */
+    public static final class Meter {
+        private final RegexBudget budget;
+        private final long startNanos = System.nanoTime();
+        private final long deadlineNanos;
+        private long maxSteps = BASE_STEPS;
+        private long steps;
+
+        private Meter(RegexBudget budget) {
+            this.budget = budget;
+            this.deadlineNanos = startNanos + budget.maxMillis * 1_000_000L;
+        }
+
+        public long getSteps() {
+            return steps;
+        }
+
+        public long getElapsedNanos() {
+            return System.nanoTime() - startNanos;
+        }
+
+        private void step() {
+            steps++;
+            if (steps > maxSteps || ((steps & (CLOCK_CHECK_INTERVAL - 1)) == 0 && System.nanoTime() - deadlineNanos > 0)) {
+                throw new ExceededException("Regex exceeded its budget of " + budget + " after "
+                        + getElapsedNanos() / 1_000_000 + " ms and " + steps + " steps.", this);
+            }
+        }
+    }
+
+    /**
+     * Thrown out of the matcher when a request's budget runs out; the matcher is left unusable.
+     */
+    public static final class ExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final long steps;
+        private final long elapsedNanos;
+
+        ExceededException(String message, Meter meter) {
+            // Thrown from deep inside the matcher, where a stack trace is expensive and useless
+            super(message, null, false, false);
+            this.steps = meter.getSteps();
+            this.elapsedNanos = meter.getElapsedNanos();
+        }
+
+        public long getSteps() {
+            return steps;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+
+    private static final class MeteredCharSequence implements CharSequence {
+        private final CharSequence text;
+        private final Meter meter;
+
+        MeteredCharSequence(CharSequence text, Meter meter) {
+            this.text = text;
+            this.meter = meter;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            meter.step();
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            // Part of text already paid for, so no new allowance
+            return new MeteredCharSequence(text.subSequence(start, end), meter);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
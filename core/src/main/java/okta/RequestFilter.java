@@ -0,0 +1,130 @@
+package okta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Precompiled host, method and path filter deciding cheaply whether a request may need a code.
+ * Hosts are exact names, looked up in a hash set, or {@code *.example.com} wildcards, checked as
+ * suffixes; a request for an unrelated host costs one lookup plus one suffix comparison per
+ * wildcard and allocates nothing. Methods and path prefixes are only checked for matching
+ * hosts; empty lists accept any method or path.
+ */
+public final class RequestFilter {
+    public static final RequestFilter NONE = new RequestFilter();
+
+    private final List<String> hostList;
+    private final List<String> methodList;
+    private final List<String> pathPrefixList;
+    private final Set<String> exactHosts = new HashSet<>();
+    // Wildcard hosts as their ".suffix"
+    private final String[] hostSuffixes;
+    private final Set<String> methods = new HashSet<>();
+    private final String[] pathPrefixes;
+
+    private RequestFilter() {
+        this.hostList = Collections.emptyList();
+        this.methodList = Collections.emptyList();
+        this.pathPrefixList = Collections.emptyList();
+        this.hostSuffixes = new String[0];
+        this.pathPrefixes = new String[0];
+    }
+
+    /**
+     * @throws IllegalArgumentException if no host is given or an entry is malformed
+     */
+    public RequestFilter(List<String> hosts, List<String> methods, List<String> pathPrefixes) {
+        this.hostList = normalize(hosts, true);
+        this.methodList = normalize(methods, false);
+        this.pathPrefixList = normalize(pathPrefixes, false);
+        if (hostList.isEmpty()) {
+            throw new IllegalArgumentException("At least one host is required.");
+        }
+
+        List<String> suffixes = new ArrayList<>();
+        for (String host : hostList) {
+            if (host.startsWith("*.") && host.indexOf('*', 1) < 0) {
+                suffixes.add(host.substring(1));
+            } else if (host.contains("*")) {
+                throw new IllegalArgumentException("Invalid host '" + host + "'. Wildcards must look like *.example.com.");
+            } else {
+                exactHosts.add(host);
+            }
+        }
+        this.hostSuffixes = suffixes.toArray(new String[0]);
+        for (String method : methodList) {
+            this.methods.add(method.toUpperCase(Locale.ROOT));
+        }
+        for (String prefix : pathPrefixList) {
+            if (!prefix.startsWith("/")) {
+                throw new IllegalArgumentException("Invalid path prefix '" + prefix + "'. It must start with '/'.");
+            }
+        }
+        this.pathPrefixes = pathPrefixList.toArray(new String[0]);
+    }
+
+    public List<String> getHosts() {
+        return hostList;
+    }
+
+    public List<String> getMethods() {
+        return methodList;
+    }
+
+    public List<String> getPathPrefixes() {
+        return pathPrefixList;
+    }
+
+    public boolean matchesHost(String host) {
+        if (host == null) {
+            return false;
+        }
+        // Returns the same instance for host names that are already lower case
+        String lower = host.toLowerCase(Locale.ROOT);
+        if (exactHosts.contains(lower)) {
+            return true;
+        }
+        for (String suffix : hostSuffixes) {
+            if (lower.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean matchesMethod(String method) {
+        return methods.isEmpty() || (method != null && methods.contains(method));
+    }
+
+    public boolean matchesPath(String path) {
+        if (pathPrefixes.length == 0) {
+            return true;
+        }
+        if (path == null) {
+            return false;
+        }
+        for (String prefix : pathPrefixes) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> normalize(List<String> entries, boolean lowerCase) {
+        List<String> normalized = new ArrayList<>();
+        if (entries != null) {
+            for (String entry : entries) {
+                String trimmed = entry.trim();
+                if (!trimmed.isEmpty()) {
+                    normalized.add(lowerCase ? trimmed.toLowerCase(Locale.ROOT) : trimmed);
+                }
+            }
+        }
+        return Collections.unmodifiableList(normalized);
+    }
+}
@@ -0,0 +1,53 @@
+package okta;
+
+/**
+ * Guard band before a TOTP window boundary. A request injected that close to rollover would
+ * likely reach the server in the next window, so it either gets the next window's code or is
+ * held until the boundary passes.
+ */
+public final class RolloverGuard {
+    public static final long MAX_GUARD_BAND_MILLIS = 10_000L;
+    public static final RolloverGuard DISABLED = new RolloverGuard(0, Policy.USE_NEXT_CODE);
+
+    public enum Policy {
+        USE_NEXT_CODE("Use next code"),
+        WAIT_FOR_ROLLOVER("Wait for rollover");
+
+        private final String label;
+
+        Policy(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final long guardBandMillis;
+    private final Policy policy;
+
+    /**
+     * @throws IllegalArgumentException if the band is negative or longer than {@link #MAX_GUARD_BAND_MILLIS}
+     */
+    public RolloverGuard(long guardBandMillis, Policy policy) {
+        if (guardBandMillis < 0 || guardBandMillis > MAX_GUARD_BAND_MILLIS) {
+            throw new IllegalArgumentException("Guard band must be between 0 and " + MAX_GUARD_BAND_MILLIS + " ms.");
+        }
+        this.guardBandMillis = guardBandMillis;
+        this.policy = policy;
+    }
+
+    public long getGuardBandMillis() {
+        return guardBandMillis;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public boolean isEnabled() {
+        return guardBandMillis > 0;
+    }
+}
@@ -0,0 +1,85 @@
+package okta;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Encrypts small payloads such as shared secrets under a passphrase with AES-256-GCM. The key
+ * is derived with PBKDF2-HMAC-SHA256 and a random salt, and salt and IV are stored with the
+ * ciphertext, so the output is one self-contained Base64 string.
+ */
+final class SecretCipher {
+    private static final byte FORMAT_VERSION = 1;
+    private static final int ITERATIONS = 210_000;
+    private static final int KEY_BITS = 256;
+    private static final int SALT_BYTES = 16;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private SecretCipher() {
+    }
+
+    static String encrypt(char[] passphrase, byte[] plaintext) throws GeneralSecurityException {
+        byte[] salt = new byte[SALT_BYTES];
+        byte[] iv = new byte[IV_BYTES];
+        RANDOM.nextBytes(salt);
+        RANDOM.nextBytes(iv);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, deriveKey(passphrase, salt), new GCMParameterSpec(TAG_BITS, iv));
+        cipher.updateAAD(new byte[]{FORMAT_VERSION});
+        byte[] ciphertext = cipher.doFinal(plaintext);
+
+        ByteBuffer blob = ByteBuffer.allocate(1 + SALT_BYTES + IV_BYTES + ciphertext.length);
+        blob.put(FORMAT_VERSION).put(salt).put(iv).put(ciphertext);
+        return Base64.getEncoder().encodeToString(blob.array());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the passphrase is wrong or the data was modified
+     */
+    static byte[] decrypt(char[] passphrase, String encoded) throws GeneralSecurityException {
+        ByteBuffer blob;
+        try {
+            blob = ByteBuffer.wrap(Base64.getDecoder().decode(encoded));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Saved secrets are corrupted.");
+        }
+        if (blob.remaining() < 1 + SALT_BYTES + IV_BYTES || blob.get() != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Saved secrets are corrupted or use an unknown format.");
+        }
+        byte[] salt = new byte[SALT_BYTES];
+        byte[] iv = new byte[IV_BYTES];
+        blob.get(salt).get(iv);
+        byte[] ciphertext = new byte[blob.remaining()];
+        blob.get(ciphertext);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, deriveKey(passphrase, salt), new GCMParameterSpec(TAG_BITS, iv));
+        cipher.updateAAD(new byte[]{FORMAT_VERSION});
+        try {
+            return cipher.doFinal(ciphertext);
+        } catch (AEADBadTagException e) {
+            throw new IllegalArgumentException("Wrong passphrase, or the saved secrets were modified.");
+        }
+    }
+
+    private static SecretKeySpec deriveKey(char[] passphrase, byte[] salt) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(passphrase, salt, ITERATIONS, KEY_BITS);
+        try {
+            byte[] key = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            return new SecretKeySpec(key, "AES");
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
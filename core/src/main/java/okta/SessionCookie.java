@@ -0,0 +1,107 @@
+package okta;
+
+import java.util.Locale;
+
+/**
+ * A cookie kept in an {@link MfaSessionCache} session together with the domain and path it was
+ * set for, so it is only sent where a browser would send it (RFC 6265 domain and path matching).
+ */
+public final class SessionCookie {
+    private final String name;
+    private final String value;
+    private final String domain;
+    private final boolean hostOnly;
+    private final String path;
+
+    private SessionCookie(String name, String value, String domain, boolean hostOnly, String path) {
+        this.name = name;
+        this.value = value;
+        this.domain = domain;
+        this.hostOnly = hostOnly;
+        this.path = path;
+    }
+
+    /**
+     * A cookie that a request to {@code host} already carried; its scope is unknown, so it is
+     * kept to that host.
+     */
+    public static SessionCookie hostOnly(String name, String value, String host) {
+        return new SessionCookie(name, value, host.toLowerCase(Locale.ROOT), true, "/");
+    }
+
+    /**
+     * @param setByHost   host of the response that set the cookie
+     * @param domain      the Domain attribute, or null for a host-only cookie
+     * @param path        the Path attribute, or null for the directory of {@code requestPath}
+     * @param requestPath path of the request the response answered
+     * @return the cookie, or null if the Domain attribute does not cover {@code setByHost}, which
+     * a browser would reject as well
+     */
+    public static SessionCookie fromSetCookie(String name, String value, String setByHost, String domain, String path,
+                                              String requestPath) {
+        String host = setByHost.toLowerCase(Locale.ROOT);
+        String cookiePath = path != null && path.startsWith("/") ? path : defaultPath(requestPath);
+        String normalized = domain == null ? "" : domain.trim().toLowerCase(Locale.ROOT);
+        if (normalized.startsWith(".")) {
+            normalized = normalized.substring(1);
+        }
+        if (normalized.isEmpty()) {
+            return new SessionCookie(name, value, host, true, cookiePath);
+        }
+        if (!domainMatches(host, normalized)) {
+            return null;
+        }
+        return new SessionCookie(name, value, normalized, false, cookiePath);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return whether a request to this host and path would carry the cookie
+     */
+    public boolean matches(String host, String requestPath) {
+        String lowerHost = host.toLowerCase(Locale.ROOT);
+        boolean hostMatches = hostOnly ? lowerHost.equals(domain) : domainMatches(lowerHost, domain);
+        return hostMatches && pathMatches(requestPath == null || requestPath.isEmpty() ? "/" : requestPath);
+    }
+
+    /**
+     * @return whether both cookies occupy the same slot in a cookie jar, so one replaces the other
+     */
+    public boolean sameSlot(SessionCookie other) {
+        return name.equals(other.name) && domain.equals(other.domain) && hostOnly == other.hostOnly && path.equals(other.path);
+    }
+
+    private boolean pathMatches(String requestPath) {
+        if (requestPath.equals(path)) {
+            return true;
+        }
+        return requestPath.startsWith(path) && (path.endsWith("/") || requestPath.charAt(path.length()) == '/');
+    }
+
+    private static boolean domainMatches(String host, String domain) {
+        return host.equals(domain) || host.endsWith("." + domain);
+    }
+
+    private static String defaultPath(String requestPath) {
+        if (requestPath == null || !requestPath.startsWith("/")) {
+            return "/";
+        }
+        int lastSlash = requestPath.lastIndexOf('/');
+        return lastSlash == 0 ? "/" : requestPath.substring(0, lastSlash);
+    }
+}
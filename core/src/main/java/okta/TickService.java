@@ -0,0 +1,120 @@
+package okta;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * A single daemon thread that ticks on every whole second and publishes TOTP countdown and
+ * rollover events to its subscribers. Each subscription brings its own period, so one ticker
+ * serves the background precompute as well as every panel, and a rollover is reported exactly
+ * once per window.
+ * <p>
+ * Ticks are re-aligned to the wall clock every time, so they do not drift over a session that
+ * stays open for days. Callbacks run on the tick thread and must hand UI work to the Event
+ * Dispatch Thread themselves.
+ */
+public class TickService {
+    private static final long TICK_MILLIS = 1_000L;
+
+    private final ScheduledExecutorService scheduler;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final Consumer<String> errorLog;
+
+    public interface Listener {
+        /**
+         * Called once per tick.
+         *
+         * @param timeMillis      wall-clock time of the tick
+         * @param millisRemaining time left in the current window
+         */
+        void onCountdown(long timeMillis, long millisRemaining);
+
+        /**
+         * Called before {@link #onCountdown} on the first tick of a new window, and on the first
+         * tick after subscribing or after the period changed.
+         */
+        default void onRollover(long timeMillis, long step) {
+        }
+    }
+
+    public final class Subscription {
+        private final LongSupplier periodMillis;
+        private final Listener listener;
+        private long lastStep = Long.MIN_VALUE;
+        private long lastPeriod;
+
+        private Subscription(LongSupplier periodMillis, Listener listener) {
+            this.periodMillis = periodMillis;
+            this.listener = listener;
+        }
+
+        public void cancel() {
+            subscriptions.remove(this);
+        }
+
+        private void publish(long timeMillis) {
+            long period = periodMillis.getAsLong();
+            long step = Math.floorDiv(timeMillis, period);
+            if (step != lastStep || period != lastPeriod) {
+                lastStep = step;
+                lastPeriod = period;
+                listener.onRollover(timeMillis, step);
+            }
+            listener.onCountdown(timeMillis, period - Math.floorMod(timeMillis, period));
+        }
+    }
+
+    /**
+     * @param errorLog receives the message of any exception thrown by a listener; the ticker
+     *                 keeps running regardless
+     */
+    public TickService(Consumer<String> errorLog) {
+        this.errorLog = errorLog;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "okta-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleNextTick();
+    }
+
+    /**
+     * @param periodMillis supplies the window length, read on every tick so it may follow a
+     *                     changing configuration
+     */
+    public Subscription subscribe(LongSupplier periodMillis, Listener listener) {
+        Subscription subscription = new Subscription(periodMillis, listener);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public void shutdown() {
+        subscriptions.clear();
+        scheduler.shutdownNow();
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (Subscription subscription : subscriptions) {
+            try {
+                subscription.publish(now);
+            } catch (Exception e) {
+                errorLog.accept("Tick listener error: " + e.getMessage());
+            }
+        }
+        scheduleNextTick();
+    }
+
+    private void scheduleNextTick() {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        long delay = TICK_MILLIS - Math.floorMod(System.currentTimeMillis(), TICK_MILLIS);
+        scheduler.schedule(this::tick, delay, TimeUnit.MILLISECONDS);
+    }
+}
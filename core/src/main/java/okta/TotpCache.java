@@ -0,0 +1,143 @@
+package okta;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongFunction;
+
+/**
+ * Holds the TOTP code for the current time step so that lookups inside a window
+ * cost a single volatile read. The code for the following step can be computed ahead of
+ * rollover with {@link #precomputeNext(long)}, so the first caller of a new window does not
+ * pay for the HMAC either.
+ * <p>
+ * The cached window only ever moves forward. Callers whose clock offset puts them in an earlier
+ * window, such as a host whose clock runs behind, get the previous window's code from the cache
+ * or compute older codes directly, so they never evict the window everyone else reads.
+ */
+public class TotpCache {
+    private final LongFunction<String> generator;
+    private final long periodMillis;
+    private final OktaMetrics metrics;
+    private final AtomicReference<Window> window = new AtomicReference<>();
+
+    /**
+     * @param generator    computes the code for a given time step, returning null on failure
+     * @param periodMillis length of one time step
+     * @param metrics      receives cache hit and generation counts
+     */
+    public TotpCache(LongFunction<String> generator, long periodMillis, OktaMetrics metrics) {
+        this.generator = generator;
+        this.periodMillis = periodMillis;
+        this.metrics = metrics;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    public long millisUntilNextStep(long timeMillis) {
+        return periodMillis - Math.floorMod(timeMillis, periodMillis);
+    }
+
+    public String codeAt(long timeMillis) {
+        long step = Math.floorDiv(timeMillis, periodMillis);
+        Window current = window.get();
+        if (current != null && current.step == step) {
+            metrics.recordCacheHit();
+            return current.code;
+        }
+        if (current != null && step < current.step) {
+            return older(current, step);
+        }
+        return advance(current, step);
+    }
+
+    public void precomputeNext(long timeMillis) {
+        long step = Math.floorDiv(timeMillis, periodMillis);
+        if (codeAt(timeMillis) == null) {
+            return;
+        }
+
+        Window current = window.get();
+        if (current == null || current.step != step || current.next != null) {
+            return;
+        }
+
+        String next = generate(step + 1);
+        if (next != null) {
+            window.compareAndSet(current, new Window(step, current.code, next, current.previous));
+        }
+    }
+
+    /**
+     * Returns the code of an arbitrary step, using the cached window when it covers that step
+     * and never moving it.
+     */
+    public String codeForStep(long step) {
+        Window current = window.get();
+        if (current != null && current.step + 1 == step && current.next == null) {
+            // Asked for the upcoming window ahead of the scheduler, so precompute it now
+            precomputeNext(current.step * periodMillis);
+            current = window.get();
+        }
+        if (current != null && current.step == step) {
+            metrics.recordCacheHit();
+            return current.code;
+        }
+        if (current != null && current.step + 1 == step && current.next != null) {
+            metrics.recordCacheHit();
+            return current.next;
+        }
+        if (current != null && step < current.step) {
+            return older(current, step);
+        }
+        return generate(step);
+    }
+
+    private String advance(Window previous, long step) {
+        boolean rolledOver = previous != null && previous.step + 1 == step && previous.next != null;
+        String code;
+        if (rolledOver) {
+            metrics.recordCacheHit();
+            code = previous.next;
+        } else {
+            code = generate(step);
+        }
+        if (code == null) {
+            return null;
+        }
+
+        // Losing the race is harmless: every thread computes the same code for the same step, and
+        // a window that moved on in the meantime is never replaced by this older one
+        String previousCode = previous != null && previous.step + 1 == step ? previous.code : null;
+        window.compareAndSet(previous, new Window(step, code, null, previousCode));
+        return code;
+    }
+
+    private String older(Window current, long step) {
+        if (current.step - 1 == step && current.previous != null) {
+            metrics.recordCacheHit();
+            return current.previous;
+        }
+        return generate(step);
+    }
+
+    private String generate(long step) {
+        metrics.recordTotpGeneration();
+        return generator.apply(step);
+    }
+
+    private static final class Window {
+        final long step;
+        final String code;
+        final String next;
+        // Code of step - 1, kept for callers whose clock is still in that window
+        final String previous;
+
+        Window(long step, String code, String next, String previous) {
+            this.step = step;
+            this.code = code;
+            this.next = next;
+            this.previous = previous;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package okta;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
+/**
+ * RFC 6238 TOTP generator. Each thread keeps its own {@link Mac} initialised from a key spec
+ * that is built once, together with reusable counter, digest and digit buffers, so producing
+ * a code allocates nothing beyond the returned String.
+ */
+public final class TotpGenerator {
+    public static final int MIN_DIGITS = 6;
+    public static final int MAX_DIGITS = 8;
+    public static final int DEFAULT_DIGITS = 6;
+    public static final int DEFAULT_PERIOD_SECONDS = 30;
+
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000};
+
+    public enum Algorithm {
+        SHA1("HmacSHA1"),
+        SHA256("HmacSHA256"),
+        SHA512("HmacSHA512");
+
+        private final String macName;
+
+        Algorithm(String macName) {
+            this.macName = macName;
+        }
+
+        public String getMacName() {
+            return macName;
+        }
+    }
+
+    private final Algorithm algorithm;
+    private final int digits;
+    private final long periodMillis;
+    private final ThreadLocal<State> state;
+
+    public TotpGenerator(byte[] key, Algorithm algorithm, int digits, int periodSeconds) {
+        if (key == null || key.length == 0) {
+            throw new IllegalArgumentException("Shared secret must not be empty.");
+        }
+        if (digits < MIN_DIGITS || digits > MAX_DIGITS) {
+            throw new IllegalArgumentException("TOTP digits must be between " + MIN_DIGITS + " and " + MAX_DIGITS + ".");
+        }
+        if (periodSeconds <= 0) {
+            throw new IllegalArgumentException("TOTP period must be positive.");
+        }
+
+        this.algorithm = algorithm;
+        this.digits = digits;
+        this.periodMillis = periodSeconds * 1000L;
+
+        SecretKeySpec keySpec = new SecretKeySpec(key, algorithm.getMacName());
+        // Fail on the configuring thread rather than on the first Scanner request
+        State initial = new State(keySpec);
+        this.state = ThreadLocal.withInitial(() -> new State(keySpec));
+        this.state.set(initial);
+    }
+
+    public static TotpGenerator fromBase32(String secret, Algorithm algorithm, int digits, int periodSeconds) {
+        return new TotpGenerator(Base32.decode(secret), algorithm, digits, periodSeconds);
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getDigits() {
+        return digits;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    public long timeStep(long timeMillis) {
+        return Math.floorDiv(timeMillis, periodMillis);
+    }
+
+    public int generateCode(long timeStep) {
+        State current = state.get();
+        byte[] counter = current.counter;
+        long value = timeStep;
+        for (int i = counter.length - 1; i >= 0; i--) {
+            counter[i] = (byte) value;
+            value >>>= 8;
+        }
+
+        byte[] hash = current.hash;
+        try {
+            current.mac.update(counter);
+            current.mac.doFinal(hash, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("Digest buffer too small for " + algorithm, e);
+        }
+
+        // Dynamic truncation, RFC 4226 section 5.3
+        int offset = hash[hash.length - 1] & 0x0f;
+        int binary = ((hash[offset] & 0x7f) << 24)
+                | ((hash[offset + 1] & 0xff) << 16)
+                | ((hash[offset + 2] & 0xff) << 8)
+                | (hash[offset + 3] & 0xff);
+        return binary % POWERS_OF_TEN[digits];
+    }
+
+    public String generate(long timeStep) {
+        int code = generateCode(timeStep);
+        char[] buffer = state.get().digits;
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[i] = (char) ('0' + code % 10);
+            code /= 10;
+        }
+        return new String(buffer, 0, digits);
+    }
+
+    public String generateAt(long timeMillis) {
+        return generate(timeStep(timeMillis));
+    }
+
+    private static final class State {
+        final Mac mac;
+        final byte[] counter = new byte[8];
+        final byte[] hash;
+        final char[] digits = new char[MAX_DIGITS];
+
+        State(SecretKeySpec keySpec) {
+            try {
+                mac = Mac.getInstance(keySpec.getAlgorithm());
+                mac.init(keySpec);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to initialise " + keySpec.getAlgorithm() + ": " + e.getMessage(), e);
+            }
+            hash = new byte[mac.getMacLength()];
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package okta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A small HTTP service handing out current TOTP codes to tools outside Burp, such as load
+ * test rigs. It only listens on the loopback interface.
+ * <ul>
+ *     <li>{@code GET /totp} - the code of the default configuration</li>
+ *     <li>{@code GET /totp/NAME} - the code of the account named NAME</li>
+ *     <li>{@code ?next} - the code of the next window instead</li>
+ * </ul>
+ * The code is returned as plain text, with the milliseconds left in its window in the
+ * {@code X-TOTP-Remaining-Millis} header. Codes come from each account's {@link TotpCache}, so
+ * a request costs one lookup and no HMAC for most of the window. For a HOTP secret every
+ * request claims the next counter value, and the header is left out.
+ * <p>
+ * Run standalone with {@code java -jar okta-core-all.jar accounts.json [port]}, where the file
+ * maps account names to {@code {"secret": "BASE32", "algorithm": "SHA1", "digits": 6,
+ * "period": 30}}; an account named {@code default} answers {@code /totp}. Set the
+ * {@code OKTA_TOTP_TOKEN} environment variable to require {@code Authorization: Bearer TOKEN}.
+ */
+public class TotpServer {
+    public static final int DEFAULT_PORT = 8765;
+    public static final String REMAINING_HEADER = "X-TOTP-Remaining-Millis";
+    private static final String CONTEXT = "/totp";
+    private static final int BACKLOG = 1024;
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    static {
+        // Headers and body go out in separate writes; with Nagle on, delayed ACKs cap each
+        // keep-alive connection at about 25 requests per second
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+    }
+
+    private final Function<String, OktaConfig> accounts;
+    private final byte[] token;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LongAdder served = new LongAdder();
+
+    /**
+     * @param accounts the configuration for an account name, or for null the default
+     *                 configuration; returns null for unknown names
+     * @param token    bearer token clients must send, or null to accept any local client
+     */
+    public TotpServer(int port, Function<String, OktaConfig> accounts, String token) throws IOException {
+        this.accounts = accounts;
+        this.token = token == null || token.isEmpty() ? null : ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+
+        // Handlers never block, so one thread per core keeps up with the socket
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "okta-totp-server-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.setExecutor(executor);
+        server.createContext(CONTEXT, this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getServedCount() {
+        return served.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Only GET is supported.");
+                return;
+            }
+            if (token != null && !authorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                respond(exchange, 401, "Missing or wrong bearer token.");
+                return;
+            }
+
+            String path = exchange.getRequestURI().getRawPath();
+            if (!path.equals(CONTEXT) && !path.startsWith(CONTEXT + "/")) {
+                respond(exchange, 404, "Not found.");
+                return;
+            }
+            String name = path.length() > CONTEXT.length() + 1
+                    ? URLDecoder.decode(path.substring(CONTEXT.length() + 1), StandardCharsets.UTF_8)
+                    : null;
+            OktaConfig config = accounts.apply(name);
+            if (config == null) {
+                respond(exchange, 404, "Unknown account '" + name + "'.");
+                return;
+            }
+            HotpCounter hotpCounter = config.getHotpCounter();
+            if (hotpCounter != null) {
+                exchange.getResponseHeaders().set("Cache-Control", "no-store");
+                respond(exchange, 200, hotpCounter.claim());
+                served.increment();
+                return;
+            }
+            TotpCache cache = config.getTotpCache();
+            if (cache == null) {
+                respond(exchange, 503, "No shared secret configured.");
+                return;
+            }
+
+            String query = exchange.getRequestURI().getRawQuery();
+            boolean next = hasFlag(query, "next");
+            long now = System.currentTimeMillis();
+            long remaining = cache.millisUntilNextStep(now);
+            String code = next ? cache.codeForStep(Math.floorDiv(now, cache.getPeriodMillis()) + 1) : cache.codeAt(now);
+            exchange.getResponseHeaders().set(REMAINING_HEADER, Long.toString(next ? remaining + cache.getPeriodMillis() : remaining));
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            respond(exchange, 200, code);
+            served.increment();
+        }
+    }
+
+    private static boolean hasFlag(String query, String flag) {
+        if (query == null) {
+            return false;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.equals(flag) || parameter.startsWith(flag + "=")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean authorized(String header) {
+        return header != null && MessageDigest.isEqual(token, header.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java -jar okta-core-all.jar <accounts.json> [port]");
+            System.exit(2);
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        Map<String, OktaConfig> configs = loadAccounts(new File(args[0]));
+
+        TotpServer server = new TotpServer(port, name -> configs.get(name == null ? "default" : name), System.getenv("OKTA_TOTP_TOKEN"));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "okta-totp-server-shutdown"));
+        server.start();
+        System.out.println("Serving " + configs.size() + " account(s) on http://127.0.0.1:" + server.getPort() + CONTEXT + "/{name}");
+    }
+
+    private static Map<String, OktaConfig> loadAccounts(File file) throws IOException {
+        JsonNode root = Json.mapper().readTree(file);
+        if (root == null || !root.isObject() || root.isEmpty()) {
+            throw new IllegalArgumentException(file + " must be a JSON object of accounts.");
+        }
+
+        OktaMetrics metrics = new OktaMetrics();
+        Map<String, OktaConfig> configs = new LinkedHashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = root.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode account = field.getValue();
+            String secret = account.path("secret").asText("");
+            if (secret.isEmpty()) {
+                throw new IllegalArgumentException("Account '" + field.getKey() + "' has no secret.");
+            }
+            configs.put(field.getKey(), OktaConfig.empty().withSecret(secret,
+                    TotpGenerator.Algorithm.valueOf(account.path("algorithm").asText("SHA1")),
+                    account.path("digits").asInt(TotpGenerator.DEFAULT_DIGITS),
+                    account.path("period").asInt(TotpGenerator.DEFAULT_PERIOD_SECONDS),
+                    metrics));
+        }
+        return configs;
+    }
+}
@@ -0,0 +1,52 @@
+package okta;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AccountRegistryTest {
+    private static final OktaConfig CONFIG = OktaConfig.empty()
+            .withSecret("JBSWY3DPEHPK3PXP", TotpGenerator.Algorithm.SHA1, 6, 30, new OktaMetrics());
+
+    private final AccountRegistry registry = new AccountRegistry();
+
+    @Test
+    void exactHostFallsThroughToWildcardAndAnyHost() {
+        registry.put(account("admin", List.of("app.example.com"), "/admin"));
+        registry.put(account("wildcard", List.of("*.example.com"), "/login"));
+        registry.put(account("any", Collections.emptyList(), ""));
+
+        assertEquals("admin", registry.resolve("app.example.com", "/admin/users").getName());
+        assertEquals("wildcard", registry.resolve("app.example.com", "/login").getName());
+        assertEquals("any", registry.resolve("app.example.com", "/home").getName());
+        assertEquals("any", registry.resolve("other.org", "/admin").getName());
+    }
+
+    @Test
+    void specificWildcardFallsThroughToBroaderWildcard() {
+        registry.put(account("eu", List.of("*.eu.example.com"), "/sso"));
+        registry.put(account("example", List.of("*.example.com"), ""));
+
+        assertEquals("eu", registry.resolve("tenant.eu.example.com", "/sso/start").getName());
+        assertEquals("example", registry.resolve("tenant.eu.example.com", "/login").getName());
+        assertEquals("example", registry.resolve("TENANT.example.com", "/login").getName());
+    }
+
+    @Test
+    void longestPrefixWinsWithinAGroup() {
+        registry.put(account("short", List.of("app.example.com"), "/a"));
+        registry.put(account("long", List.of("app.example.com"), "/a/b"));
+
+        assertEquals("long", registry.resolve("app.example.com", "/a/b/c").getName());
+        assertEquals("short", registry.resolve("app.example.com", "/a/x").getName());
+        assertNull(registry.resolve("app.example.com", "/z"));
+    }
+
+    private static OktaAccount account(String name, List<String> hosts, String pathPrefix) {
+        return new OktaAccount(name, hosts, pathPrefix, CONFIG);
+    }
+}
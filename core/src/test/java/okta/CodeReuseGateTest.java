@@ -0,0 +1,49 @@
+package okta;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CodeReuseGateTest {
+    private static final long PERIOD = 30_000;
+
+    private final OktaMetrics metrics = new OktaMetrics();
+    // No waiting: a spent window fails at once instead of parking until the next one
+    private final CodeReuseGate gate = new CodeReuseGate(2, 4, 0);
+    // Far enough ahead that none of these windows opens during the test
+    private final long step = System.currentTimeMillis() / PERIOD + 100;
+
+    @Test
+    void guardBandCallersDoNotMoveCurrentCallersAhead() {
+        assertEquals(step, gate.acquire(step, PERIOD, metrics));
+        // A caller in the rollover guard band asks for the next window
+        assertEquals(step + 1, gate.acquire(step + 1, PERIOD, metrics));
+        assertEquals(step, gate.acquire(step, PERIOD, metrics));
+        assertEquals(step + 1, gate.acquire(step + 1, PERIOD, metrics));
+
+        // Both windows are spent; the current window's callers must not get the next code early
+        assertEquals(-1, gate.acquire(step, PERIOD, metrics));
+        assertEquals(-1, gate.acquire(step + 1, PERIOD, metrics));
+    }
+
+    @Test
+    void laggingCallersKeepTheirOwnWindow() {
+        assertEquals(step, gate.acquire(step, PERIOD, metrics));
+        assertEquals(step + 1, gate.acquire(step + 1, PERIOD, metrics));
+        // A host whose clock runs a window behind
+        assertEquals(step - 1, gate.acquire(step - 1, PERIOD, metrics));
+        assertEquals(step - 1, gate.acquire(step - 1, PERIOD, metrics));
+        assertEquals(-1, gate.acquire(step - 1, PERIOD, metrics));
+        assertEquals(step, gate.acquire(step, PERIOD, metrics));
+    }
+
+    @Test
+    void newerStepsKeepTheQuotaOfTrackedOnes() {
+        assertEquals(step, gate.acquire(step, PERIOD, metrics));
+        assertEquals(step, gate.acquire(step, PERIOD, metrics));
+        assertEquals(step + 2, gate.acquire(step + 2, PERIOD, metrics));
+        // step is still tracked and still spent
+        assertEquals(-1, gate.acquire(step, PERIOD, metrics));
+        assertEquals(step + 1, gate.acquire(step + 1, PERIOD, metrics));
+    }
+}
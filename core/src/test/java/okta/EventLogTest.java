@@ -0,0 +1,56 @@
+package okta;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EventLogTest {
+    private final EventLog eventLog = new EventLog(EventLog.DEFAULT_CAPACITY, 60_000);
+
+    @Test
+    void forwardsEachDistinctMessageOfAKey() {
+        eventLog.log(EventLog.Level.ERROR, "unknown-account", "Unknown Okta account 'alice'.");
+        eventLog.log(EventLog.Level.ERROR, "unknown-account", "Unknown Okta account 'bob'.");
+        eventLog.log(EventLog.Level.ERROR, "unknown-account", "Unknown Okta account 'alice'.");
+
+        assertEquals(List.of("Unknown Okta account 'alice'.", "Unknown Okta account 'bob'."), drain(0));
+    }
+
+    @Test
+    void summarisesRepeatsPerMessage() {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            eventLog.log(EventLog.Level.ERROR, "inject-error", "Error applying TOTP: a");
+        }
+        eventLog.log(EventLog.Level.ERROR, "inject-error", "Error applying TOTP: b");
+        drain(start);
+
+        List<String> summaries = drain(start + 60_000);
+        assertEquals(List.of("Error applying TOTP: a (3 times in the last 60 s)"), summaries);
+
+        // A new interval forwards the message again
+        eventLog.log(EventLog.Level.ERROR, "inject-error", "Error applying TOTP: a");
+        assertEquals(List.of("Error applying TOTP: a"), drain(start + 60_001));
+    }
+
+    @Test
+    void countsMessagesBeyondTheLimitInOneSummary() {
+        long start = System.currentTimeMillis();
+        int extra = 5;
+        for (int i = 0; i < EventLog.MAX_MESSAGES_PER_KEY + extra; i++) {
+            eventLog.log(EventLog.Level.ERROR, "mfa-rejected", "Rejected by host" + i);
+        }
+
+        assertEquals(EventLog.MAX_MESSAGES_PER_KEY, drain(start).size());
+        assertEquals(List.of("mfa-rejected: 5 more events with other messages in the last 60 s"), drain(start + 60_000));
+    }
+
+    private List<String> drain(long nowMillis) {
+        List<String> messages = new ArrayList<>();
+        eventLog.drain(nowMillis, event -> messages.add(event.getMessage()));
+        return messages;
+    }
+}
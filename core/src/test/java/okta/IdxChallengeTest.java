@@ -0,0 +1,100 @@
+package okta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Parsing and answering of IDX TOTP challenges, against response bodies shaped like the ones
+ * Okta Identity Engine returns.
+ */
+class IdxChallengeTest {
+    private static final String HREF = "https://example.okta.com/idp/idx/challenge/answer";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void parsesOktaVerifyChallenge() throws Exception {
+        IdxChallenge challenge = IdxChallenge.parse(challengeBody(HREF, "totp", "app"));
+        assertNotNull(challenge);
+        assertEquals(HREF, challenge.getHref());
+        assertEquals("POST", challenge.getMethod());
+        assertEquals("application/json; okta-version=1.0.0", challenge.getContentType());
+        assertEquals("state-123", challenge.getStateHandle());
+    }
+
+    @Test
+    void answersWithTheFieldTheChallengeAsksFor() throws Exception {
+        JsonNode totp = objectMapper.readTree(IdxChallenge.parse(challengeBody(HREF, "totp", "app")).answerBody(objectMapper, "123456"));
+        assertEquals("123456", totp.path("credentials").path("totp").asText());
+        assertEquals("state-123", totp.path("stateHandle").asText());
+
+        JsonNode passcode = objectMapper.readTree(IdxChallenge.parse(challengeBody(HREF, "passcode", "app")).answerBody(objectMapper, "654321"));
+        assertEquals("654321", passcode.path("credentials").path("passcode").asText());
+        assertFalse(passcode.path("credentials").has("totp"));
+    }
+
+    @Test
+    void ignoresOtherAuthenticators() throws Exception {
+        assertNull(IdxChallenge.parse(challengeBody(HREF, "totp", "password")));
+        assertNull(IdxChallenge.parse(objectMapper.readTree("{\"stateHandle\":\"s\",\"remediation\":{\"value\":[]}}")));
+    }
+
+    @Test
+    void recognisesSuccessAndRejection() throws Exception {
+        assertTrue(IdxChallenge.isSuccess(objectMapper.readTree("{\"success\":{\"name\":\"success-redirect\"}}")));
+        assertFalse(IdxChallenge.isSuccess(objectMapper.readTree(
+                "{\"stateHandle\":\"s\",\"messages\":{\"value\":[{\"class\":\"ERROR\",\"message\":\"Invalid code\"}]}}")));
+        assertFalse(IdxChallenge.isSuccess(challengeBody(HREF, "totp", "app")));
+        assertEquals(1_700_000_000_000L, IdxChallenge.expiresAtMillis(objectMapper.readTree("{\"expiresAt\":\"2023-11-14T22:13:20.000Z\"}")));
+        assertEquals(-1, IdxChallenge.expiresAtMillis(objectMapper.readTree("{}")));
+    }
+
+    @Test
+    void answersOnlyOverHttpsToTheChallengingHost() throws Exception {
+        List<String> none = Collections.emptyList();
+        assertTrue(challenge(HREF).isAnswerableFrom("example.okta.com", none));
+        assertTrue(challenge(HREF).isAnswerableFrom("EXAMPLE.okta.com", none));
+        assertFalse(challenge("http://example.okta.com/idp/idx/challenge/answer").isAnswerableFrom("example.okta.com", none));
+        assertFalse(challenge("https://attacker.test/collect").isAnswerableFrom("example.okta.com", none));
+        assertFalse(challenge("https://example.okta.com.attacker.test/").isAnswerableFrom("example.okta.com", none));
+        assertFalse(challenge("https://example.okta.com@attacker.test/").isAnswerableFrom("example.okta.com", none));
+        assertFalse(challenge("/idp/idx/challenge/answer").isAnswerableFrom("example.okta.com", none));
+    }
+
+    @Test
+    void answersToConfiguredOktaHosts() throws Exception {
+        assertTrue(challenge(HREF).isAnswerableFrom("app.example.com", List.of("example.okta.com")));
+        assertTrue(challenge(HREF).isAnswerableFrom("app.example.com", List.of("*.okta.com")));
+        assertFalse(challenge("https://okta.com/").isAnswerableFrom("app.example.com", List.of("*.okta.com")));
+        assertFalse(challenge(HREF).isAnswerableFrom("app.example.com", List.of("other.okta.com")));
+        assertFalse(challenge("http://example.okta.com/").isAnswerableFrom("app.example.com", List.of("example.okta.com")));
+    }
+
+    private IdxChallenge challenge(String href) throws Exception {
+        return IdxChallenge.parse(challengeBody(href, "totp", "app"));
+    }
+
+    private JsonNode challengeBody(String href, String credentialField, String authenticatorType) throws Exception {
+        return objectMapper.readTree("{"
+                + "\"stateHandle\":\"state-123\","
+                + "\"currentAuthenticatorEnrollment\":{\"value\":{\"type\":\"" + authenticatorType + "\",\"key\":\"okta_verify\"}},"
+                + "\"remediation\":{\"type\":\"array\",\"value\":[{"
+                + "\"rel\":[\"create-form\"],\"name\":\"challenge-authenticator\","
+                + "\"href\":\"" + href + "\",\"method\":\"POST\","
+                + "\"accepts\":\"application/json; okta-version=1.0.0\","
+                + "\"value\":["
+                + "{\"name\":\"credentials\",\"type\":\"object\",\"form\":{\"value\":[{\"name\":\"" + credentialField + "\",\"label\":\"Enter code\"}]},\"required\":true},"
+                + "{\"name\":\"stateHandle\",\"required\":true,\"value\":\"state-123\",\"visible\":false,\"mutable\":false}"
+                + "]}]}}");
+    }
+}
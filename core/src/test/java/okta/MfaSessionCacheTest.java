@@ -0,0 +1,82 @@
+package okta;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MfaSessionCacheTest {
+    private static final String KEY = MfaSessionCache.key("alice", "app.example.com");
+    private static final List<SessionCookie> SID = List.of(SessionCookie.hostOnly("sid", "abc", "app.example.com"));
+
+    @Test
+    void keepsSessionsUntilTheyExpire() {
+        MfaSessionCache cache = new MfaSessionCache();
+        cache.put(KEY, SID, 10_000);
+
+        MfaSessionCache.Session session = cache.get(KEY, 9_999);
+        assertNotNull(session);
+        assertEquals("abc", session.getCookies().get(0).getValue());
+        assertEquals(10_000, session.getExpiresAtMillis());
+
+        assertNull(cache.get(KEY, 10_000));
+        // Expired sessions are dropped, not just hidden
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    void invalidatesAndClears() {
+        MfaSessionCache cache = new MfaSessionCache();
+        cache.put(KEY, SID, Long.MAX_VALUE);
+        cache.invalidate(KEY);
+        assertNull(cache.get(KEY, 0));
+
+        cache.put(KEY, SID, Long.MAX_VALUE);
+        cache.clear();
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    void replaysCookiesOnlyWhereTheyAreScoped() {
+        MfaSessionCache cache = new MfaSessionCache();
+        cache.put(KEY, List.of(
+                SessionCookie.hostOnly("app", "1", "app.example.com"),
+                SessionCookie.fromSetCookie("okta", "2", "login.okta.com", null, null, "/idp/idx/challenge/answer"),
+                SessionCookie.fromSetCookie("shared", "3", "login.example.com", ".example.com", "/", "/")), Long.MAX_VALUE);
+        MfaSessionCache.Session session = cache.get(KEY, 0);
+
+        assertEquals(List.of("app", "shared"), names(session.cookiesFor("app.example.com", "/home")));
+        assertEquals(List.of("okta"), names(session.cookiesFor("login.okta.com", "/idp/idx/challenge/poll")));
+        assertEquals(List.of(), names(session.cookiesFor("login.okta.com", "/app")));
+        assertEquals(List.of(), names(session.cookiesFor("evil-example.com", "/")));
+    }
+
+    @Test
+    void remembersTheValuesOfTheSessionItReplaced() {
+        MfaSessionCache cache = new MfaSessionCache();
+        cache.put(KEY, SID, Long.MAX_VALUE);
+        cache.invalidate(KEY);
+        cache.put(KEY, List.of(SessionCookie.hostOnly("sid", "def", "app.example.com")), Long.MAX_VALUE);
+
+        MfaSessionCache.Session session = cache.get(KEY, 0);
+        assertTrue(session.replaces("sid", "abc"));
+        assertFalse(session.replaces("sid", "chosen-by-the-user"));
+    }
+
+    @Test
+    void keysSeparateAccountsAndHosts() {
+        assertNotEquals(MfaSessionCache.key("alice", "app.example.com"), MfaSessionCache.key("bob", "app.example.com"));
+        assertNotEquals(MfaSessionCache.key(null, "app.example.com"), MfaSessionCache.key(null, "api.example.com"));
+    }
+
+    private static List<String> names(List<SessionCookie> cookies) {
+        return cookies.stream().map(SessionCookie::getName).collect(Collectors.toList());
+    }
+}
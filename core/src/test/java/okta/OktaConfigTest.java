@@ -0,0 +1,39 @@
+package okta;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class OktaConfigTest {
+    private final OktaMetrics metrics = new OktaMetrics();
+
+    @Test
+    void configsForOtherSecretsGetTheirOwnReuseGate() {
+        OktaConfig base = OktaConfig.empty()
+                .withSecret("JBSWY3DPEHPK3PXP", TotpGenerator.Algorithm.SHA1, 6, 30, metrics)
+                .withReuseGate(new CodeReuseGate(1, 4, 1_000));
+        OktaConfig other = base.withSecret("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ", TotpGenerator.Algorithm.SHA1, 6, 30, metrics);
+
+        assertNotSame(base.getReuseGate(), other.getReuseGate());
+        assertEquals(1, other.getReuseGate().getMaxUsesPerWindow());
+        assertEquals(4, other.getReuseGate().getMaxWaiters());
+        assertEquals(1_000, other.getReuseGate().getTimeoutMillis());
+
+        // Using up the base secret's quota leaves the other secret's untouched
+        long step = base.getTotpGenerator().timeStep(System.currentTimeMillis()) + 10;
+        assertEquals(step, base.getReuseGate().acquire(step, 30_000, metrics));
+        assertEquals(step, other.getReuseGate().acquire(step, 30_000, metrics));
+    }
+
+    @Test
+    void otherSettingsKeepTheReuseGate() {
+        OktaConfig base = OktaConfig.empty()
+                .withSecret("JBSWY3DPEHPK3PXP", TotpGenerator.Algorithm.SHA1, 6, 30, metrics)
+                .withReuseGate(new CodeReuseGate(1, 4, 1_000));
+        assertSame(base.getReuseGate(), base.withRegex("\\d{6}", OktaConfig.compile("\\d{6}")).getReuseGate());
+        assertSame(CodeReuseGate.DISABLED,
+                OktaConfig.empty().withSecret("JBSWY3DPEHPK3PXP", TotpGenerator.Algorithm.SHA1, 6, 30, metrics).getReuseGate());
+    }
+}
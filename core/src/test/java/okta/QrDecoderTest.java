@@ -0,0 +1,51 @@
+package okta;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.qrcode.QRCodeWriter;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QrDecoderTest {
+    private static final String ENROLLMENT_URL = "oktaverify://user@example.okta.com/enroll?t=token&f=authenticator&issuer=example.okta.com";
+
+    @Test
+    void decodesEnrollmentQrCode() throws Exception {
+        QrDecoder decoder = new QrDecoder();
+        try {
+            assertEquals(ENROLLMENT_URL, decoder.decode(qrImage()));
+        } finally {
+            decoder.shutdown();
+        }
+    }
+
+    @Test
+    void shutdownStopsBinarizerThreads() throws Exception {
+        QrDecoder decoder = new QrDecoder();
+        BufferedImage image = qrImage();
+        decoder.decode(image);
+        decoder.shutdown();
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (binarizerThreadsAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(binarizerThreadsAlive());
+        assertThrows(NotFoundException.class, () -> decoder.decode(image));
+    }
+
+    private static BufferedImage qrImage() throws Exception {
+        return MatrixToImageWriter.toBufferedImage(new QRCodeWriter().encode(ENROLLMENT_URL, BarcodeFormat.QR_CODE, 400, 400));
+    }
+
+    private static boolean binarizerThreadsAlive() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.isAlive() && thread.getName().equals("okta-qr-binarizer"));
+    }
+}
@@ -0,0 +1,42 @@
+package okta;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionCookieTest {
+    @Test
+    void hostOnlyCookiesStayOnTheirHost() {
+        SessionCookie cookie = SessionCookie.fromSetCookie("sid", "1", "Login.Okta.com", null, null, "/idp/idx/challenge/answer");
+        assertTrue(cookie.matches("login.okta.com", "/idp/idx/challenge/poll"));
+        assertFalse(cookie.matches("other.okta.com", "/idp/idx/challenge/poll"));
+        assertFalse(cookie.matches("sub.login.okta.com", "/idp/idx/challenge/poll"));
+        // The default path is the directory of the request that set it
+        assertEquals("/idp/idx/challenge", cookie.getPath());
+        assertFalse(cookie.matches("login.okta.com", "/app"));
+    }
+
+    @Test
+    void domainCookiesCoverSubdomains() {
+        SessionCookie cookie = SessionCookie.fromSetCookie("sid", "1", "login.example.com", ".Example.com", "/", "/");
+        assertTrue(cookie.matches("app.example.com", "/"));
+        assertTrue(cookie.matches("example.com", "/x"));
+        assertFalse(cookie.matches("badexample.com", "/"));
+    }
+
+    @Test
+    void pathsMatchOnSegments() {
+        SessionCookie cookie = SessionCookie.fromSetCookie("sid", "1", "app.example.com", null, "/app", "/");
+        assertTrue(cookie.matches("app.example.com", "/app"));
+        assertTrue(cookie.matches("app.example.com", "/app/home"));
+        assertFalse(cookie.matches("app.example.com", "/application"));
+    }
+
+    @Test
+    void rejectsDomainsNotCoveringTheSettingHost() {
+        assertNull(SessionCookie.fromSetCookie("sid", "1", "login.okta.com", "example.com", "/", "/"));
+    }
+}
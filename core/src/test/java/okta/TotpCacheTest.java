@@ -0,0 +1,47 @@
+package okta;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TotpCacheTest {
+    private static final long PERIOD = 30_000;
+
+    private final AtomicInteger generations = new AtomicInteger();
+    private final TotpCache cache = new TotpCache(step -> {
+        generations.incrementAndGet();
+        return "code" + step;
+    }, PERIOD, new OktaMetrics());
+
+    @Test
+    void olderStepsDoNotMoveTheWindowBack() {
+        assertEquals("code10", cache.codeAt(10 * PERIOD));
+        assertEquals("code11", cache.codeAt(11 * PERIOD));
+        generations.set(0);
+
+        // A host whose clock is behind alternates with the current window
+        for (int i = 0; i < 100; i++) {
+            assertEquals("code10", cache.codeAt(10 * PERIOD + 1));
+            assertEquals("code11", cache.codeAt(11 * PERIOD + 1));
+        }
+        assertEquals(0, generations.get());
+
+        assertEquals("code8", cache.codeAt(8 * PERIOD));
+        assertEquals(1, generations.get());
+        assertEquals("code11", cache.codeAt(11 * PERIOD));
+        assertEquals(1, generations.get());
+    }
+
+    @Test
+    void precomputedNextSurvivesOlderLookups() {
+        cache.precomputeNext(20 * PERIOD);
+        assertEquals("code19", cache.codeForStep(19));
+        generations.set(0);
+
+        assertEquals("code21", cache.codeAt(21 * PERIOD));
+        assertEquals("code20", cache.codeAt(20 * PERIOD));
+        assertEquals(0, generations.get());
+    }
+}
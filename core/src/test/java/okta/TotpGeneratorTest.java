@@ -0,0 +1,89 @@
+package okta;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * RFC 6238 Appendix B test vectors, plus the parameter checks of {@link TotpGenerator}.
+ */
+class TotpGeneratorTest {
+    private static final String SEED_SHA1 = "12345678901234567890";
+    private static final String SEED_SHA256 = "12345678901234567890123456789012";
+    private static final String SEED_SHA512 = "1234567890123456789012345678901234567890123456789012345678901234";
+
+    @ParameterizedTest
+    @CsvSource({
+            "59,          SHA1,   94287082",
+            "59,          SHA256, 46119246",
+            "59,          SHA512, 90693936",
+            "1111111109,  SHA1,   07081804",
+            "1111111109,  SHA256, 68084774",
+            "1111111109,  SHA512, 25091201",
+            "1111111111,  SHA1,   14050471",
+            "1111111111,  SHA256, 67062674",
+            "1111111111,  SHA512, 99943326",
+            "1234567890,  SHA1,   89005924",
+            "1234567890,  SHA256, 91819424",
+            "1234567890,  SHA512, 93441116",
+            "2000000000,  SHA1,   69279037",
+            "2000000000,  SHA256, 90698825",
+            "2000000000,  SHA512, 38618901",
+            "20000000000, SHA1,   65353130",
+            "20000000000, SHA256, 77737706",
+            "20000000000, SHA512, 47863826"
+    })
+    void matchesRfc6238Vectors(long timeSeconds, TotpGenerator.Algorithm algorithm, String expected) {
+        TotpGenerator generator = new TotpGenerator(seed(algorithm), algorithm, 8, 30);
+        assertEquals(expected, generator.generateAt(timeSeconds * 1000));
+    }
+
+    @Test
+    void decodesBase32Secrets() {
+        // Base32 of the SHA1 seed
+        TotpGenerator generator = TotpGenerator.fromBase32("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ", TotpGenerator.Algorithm.SHA1, 8, 30);
+        assertEquals("94287082", generator.generateAt(59_000));
+        assertEquals("89005924", generator.generateAt(1_234_567_890_000L));
+    }
+
+    @Test
+    void truncatesToConfiguredDigits() {
+        TotpGenerator generator = new TotpGenerator(seed(TotpGenerator.Algorithm.SHA1), TotpGenerator.Algorithm.SHA1, 6, 30);
+        assertEquals("287082", generator.generateAt(59_000));
+        // Leading zeros are kept
+        assertEquals("081804", generator.generateAt(1_111_111_109_000L));
+    }
+
+    @Test
+    void followsConfiguredPeriod() {
+        TotpGenerator generator = new TotpGenerator(seed(TotpGenerator.Algorithm.SHA1), TotpGenerator.Algorithm.SHA1, 8, 60);
+        assertEquals(0, generator.timeStep(59_999));
+        assertEquals(1, generator.timeStep(60_000));
+        // Step 1 of a 30 second period
+        assertEquals("94287082", generator.generateAt(60_000));
+    }
+
+    @Test
+    void rejectsInvalidParameters() {
+        byte[] key = seed(TotpGenerator.Algorithm.SHA1);
+        assertThrows(IllegalArgumentException.class, () -> new TotpGenerator(new byte[0], TotpGenerator.Algorithm.SHA1, 6, 30));
+        assertThrows(IllegalArgumentException.class, () -> new TotpGenerator(key, TotpGenerator.Algorithm.SHA1, 5, 30));
+        assertThrows(IllegalArgumentException.class, () -> new TotpGenerator(key, TotpGenerator.Algorithm.SHA1, 9, 30));
+        assertThrows(IllegalArgumentException.class, () -> new TotpGenerator(key, TotpGenerator.Algorithm.SHA1, 6, 0));
+        assertThrows(IllegalArgumentException.class, () -> TotpGenerator.fromBase32("not base32!", TotpGenerator.Algorithm.SHA1, 6, 30));
+    }
+
+    private static byte[] seed(TotpGenerator.Algorithm algorithm) {
+        String seed = switch (algorithm) {
+            case SHA1 -> SEED_SHA1;
+            case SHA256 -> SEED_SHA256;
+            case SHA512 -> SEED_SHA512;
+        };
+        return seed.getBytes(StandardCharsets.US_ASCII);
+    }
+}
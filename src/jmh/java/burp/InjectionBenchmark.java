@@ -0,0 +1,106 @@
+package burp;
+
+import burp.api.montoya.http.message.ContentType;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import okta.BodyScanLimits;
+import okta.InjectionTarget;
+import okta.PlaceholderTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Regex compilation and body rewriting as performed for each request by
+ * {@link MySessionHandlingAction#performAction}, over small, 100 KB, 5 MB and 10 MB bodies.
+ * The String replacements are the old whole-body path; {@code injectBodyRegex} and
+ * {@code injectMultipartUpload} go through the bounded byte scanner, the latter with a form
+ * field followed by a file part of the benchmarked size. {@code renderPlaceholders} is the
+ * placeholder template mode over the same body with {@code {{totp}}} in place of the code.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class InjectionBenchmark {
+    private static final String REGEX = "(?<![\\w\\d])\\d{6,8}(?![\\w\\d])";
+    private static final String CODE = "654321";
+
+    @Param({"128", "102400", "5242880", "10485760"})
+    public int bodySize;
+
+    private final RequestInjector requestInjector = new RequestInjector();
+    private Pattern pattern;
+    private String body;
+    private byte[] templateBody;
+    private HttpRequest request;
+    private HttpRequest multipartRequest;
+
+    @Setup
+    public void setUp() {
+        pattern = Pattern.compile(REGEX);
+
+        // Code near the start, then filler the regex still has to scan through
+        StringBuilder builder = new StringBuilder(bodySize);
+        builder.append("username=tester&passcode=123456&state=");
+        while (builder.length() < bodySize) {
+            builder.append("abcdefghij-KLMNOPQRST_");
+        }
+        builder.setLength(bodySize);
+        body = builder.toString();
+        request = MontoyaStubs.request(body);
+        templateBody = body.replaceFirst("123456", "{{totp}}").getBytes(StandardCharsets.ISO_8859_1);
+
+        String boundary = "----benchmarkboundary";
+        ByteArrayOutputStream multipart = new ByteArrayOutputStream(bodySize + 512);
+        byte[] head = ("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"passcode\"\r\n\r\n123456\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"upload\"; filename=\"data.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        multipart.write(head, 0, head.length);
+        byte[] file = new byte[bodySize];
+        new Random(42).nextBytes(file);
+        multipart.write(file, 0, file.length);
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        multipart.write(tail, 0, tail.length);
+        multipartRequest = MontoyaStubs.request(multipart.toByteArray(),
+                "multipart/form-data; boundary=" + boundary, ContentType.MULTIPART);
+    }
+
+    @Benchmark
+    public Pattern compilePattern() {
+        return Pattern.compile(REGEX);
+    }
+
+    @Benchmark
+    public String replaceWithPrecompiledPattern() {
+        Matcher matcher = pattern.matcher(body);
+        return matcher.find() ? matcher.replaceAll(CODE) : body;
+    }
+
+    @Benchmark
+    public String replaceWithPerRequestCompile() {
+        Matcher matcher = Pattern.compile(REGEX).matcher(body);
+        return matcher.find() ? matcher.replaceAll(CODE) : body;
+    }
+
+    @Benchmark
+    public byte[] renderPlaceholders() {
+        PlaceholderTemplate template = PlaceholderTemplate.parse(templateBody, templateBody.length);
+        return template.render(templateBody, placeholder -> CODE);
+    }
+
+    @Benchmark
+    public HttpRequest injectBodyRegex() throws Exception {
+        return requestInjector.inject(request, InjectionTarget.BODY_REGEX, pattern, BodyScanLimits.DEFAULT, CODE);
+    }
+
+    @Benchmark
+    public HttpRequest injectMultipartUpload() throws Exception {
+        return requestInjector.inject(multipartRequest, InjectionTarget.BODY_REGEX, pattern, BodyScanLimits.DEFAULT, CODE);
+    }
+}
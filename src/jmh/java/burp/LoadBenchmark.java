@@ -0,0 +1,35 @@
+package burp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extension load time: one cold {@link BurpExtender#initialize} per forked JVM, so class loading
+ * and static initialization are counted the way Burp pays for them. The spread between forks is
+ * large; compare the mean over all forks between builds. Run with {@code gradle loadBenchmark},
+ * which keeps these settings; the plain {@code jmh} task overrides them.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+@State(Scope.Thread)
+public class LoadBenchmark {
+    private final List<Runnable> unloadingHandlers = new ArrayList<>();
+
+    @Benchmark
+    public BurpExtender initialize() {
+        BurpExtender extender = new BurpExtender();
+        extender.initialize(MontoyaStubs.extensionApi(unloadingHandlers));
+        return extender;
+    }
+
+    @TearDown
+    public void unload() {
+        unloadingHandlers.forEach(Runnable::run);
+    }
+}
@@ -0,0 +1,90 @@
+package burp;
+
+import burp.api.montoya.http.message.requests.HttpRequest;
+import com.warrenstrange.googleauth.GoogleAuthenticator;
+import okta.BodyScanLimits;
+import okta.InjectionTarget;
+import okta.OktaHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls per second of the request path before and after the per-window code cache. The
+ * {@code Baseline} cases repeat what {@code OktaHandler.generateTOTP()} used to do for every
+ * request: decode the stored Base64 secret, create a googleauth authenticator, compute the HMAC
+ * and format the code. The other cases go through today's {@link OktaHandler#generateTOTP()}
+ * and {@link MySessionHandlingAction#performAction}. Both actions write the code into a header.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class RequestPathBenchmark {
+    private static final String SECRET = "JBSWY3DPEHPK3PXP";
+    private static final String HEADER = "X-Okta-Code";
+
+    private final RequestInjector requestInjector = new RequestInjector();
+    private final InjectionTarget target = InjectionTarget.of(InjectionTarget.Type.HEADER, HEADER);
+    private String sharedSecretEncoded;
+    private OktaHandler oktaHandler;
+    private MySessionHandlingAction action;
+    private HttpRequest request;
+
+    @Setup
+    public void setUp() {
+        MontoyaStubs.installObjectFactory();
+        sharedSecretEncoded = Base64.getEncoder().encodeToString(SECRET.getBytes(StandardCharsets.UTF_8));
+        oktaHandler = new OktaHandler(MontoyaStubs.api());
+        oktaHandler.setSharedSecret(SECRET);
+        oktaHandler.setInjectionTarget(InjectionTarget.Type.HEADER, HEADER);
+        action = new MySessionHandlingAction(MontoyaStubs.api(), oktaHandler);
+        request = MontoyaStubs.request("app.example.com", "/login", Collections.singletonMap(HEADER, "000000"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        oktaHandler.shutdown();
+    }
+
+    @Benchmark
+    public String generateTotpBaseline() {
+        return baselineCode();
+    }
+
+    @Benchmark
+    public String generateTotpCached() {
+        return oktaHandler.generateTOTP();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String generateTotpBaselineContended() {
+        return baselineCode();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String generateTotpCachedContended() {
+        return oktaHandler.generateTOTP();
+    }
+
+    @Benchmark
+    public HttpRequest performActionBaseline() throws Exception {
+        return requestInjector.inject(request, target, null, BodyScanLimits.DEFAULT, baselineCode());
+    }
+
+    @Benchmark
+    public HttpRequest performAction() {
+        return action.performAction(MontoyaStubs.actionData(request)).request();
+    }
+
+    private String baselineCode() {
+        String decodedSecret = new String(Base64.getDecoder().decode(sharedSecretEncoded), StandardCharsets.UTF_8);
+        GoogleAuthenticator authenticator = new GoogleAuthenticator();
+        int totp = authenticator.getTotpPassword(decodedSecret, System.currentTimeMillis());
+        return String.format("%06d", totp);
+    }
+}
@@ -0,0 +1,104 @@
+package okta;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeWriter;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QR decoding of enrollment page screenshots: the original single-pass MultiFormatReader
+ * versus the staged {@link QrDecoder} pipeline.
+ * <p>
+ * Synthetic screenshots with a QR code on a busy page are generated at each resolution. A
+ * folder of real screenshots can be added with {@code -Dqr.corpus=/path/to/folder}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class QrDecodeBenchmark {
+    private static final String ENROLLMENT_URL =
+            "oktaverify://email@example.com/?t=token-value-for-benchmark&f=authenticator-id&issuer=example.okta.com";
+
+    @Param({"1920x1080", "3840x2160"})
+    public String resolution;
+
+    private final QrDecoder qrDecoder = new QrDecoder();
+    private final List<BufferedImage> images = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws Exception {
+        String[] size = resolution.split("x");
+        images.add(syntheticScreenshot(Integer.parseInt(size[0]), Integer.parseInt(size[1])));
+
+        String corpus = System.getProperty("qr.corpus");
+        File[] files = corpus == null ? null : new File(corpus).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                BufferedImage image = ImageIO.read(file);
+                if (image != null) {
+                    images.add(image);
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        qrDecoder.shutdown();
+    }
+
+    @Benchmark
+    public int decodeFullResolutionNoHints() throws Exception {
+        int decoded = 0;
+        for (BufferedImage image : images) {
+            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(new BufferedImageLuminanceSource(image)));
+            decoded += new MultiFormatReader().decode(bitmap).getText().length();
+        }
+        return decoded;
+    }
+
+    @Benchmark
+    public int decodePipeline() throws Exception {
+        int decoded = 0;
+        for (BufferedImage image : images) {
+            decoded += qrDecoder.decode(image).length();
+        }
+        return decoded;
+    }
+
+    private static BufferedImage syntheticScreenshot(int width, int height) throws Exception {
+        BufferedImage screenshot = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = screenshot.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, width, height);
+
+        // Page chrome and text lines around the code
+        g2.setColor(new Color(0x1662DD));
+        g2.fillRect(0, 0, width, height / 14);
+        g2.setColor(Color.DARK_GRAY);
+        g2.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, Math.max(12, height / 70)));
+        for (int line = 0; line < 30; line++) {
+            g2.drawString("Set up Okta Verify: scan the QR code below with the app on your phone " + line,
+                    width / 20, height / 8 + line * height / 40);
+        }
+
+        int qrSize = height / 6;
+        BufferedImage qr = MatrixToImageWriter.toBufferedImage(
+                new QRCodeWriter().encode(ENROLLMENT_URL, BarcodeFormat.QR_CODE, qrSize, qrSize));
+        g2.drawImage(qr, width * 3 / 5, height / 3, null);
+        g2.dispose();
+        return screenshot;
+    }
+}
@@ -0,0 +1,97 @@
+package okta;
+
+import burp.MontoyaStubs;
+import com.warrenstrange.googleauth.GoogleAuthenticator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of producing a code: the cached lookup used on every request versus a fresh HMAC, the
+ * built-in engine against googleauth, which this project used before, and claiming HOTP counter values from precomputed batches, alone and from eight threads at once,
+ * and Intruder payloads read from the code table.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class TotpBenchmark {
+    private static final String SECRET = "JBSWY3DPEHPK3PXP";
+
+    private OktaHandler oktaHandler;
+    private TotpGenerator generator;
+    private long timeStep;
+    private long timeMillis;
+    private OktaConfig hotpConfig;
+    private GoogleAuthenticator googleAuthenticator;
+
+    @Setup
+    public void setUp() {
+        oktaHandler = new OktaHandler(MontoyaStubs.api());
+        oktaHandler.setSharedSecret(SECRET);
+        generator = TotpGenerator.fromBase32(SECRET, TotpGenerator.Algorithm.SHA1, 6, 30);
+        timeMillis = System.currentTimeMillis();
+        timeStep = generator.timeStep(timeMillis);
+        googleAuthenticator = new GoogleAuthenticator();
+        hotpConfig = OktaConfig.empty().withHotpSecret(SECRET, TotpGenerator.Algorithm.SHA1, 6, 0, oktaHandler.getMetrics());
+    }
+
+    @TearDown
+    public void tearDown() {
+        oktaHandler.shutdown();
+    }
+
+    @Benchmark
+    public String generateTotpCached() {
+        return oktaHandler.generateTOTP();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String generateTotpCachedContended() {
+        return oktaHandler.generateTOTP();
+    }
+
+    @Benchmark
+    public String generateTotpUncached() {
+        return generator.generate(timeStep);
+    }
+
+    @Benchmark
+    public int generateCodeBuiltIn() {
+        return generator.generateCode(timeStep);
+    }
+
+    @Benchmark
+    public int generateCodeGoogleAuth() {
+        return googleAuthenticator.getTotpPassword(SECRET, timeMillis);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int generateCodeBuiltInContended() {
+        return generator.generateCode(timeStep);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int generateCodeGoogleAuthContended() {
+        return googleAuthenticator.getTotpPassword(SECRET, timeMillis);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String intruderPayloadContended() {
+        return oktaHandler.intruderPayload(null);
+    }
+
+    @Benchmark
+    public String claimHotp() {
+        return hotpConfig.codeForRequest(oktaHandler.getMetrics());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String claimHotpContended() {
+        return hotpConfig.codeForRequest(oktaHandler.getMetrics());
+    }
+}
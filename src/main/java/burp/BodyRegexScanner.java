@@ -0,0 +1,172 @@
+package burp;
+
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.http.message.ContentType;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import okta.BodyScanLimits;
+import okta.ByteCharSequence;
+import okta.RegexBudget;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex fallback for request bodies, bounded so large uploads stay cheap. Only a window of
+ * the body is copied out and matched, as bytes, through a {@link ByteCharSequence}. Multipart
+ * bodies are walked part by part with {@link ByteArray#indexOf}, scanning only the selected
+ * text parts and skipping file uploads. Binary and compressed bodies are not scanned at all.
+ * <p>
+ * Every match in the scanned windows is replaced by the code. When the code has the length of
+ * the matched text, which is the usual case, the bytes are overwritten in place.
+ * <p>
+ * All windows of one request share one {@link RegexBudget}; a pattern that exhausts it aborts
+ * the scan with {@link RegexBudget.ExceededException} and the request is left unchanged.
+ */
+class BodyRegexScanner {
+    private static final int MAX_PART_HEADER_BYTES = 8 * 1024;
+    private static final String CRLF = "\r\n";
+    private static final Pattern BOUNDARY = Pattern.compile("boundary=(?:\"([^\"]+)\"|([^;\\s]+))", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PART_NAME = Pattern.compile("\\bname=\"([^\"]*)\"", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PART_CONTENT_TYPE = Pattern.compile("^content-type:\\s*(.+)$", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+
+    /**
+     * @param code asked for only once something matched
+     * @return the updated request, or null if nothing matched in the scanned parts of the body or
+     * there was no code
+     */
+    HttpRequest inject(HttpRequest request, Pattern pattern, BodyScanLimits limits, RegexBudget budget, Supplier<String> code) {
+        String contentEncoding = request.headerValue("Content-Encoding");
+        if (contentEncoding != null && !"identity".equalsIgnoreCase(contentEncoding.trim())) {
+            return null;
+        }
+        String contentType = request.headerValue("Content-Type");
+        if (BodyScanLimits.isBinaryContentType(contentType)) {
+            return null;
+        }
+
+        ByteArray body = request.body();
+        if (body == null || body.length() == 0) {
+            return null;
+        }
+
+        List<int[]> matches = new ArrayList<>();
+        RegexBudget.Meter meter = budget.start();
+        String boundary = request.contentType() == ContentType.MULTIPART ? boundary(contentType) : null;
+        if (boundary != null) {
+            scanMultipart(body, boundary, pattern, limits, meter, matches);
+        } else {
+            scanWindow(body, 0, Math.min(body.length(), limits.getMaxScanBytes()), pattern, meter, matches);
+        }
+        String value = matches.isEmpty() ? null : code.get();
+        if (value == null) {
+            return null;
+        }
+        return request.withBody(splice(body, matches, value.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    private static void scanMultipart(ByteArray body, String boundary, Pattern pattern, BodyScanLimits limits,
+                                      RegexBudget.Meter meter, List<int[]> matches) {
+        String delimiter = "--" + boundary;
+        int length = body.length();
+        int position = body.indexOf(delimiter, true, 0, length);
+        while (position >= 0) {
+            int headerStart = position + delimiter.length();
+            if (headerStart + 2 > length || "--".equals(text(body, headerStart, headerStart + 2))) {
+                // Closing delimiter
+                return;
+            }
+            headerStart += CRLF.length();
+            int headerEnd = body.indexOf(CRLF + CRLF, true, headerStart, Math.min(length, headerStart + MAX_PART_HEADER_BYTES));
+            if (headerEnd < 0) {
+                return;
+            }
+
+            int contentStart = headerEnd + 2 * CRLF.length();
+            int next = contentStart < length ? body.indexOf(CRLF + delimiter, true, contentStart, length) : -1;
+            int contentEnd = next >= 0 ? next : length;
+            String headers = headerEnd > headerStart ? text(body, headerStart, headerEnd) : "";
+            if (shouldScanPart(headers, limits)) {
+                scanWindow(body, contentStart, Math.min(contentEnd, contentStart + limits.getMaxScanBytes()), pattern, meter, matches);
+            }
+            position = next >= 0 ? next + CRLF.length() : -1;
+        }
+    }
+
+    private static boolean shouldScanPart(String headers, BodyScanLimits limits) {
+        if (headers.toLowerCase(Locale.ROOT).contains("filename=")) {
+            return false;
+        }
+        Matcher contentType = PART_CONTENT_TYPE.matcher(headers);
+        if (contentType.find() && BodyScanLimits.isBinaryContentType(contentType.group(1))) {
+            return false;
+        }
+        Matcher name = PART_NAME.matcher(headers);
+        return limits.scansPart(name.find() ? name.group(1) : "");
+    }
+
+    private static void scanWindow(ByteArray body, int start, int end, Pattern pattern, RegexBudget.Meter meter, List<int[]> matches) {
+        if (end <= start) {
+            return;
+        }
+        // Only the window is copied; the regex runs over the raw bytes
+        Matcher matcher = pattern.matcher(RegexBudget.wrap(new ByteCharSequence(body.subArray(start, end).getBytes()), meter));
+        while (RegexBudget.find(matcher, meter)) {
+            if (matcher.end() > matcher.start()) {
+                matches.add(new int[]{start + matcher.start(), start + matcher.end()});
+            }
+        }
+    }
+
+    private static ByteArray splice(ByteArray body, List<int[]> matches, byte[] code) {
+        boolean sameLength = true;
+        for (int[] match : matches) {
+            sameLength &= match[1] - match[0] == code.length;
+        }
+        if (sameLength) {
+            // body() hands out a copy, so it can be overwritten without touching the original request
+            for (int[] match : matches) {
+                body.setBytes(match[0], code);
+            }
+            return body;
+        }
+
+        // Sized once and filled segment by segment, so many matches stay linear in the body length
+        int length = body.length();
+        for (int[] match : matches) {
+            length += code.length - (match[1] - match[0]);
+        }
+        byte[] source = body.getBytes();
+        byte[] result = new byte[length];
+        int copied = 0;
+        int written = 0;
+        for (int[] match : matches) {
+            System.arraycopy(source, copied, result, written, match[0] - copied);
+            written += match[0] - copied;
+            System.arraycopy(code, 0, result, written, code.length);
+            written += code.length;
+            copied = match[1];
+        }
+        System.arraycopy(source, copied, result, written, source.length - copied);
+        return ByteArray.byteArray(result);
+    }
+
+    private static String boundary(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        Matcher matcher = BOUNDARY.matcher(contentType);
+        if (!matcher.find()) {
+            return null;
+        }
+        return matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+    }
+
+    private static String text(ByteArray body, int start, int end) {
+        return new String(body.subArray(start, end).getBytes(), StandardCharsets.ISO_8859_1);
+    }
+}
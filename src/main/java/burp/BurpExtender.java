@@ -2,12 +2,13 @@ package burp;
 
 import burp.api.montoya.BurpExtension;
 import burp.api.montoya.MontoyaApi;
+import okta.LazyPanel;
 import okta.OktaHandler;
 import okta.OktaUIInterface;
 
 public class BurpExtender implements BurpExtension {
     private static final String EXTENSION_NAME = "Okta TOTP Authenticator";
-    private OktaUIInterface oktaUIInterface;
+    private LazyPanel<OktaUIInterface> oktaTab;
 
     @Override
     public void initialize(MontoyaApi api) {
@@ -17,20 +18,39 @@ public class BurpExtender implements BurpExtension {
         // Log initialization start
         api.logging().logToOutput("Initializing " + EXTENSION_NAME + "...");
 
-        // Initialize data handler and UI
+        // Initialize data handler; the UI is built the first time its tab is shown
         OktaHandler oktaHandler = new OktaHandler(api);
-        oktaUIInterface = new OktaUIInterface(api, oktaHandler);
+        oktaTab = new LazyPanel<>(() -> new OktaUIInterface(api, oktaHandler));
 
         // Register session handling action
-        api.http().registerSessionHandlingAction(new MySessionHandlingAction(api, oktaHandler));
+        MySessionHandlingAction sessionHandlingAction = new MySessionHandlingAction(api, oktaHandler);
+        api.http().registerSessionHandlingAction(sessionHandlingAction);
+
+        // Register the inline injector; it stays idle until enabled in the UI
+        api.http().registerHttpHandler(new InlineInjectionHandler(oktaHandler, sessionHandlingAction));
+
+        // Register the MFA challenge responder; it stays idle until enabled in the UI
+        api.http().registerHttpHandler(new MfaResponseHandler(api, oktaHandler));
+
+        // Register the clock-skew calibrator; it only reads Date headers once enabled in the UI
+        api.http().registerHttpHandler(new ClockSkewCalibrator(oktaHandler));
+
+        // Register the Intruder payload generator and processor
+        api.intruder().registerPayloadGeneratorProvider(new TotpPayloadGeneratorProvider(oktaHandler));
+        api.intruder().registerPayloadProcessor(new TotpPayloadProcessor(oktaHandler));
 
         // Add the custom UI tab
-        api.userInterface().registerSuiteTab("Okta Authenticator", oktaUIInterface);
+        api.userInterface().registerSuiteTab("Okta Authenticator", oktaTab);
+
+        // Restore saved settings in the background; secrets wait for the passphrase
+        oktaHandler.restoreSavedSettings();
 
         api.extension().registerUnloadingHandler(() -> {
+            OktaUIInterface oktaUIInterface = oktaTab.getIfBuilt();
             if (oktaUIInterface != null) {
-                oktaUIInterface.stopAuthenticator();
+                oktaUIInterface.shutdown();
             }
+            oktaHandler.shutdown();
         });
 
         // Log extension initialization success
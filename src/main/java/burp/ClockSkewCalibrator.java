@@ -0,0 +1,58 @@
+package burp;
+
+import burp.api.montoya.http.handler.HttpHandler;
+import burp.api.montoya.http.handler.HttpRequestToBeSent;
+import burp.api.montoya.http.handler.HttpResponseReceived;
+import burp.api.montoya.http.handler.RequestToBeSentAction;
+import burp.api.montoya.http.handler.ResponseReceivedAction;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import okta.ClockSkewEstimator;
+import okta.OktaHandler;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Feeds the {@code Date} headers of in-scope and Okta responses to the handler's
+ * {@link ClockSkewEstimator}. It never changes any traffic and does nothing while calibration
+ * is turned off.
+ */
+public class ClockSkewCalibrator implements HttpHandler {
+    private final OktaHandler oktaHandler;
+
+    public ClockSkewCalibrator(OktaHandler oktaHandler) {
+        this.oktaHandler = oktaHandler;
+    }
+
+    @Override
+    public RequestToBeSentAction handleHttpRequestToBeSent(HttpRequestToBeSent requestToBeSent) {
+        return RequestToBeSentAction.continueWith(requestToBeSent);
+    }
+
+    @Override
+    public ResponseReceivedAction handleHttpResponseReceived(HttpResponseReceived responseReceived) {
+        // Take the receive time before anything else, it is the other half of the sample
+        long receivedAt = System.currentTimeMillis();
+        if (!oktaHandler.isClockCalibrationEnabled()) {
+            return ResponseReceivedAction.continueWith(responseReceived);
+        }
+
+        HttpRequest initiatingRequest = responseReceived.initiatingRequest();
+        String host = initiatingRequest.httpService().host();
+        if (!ClockSkewEstimator.isOktaHost(host) && !initiatingRequest.isInScope()) {
+            return ResponseReceivedAction.continueWith(responseReceived);
+        }
+
+        String date = responseReceived.headerValue("Date");
+        if (date != null) {
+            try {
+                long serverMillis = ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                oktaHandler.getClockSkew().record(host, serverMillis, receivedAt);
+            } catch (DateTimeParseException e) {
+                // Malformed dates are not worth a log line; the next response will do
+            }
+        }
+        return ResponseReceivedAction.continueWith(responseReceived);
+    }
+}
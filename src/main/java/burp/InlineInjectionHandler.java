@@ -0,0 +1,45 @@
+package burp;
+
+import burp.api.montoya.http.handler.HttpHandler;
+import burp.api.montoya.http.handler.HttpRequestToBeSent;
+import burp.api.montoya.http.handler.HttpResponseReceived;
+import burp.api.montoya.http.handler.RequestToBeSentAction;
+import burp.api.montoya.http.handler.ResponseReceivedAction;
+import okta.InlineInjection;
+import okta.OktaHandler;
+import okta.RequestFilter;
+
+/**
+ * Injects codes into requests as they are sent, without a session handling rule. Only requests
+ * from the selected tools that pass the {@link RequestFilter} are touched; the filter checks the
+ * host before anything else, so unrelated traffic is turned away with one hash lookup and its
+ * body is never read.
+ */
+public class InlineInjectionHandler implements HttpHandler {
+    private final OktaHandler oktaHandler;
+    private final MySessionHandlingAction injector;
+
+    public InlineInjectionHandler(OktaHandler oktaHandler, MySessionHandlingAction injector) {
+        this.oktaHandler = oktaHandler;
+        this.injector = injector;
+    }
+
+    @Override
+    public RequestToBeSentAction handleHttpRequestToBeSent(HttpRequestToBeSent requestToBeSent) {
+        InlineInjection inline = oktaHandler.getInlineInjection();
+        if (!inline.acceptsHost(requestToBeSent.toolSource().toolType(), requestToBeSent.httpService().host())) {
+            return RequestToBeSentAction.continueWith(requestToBeSent);
+        }
+
+        RequestFilter filter = inline.getFilter();
+        if (!filter.matchesMethod(requestToBeSent.method()) || !filter.matchesPath(requestToBeSent.pathWithoutQuery())) {
+            return RequestToBeSentAction.continueWith(requestToBeSent);
+        }
+        return RequestToBeSentAction.continueWith(injector.injectTotp(requestToBeSent));
+    }
+
+    @Override
+    public ResponseReceivedAction handleHttpResponseReceived(HttpResponseReceived responseReceived) {
+        return ResponseReceivedAction.continueWith(responseReceived);
+    }
+}
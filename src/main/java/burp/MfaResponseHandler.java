@@ -0,0 +1,252 @@
+package burp;
+
+import burp.api.montoya.MontoyaApi;
+import burp.api.montoya.core.ToolType;
+import burp.api.montoya.http.handler.HttpHandler;
+import burp.api.montoya.http.handler.HttpRequestToBeSent;
+import burp.api.montoya.http.handler.HttpResponseReceived;
+import burp.api.montoya.http.handler.RequestToBeSentAction;
+import burp.api.montoya.http.handler.ResponseReceivedAction;
+import burp.api.montoya.http.message.Cookie;
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.params.HttpParameter;
+import burp.api.montoya.http.message.params.HttpParameterType;
+import burp.api.montoya.http.message.params.ParsedHttpParameter;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import burp.api.montoya.http.message.responses.HttpResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import okta.EventLog;
+import okta.IdxChallenge;
+import okta.Json;
+import okta.MfaSessionCache;
+import okta.OktaAccount;
+import okta.OktaConfig;
+import okta.OktaHandler;
+import okta.OktaMetrics;
+import okta.SessionCookie;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Answers Okta Identity Engine TOTP challenges found in responses. The challenge response is
+ * replaced by the response to the answer, so macros and tools continue as if no MFA had been
+ * asked for. The resulting session cookies are cached per account and host, with the domain and
+ * path they were set for, and added to later requests they are scoped to until they expire, so
+ * those requests are not challenged at all. The answer itself only carries the cookies scoped to
+ * the answer URL, so cookies of the application host never leak to a separate Okta host.
+ * <p>
+ * Only in-scope traffic is handled, and requests sent by extensions, including the answers
+ * themselves, are left alone. An answer is only sent over https to the host that issued the
+ * challenge or to one of the configured Okta hosts, see {@link IdxChallenge#isAnswerableFrom}.
+ */
+public class MfaResponseHandler implements HttpHandler {
+    private final MontoyaApi api;
+    private final OktaHandler oktaHandler;
+
+    public MfaResponseHandler(MontoyaApi api, OktaHandler oktaHandler) {
+        this.api = api;
+        this.oktaHandler = oktaHandler;
+    }
+
+    @Override
+    public RequestToBeSentAction handleHttpRequestToBeSent(HttpRequestToBeSent requestToBeSent) {
+        MfaSessionCache sessions = oktaHandler.getMfaSessionCache();
+        if (!oktaHandler.isMfaResponderEnabled() || sessions.isEmpty() || requestToBeSent.toolSource().isFromTool(ToolType.EXTENSIONS)
+                || !requestToBeSent.isInScope()) {
+            return RequestToBeSentAction.continueWith(requestToBeSent);
+        }
+
+        MfaSessionCache.Session session = sessions.get(sessionKey(requestToBeSent), System.currentTimeMillis());
+        if (session == null) {
+            return RequestToBeSentAction.continueWith(requestToBeSent);
+        }
+
+        // Only cookies scoped to this host and path; a cookie the request already carries is only
+        // replaced when it holds a value an earlier session put there
+        HttpRequest request = requestToBeSent;
+        boolean reused = false;
+        for (SessionCookie cookie : session.cookiesFor(requestToBeSent.httpService().host(), requestToBeSent.pathWithoutQuery())) {
+            HttpParameter parameter = HttpParameter.cookieParameter(cookie.getName(), cookie.getValue());
+            ParsedHttpParameter existing = request.parameter(cookie.getName(), HttpParameterType.COOKIE);
+            if (existing == null) {
+                request = request.withAddedParameters(parameter);
+                reused = true;
+            } else if (!existing.value().equals(cookie.getValue()) && session.replaces(cookie.getName(), existing.value())) {
+                request = request.withUpdatedParameters(parameter);
+                reused = true;
+            }
+        }
+        if (reused) {
+            oktaHandler.getMetrics().recordMfaSessionReuse();
+        }
+        return RequestToBeSentAction.continueWith(request);
+    }
+
+    @Override
+    public ResponseReceivedAction handleHttpResponseReceived(HttpResponseReceived responseReceived) {
+        // Byte search first so ordinary responses are never parsed
+        if (!oktaHandler.isMfaResponderEnabled()
+                || responseReceived.toolSource().isFromTool(ToolType.EXTENSIONS)
+                || responseReceived.body().indexOf(IdxChallenge.REMEDIATION_NAME) < 0
+                || !responseReceived.initiatingRequest().isInScope()) {
+            return ResponseReceivedAction.continueWith(responseReceived);
+        }
+
+        IdxChallenge challenge;
+        try {
+            challenge = IdxChallenge.parse(Json.mapper().readTree(responseReceived.body().getBytes()));
+        } catch (Exception e) {
+            return ResponseReceivedAction.continueWith(responseReceived);
+        }
+        if (challenge == null) {
+            return ResponseReceivedAction.continueWith(responseReceived);
+        }
+
+        HttpRequest initiatingRequest = responseReceived.initiatingRequest();
+        HttpResponse answer = answer(challenge, initiatingRequest, responseReceived);
+        return ResponseReceivedAction.continueWith(answer != null ? answer : responseReceived);
+    }
+
+    private HttpResponse answer(IdxChallenge challenge, HttpRequest initiatingRequest, HttpResponse challengeResponse) {
+        EventLog eventLog = oktaHandler.getEventLog();
+        OktaMetrics metrics = oktaHandler.getMetrics();
+        String key = sessionKey(initiatingRequest);
+        String host = initiatingRequest.httpService().host();
+        if (!challenge.isAnswerableFrom(host, oktaHandler.getMfaOktaHosts())) {
+            eventLog.log(EventLog.Level.ERROR, "mfa-untrusted", "Okta MFA challenge from " + host + " not answered: "
+                    + challenge.getHref() + " is not https on that host or a configured Okta host.");
+            return null;
+        }
+
+        URI href = URI.create(challenge.getHref());
+        String answerHost = href.getHost();
+        String answerPath = href.getRawPath() == null || href.getRawPath().isEmpty() ? "/" : href.getRawPath();
+        String answerKey = sessionKey(answerHost, answerPath);
+
+        // Being challenged means any session cached for this account is no longer valid
+        MfaSessionCache sessions = oktaHandler.getMfaSessionCache();
+        sessions.invalidate(key);
+        sessions.invalidate(answerKey);
+
+        OktaConfig config = oktaHandler.resolveConfig(null, host, initiatingRequest.pathWithoutQuery());
+        String code = config.codeForRequest(metrics, oktaHandler.clockOffsetMillis(host));
+        if (code == null) {
+            eventLog.log(EventLog.Level.ERROR, "mfa-no-code", "Okta MFA challenge received but no TOTP code is available.");
+            return null;
+        }
+
+        // The IDX transaction is tied to the cookies of the original request and the challenge,
+        // but only those a browser would send to the answer URL go with it
+        List<SessionCookie> known = new ArrayList<>();
+        for (ParsedHttpParameter cookie : initiatingRequest.parameters(HttpParameterType.COOKIE)) {
+            known.add(SessionCookie.hostOnly(cookie.name(), cookie.value(), host));
+        }
+        List<SessionCookie> sessionCookies = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        long expiresAt = now + MfaSessionCache.DEFAULT_TTL_MILLIS;
+        expiresAt = setCookies(challengeResponse, host, initiatingRequest.pathWithoutQuery(), now, expiresAt, known, sessionCookies);
+        Map<String, String> cookies = new LinkedHashMap<>();
+        for (SessionCookie cookie : known) {
+            if (cookie.matches(answerHost, answerPath)) {
+                cookies.put(cookie.getName(), cookie.getValue());
+            }
+        }
+
+        HttpRequest answerRequest = HttpRequest.httpRequestFromUrl(challenge.getHref())
+                .withMethod(challenge.getMethod())
+                .withHeader("Content-Type", challenge.getContentType())
+                .withHeader("Accept", challenge.getContentType())
+                .withBody(challenge.answerBody(Json.mapper(), code));
+        if (!cookies.isEmpty()) {
+            answerRequest = answerRequest.withHeader("Cookie", cookieHeader(cookies));
+        }
+
+        HttpRequestResponse result;
+        try {
+            result = api.http().sendRequest(answerRequest);
+        } catch (Exception e) {
+            eventLog.log(EventLog.Level.ERROR, "mfa-error", "Error answering Okta MFA challenge: " + e.getMessage());
+            return null;
+        }
+        if (result == null || !result.hasResponse()) {
+            eventLog.log(EventLog.Level.ERROR, "mfa-error", "No response to the Okta MFA answer from " + challenge.getHref() + ".");
+            return null;
+        }
+
+        HttpResponse answerResponse = result.response();
+        JsonNode answerBody;
+        try {
+            answerBody = Json.mapper().readTree(answerResponse.body().getBytes());
+        } catch (Exception e) {
+            answerBody = Json.mapper().createObjectNode();
+        }
+        if (answerResponse.statusCode() >= 400 || !IdxChallenge.isSuccess(answerBody)) {
+            metrics.recordMfaAnswer(false);
+            eventLog.log(EventLog.Level.ERROR, "mfa-rejected", "Okta rejected the MFA answer (HTTP " + answerResponse.statusCode() + ").");
+            return answerResponse;
+        }
+
+        long idxExpiresAt = IdxChallenge.expiresAtMillis(answerBody);
+        if (idxExpiresAt > now) {
+            expiresAt = Math.min(expiresAt, idxExpiresAt);
+        }
+        expiresAt = setCookies(answerResponse, answerHost, answerPath, now, expiresAt, sessionCookies, sessionCookies);
+        sessions.put(key, sessionCookies, expiresAt);
+        if (!answerKey.equals(key)) {
+            sessions.put(answerKey, sessionCookies, expiresAt);
+        }
+
+        metrics.recordMfaAnswer(true);
+        eventLog.log(EventLog.Level.INFO, "mfa-answered", "Answered Okta MFA challenge for " + key + ".");
+        return answerResponse;
+    }
+
+    /**
+     * Applies a response's Set-Cookie headers, scoped to the host and path that set them, to
+     * {@code jar}. New cookies also go to {@code sessionCookies}; expired ones are removed from
+     * both, since Okta deletes transaction cookies by expiring them.
+     *
+     * @return {@code expiresAt}, shortened to the earliest expiry of a new cookie
+     */
+    private static long setCookies(HttpResponse response, String host, String path, long now, long expiresAt,
+                                   List<SessionCookie> jar, List<SessionCookie> sessionCookies) {
+        for (Cookie cookie : response.cookies()) {
+            SessionCookie scoped = SessionCookie.fromSetCookie(cookie.name(), cookie.value(), host, cookie.domain(), cookie.path(), path);
+            if (scoped == null) {
+                continue;
+            }
+            jar.removeIf(scoped::sameSlot);
+            sessionCookies.removeIf(scoped::sameSlot);
+            long cookieExpiresAt = cookie.expiration().map(expiration -> expiration.toInstant().toEpochMilli()).orElse(Long.MAX_VALUE);
+            if (cookieExpiresAt <= now) {
+                continue;
+            }
+            jar.add(scoped);
+            if (jar != sessionCookies) {
+                sessionCookies.add(scoped);
+            }
+            expiresAt = Math.min(expiresAt, cookieExpiresAt);
+        }
+        return expiresAt;
+    }
+
+    private String sessionKey(HttpRequest request) {
+        return sessionKey(request.httpService().host(), request.pathWithoutQuery());
+    }
+
+    private String sessionKey(String host, String path) {
+        OktaAccount account = oktaHandler.getAccountRegistry().resolve(host, path);
+        return MfaSessionCache.key(account != null ? account.getName() : null, host);
+    }
+
+    private static String cookieHeader(Map<String, String> cookies) {
+        return cookies.entrySet().stream()
+                .map(cookie -> cookie.getKey() + "=" + cookie.getValue())
+                .collect(Collectors.joining("; "));
+    }
+}
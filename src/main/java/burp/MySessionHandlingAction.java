@@ -5,14 +5,22 @@ import burp.api.montoya.http.sessions.SessionHandlingAction;
 import burp.api.montoya.http.sessions.SessionHandlingActionData;
 import burp.api.montoya.http.sessions.ActionResult;
 import burp.api.montoya.MontoyaApi;
+import okta.AccountRegistry;
+import okta.EventLog;
+import okta.InjectionTarget;
+import okta.OktaAccount;
+import okta.OktaConfig;
 import okta.OktaHandler;
+import okta.OktaMetrics;
+import okta.PlaceholderTemplate;
+import okta.RegexBudget;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Supplier;
 
 public class MySessionHandlingAction implements SessionHandlingAction {
     private final MontoyaApi api;
     private final OktaHandler oktaHandler;
+    private final RequestInjector requestInjector = new RequestInjector();
 
     public MySessionHandlingAction(MontoyaApi api, OktaHandler oktaHandler) {
         this.api = api;
@@ -26,46 +34,164 @@ public class MySessionHandlingAction implements SessionHandlingAction {
 
     @Override
     public ActionResult performAction(SessionHandlingActionData actionData) {
-        // Get the original request
-        HttpRequest request = actionData.request();
-
-        // Generate the TOTP code
-        String otpCode = oktaHandler.generateTOTP();
-        if (otpCode == null || otpCode.isEmpty()) {
-            api.logging().logToError("TOTP generation failed. Request processing skipped.");
-            return ActionResult.actionResult(request);
+        return ActionResult.actionResult(injectTotp(actionData.request()));
+    }
+
+    /**
+     * Injects the code for the request's account, the same way for session handling rules and
+     * the inline {@link InlineInjectionHandler}.
+     *
+     * @return the updated request, or the request unchanged (apart from the account marker) if
+     * nothing was injected
+     */
+    public HttpRequest injectTotp(HttpRequest request) {
+        long startNanos = System.nanoTime();
+        OktaMetrics metrics = oktaHandler.getMetrics();
+        EventLog eventLog = oktaHandler.getEventLog();
+
+        // Pick the account for this request; an explicit marker header wins and is stripped
+        String accountMarker = request.headerValue(AccountRegistry.MARKER_HEADER);
+        if (accountMarker != null) {
+            request = request.withRemovedHeader(AccountRegistry.MARKER_HEADER);
+            if (oktaHandler.getAccountRegistry().byName(accountMarker) == null) {
+                eventLog.log(EventLog.Level.ERROR, "unknown-account", "Unknown Okta account '" + accountMarker + "'. Using default configuration.");
+            }
         }
 
-        // Extract the regex pattern
-        String regex = oktaHandler.getRegex();
-        if (regex == null || regex.isEmpty()) {
-            api.logging().logToError("No regex pattern provided. Request processing skipped.");
-            return ActionResult.actionResult(request);
+        // Read one consistent configuration snapshot for the whole request
+        String host = request.httpService().host();
+        OktaConfig config = oktaHandler.resolveConfig(accountMarker, host, request.pathWithoutQuery());
+        long clockOffset = oktaHandler.clockOffsetMillis(host);
+
+        // Placeholder templates resolve their own codes, only for the placeholders present
+        InjectionTarget target = config.getInjectionTarget();
+        if (target.getType() == InjectionTarget.Type.TEMPLATE) {
+            try {
+                HttpRequest updatedRequest = requestInjector.injectPlaceholders(request, config.getBodyScanLimits(),
+                        placeholder -> placeholderValue(placeholder, config, clockOffset, metrics, eventLog));
+                return result(request, updatedRequest, target, startNanos);
+            } catch (Exception e) {
+                return error(request, target, e, startNanos);
+            }
         }
 
-        // Apply the regex to replace the TOTP code in the request body
-        String requestBody = request.bodyToString();
-        if (requestBody == null || requestBody.isEmpty()) {
-            api.logging().logToOutput("Request body is empty. No TOTP replacement applied.");
-            return ActionResult.actionResult(request);
+        // The regex fallback needs a pattern; structured targets do not
+        if (target.getType() == InjectionTarget.Type.REGEX && config.getPattern() == null) {
+            eventLog.log(EventLog.Level.ERROR, "no-pattern", "No regex pattern provided. Request processing skipped.");
+            metrics.recordAction(startNanos, OktaMetrics.Outcome.ERROR);
+            return request;
         }
 
+        // The code is claimed, honouring the rollover guard band and reuse gate, only once the
+        // target is found, so misses don't burn HOTP counter values or reuse gate slots
+        ClaimedCode otpCode = new ClaimedCode(config, metrics, clockOffset);
         try {
-            Pattern pattern = Pattern.compile(regex);
-            Matcher matcher = pattern.matcher(requestBody);
-
-            if (matcher.find()) {
-                String updatedBody = matcher.replaceAll(otpCode);
-                HttpRequest updatedRequest = request.withBody(updatedBody);
-                api.logging().logToOutput("TOTP successfully applied to the request.");
-                return ActionResult.actionResult(updatedRequest);
-            } else {
-                api.logging().logToOutput("No matching regex found in the request body. No changes made.");
-                return ActionResult.actionResult(request);
+            HttpRequest updatedRequest = requestInjector.inject(request, target, config.getPattern(), config.getBodyScanLimits(),
+                    config.getRegexBudget(), otpCode);
+            if (updatedRequest == null && otpCode.failed()) {
+                logNoCode(config, eventLog);
+                metrics.recordAction(startNanos, OktaMetrics.Outcome.ERROR);
+                return request;
             }
+            return result(request, updatedRequest, target, startNanos);
+        } catch (RegexBudget.ExceededException e) {
+            eventLog.log(EventLog.Level.ERROR, "regex-budget", e.getMessage() + " Request sent unchanged.");
+            metrics.recordRegexAbort();
+            metrics.recordAction(startNanos, OktaMetrics.Outcome.ERROR);
+            return request;
         } catch (Exception e) {
-            api.logging().logToError("Error applying regex to request body: " + e.getMessage());
-            return ActionResult.actionResult(request);
+            return error(request, target, e, startNanos);
+        }
+    }
+
+    private String placeholderValue(PlaceholderTemplate.Placeholder placeholder, OktaConfig config, long clockOffset,
+                                    OktaMetrics metrics, EventLog eventLog) {
+        switch (placeholder.getKind()) {
+            case TOTP: {
+                String code = config.codeForRequest(metrics, clockOffset);
+                if (code == null) {
+                    logNoCode(config, eventLog);
+                }
+                return code;
+            }
+            case TOTP_NEXT:
+                return config.nextCode(clockOffset);
+            case ACCOUNT_TOTP: {
+                OktaAccount account = oktaHandler.getAccountRegistry().byName(placeholder.getAccount());
+                if (account == null) {
+                    eventLog.log(EventLog.Level.ERROR, "unknown-account", "Unknown Okta account in " + placeholder + ". Placeholder left unchanged.");
+                    return null;
+                }
+                String code = account.getConfig().codeForRequest(metrics, clockOffset);
+                if (code == null) {
+                    logNoCode(account.getConfig(), eventLog);
+                }
+                return code;
+            }
+            default:
+                return Long.toString((System.currentTimeMillis() + clockOffset) / 1000);
+        }
+    }
+
+    private static void logNoCode(OktaConfig config, EventLog eventLog) {
+        eventLog.log(EventLog.Level.ERROR, "no-code", config.getReuseGate().isEnabled()
+                ? "No TOTP code available within the reuse gate limits. Request processing skipped."
+                : "TOTP generation failed. Request processing skipped.");
+    }
+
+    private HttpRequest result(HttpRequest request, HttpRequest updatedRequest, InjectionTarget target, long startNanos) {
+        EventLog eventLog = oktaHandler.getEventLog();
+        OktaMetrics metrics = oktaHandler.getMetrics();
+        if (updatedRequest != null) {
+            eventLog.log(EventLog.Level.INFO, "applied", "TOTP successfully applied to the request.");
+            if (eventLog.isEnabled(EventLog.Level.DEBUG)) {
+                eventLog.log(EventLog.Level.DEBUG, "applied-detail", "TOTP applied to " + request.method() + " " + request.httpService().host() + request.path());
+            }
+            metrics.recordAction(startNanos, OktaMetrics.Outcome.MATCH);
+            return updatedRequest;
+        } else {
+            eventLog.log(EventLog.Level.INFO, "miss", "No " + target + " found in the request. No changes made.");
+            metrics.recordAction(startNanos, OktaMetrics.Outcome.MISS);
+            return request;
+        }
+    }
+
+    private HttpRequest error(HttpRequest request, InjectionTarget target, Exception e, long startNanos) {
+        oktaHandler.getEventLog().log(EventLog.Level.ERROR, "inject-error", "Error applying TOTP to " + target + ": " + e.getMessage());
+        oktaHandler.getMetrics().recordAction(startNanos, OktaMetrics.Outcome.ERROR);
+        return request;
+    }
+
+    /**
+     * The request's code, claimed from the configuration on first use.
+     */
+    private static final class ClaimedCode implements Supplier<String> {
+        private final OktaConfig config;
+        private final OktaMetrics metrics;
+        private final long clockOffset;
+        private boolean claimed;
+        private String code;
+
+        ClaimedCode(OktaConfig config, OktaMetrics metrics, long clockOffset) {
+            this.config = config;
+            this.metrics = metrics;
+            this.clockOffset = clockOffset;
+        }
+
+        @Override
+        public String get() {
+            if (!claimed) {
+                claimed = true;
+                code = config.codeForRequest(metrics, clockOffset);
+                if (code != null && code.isEmpty()) {
+                    code = null;
+                }
+            }
+            return code;
+        }
+
+        boolean failed() {
+            return claimed && code == null;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,145 @@
+package burp;
+
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.http.message.params.HttpParameter;
+import burp.api.montoya.http.message.params.HttpParameterType;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import okta.BodyScanLimits;
+import okta.InjectionTarget;
+import okta.Json;
+import okta.PlaceholderTemplate;
+import okta.RegexBudget;
+
+import java.io.IOException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Writes a TOTP code into the location described by an {@link InjectionTarget}. Header and
+ * parameter targets go through Montoya's structured setters and never convert the body to a
+ * String; the regex fallback scans a bounded window of the body through {@link BodyRegexScanner}.
+ * Placeholder templates are parsed and rendered over the raw request bytes without a regex.
+ */
+public class RequestInjector {
+    private static final String PLACEHOLDER_PREFIX = "{{";
+
+    private final BodyRegexScanner bodyRegexScanner = new BodyRegexScanner();
+
+    /**
+     * Same as {@link #inject(HttpRequest, InjectionTarget, Pattern, BodyScanLimits, RegexBudget, String)}
+     * with the default regex budget.
+     */
+    public HttpRequest inject(HttpRequest request, InjectionTarget target, Pattern pattern, BodyScanLimits scanLimits, String code) throws IOException {
+        return inject(request, target, pattern, scanLimits, RegexBudget.DEFAULT, code);
+    }
+
+    /**
+     * Same as {@link #inject(HttpRequest, InjectionTarget, Pattern, BodyScanLimits, RegexBudget, Supplier)}
+     * with a code that is already known.
+     */
+    public HttpRequest inject(HttpRequest request, InjectionTarget target, Pattern pattern, BodyScanLimits scanLimits,
+                              RegexBudget regexBudget, String code) throws IOException {
+        return inject(request, target, pattern, scanLimits, regexBudget, () -> code);
+    }
+
+    /**
+     * Locates the target first and only then asks for the code, so a request without the target
+     * does not use up an HOTP counter value or a reuse gate slot.
+     *
+     * @param code called at most once, and only when the target is present; may return null
+     * @return the updated request, or null if the target is not present in the request or there
+     * was no code
+     * @throws RegexBudget.ExceededException if the regex fallback ran out of budget
+     */
+    public HttpRequest inject(HttpRequest request, InjectionTarget target, Pattern pattern, BodyScanLimits scanLimits,
+                              RegexBudget regexBudget, Supplier<String> code) throws IOException {
+        switch (target.getType()) {
+            case HEADER:
+                return request.hasHeader(target.getName()) ? updateHeader(request, target.getName(), code.get()) : null;
+            case URL_PARAMETER:
+                return injectParameter(request, target.getName(), HttpParameterType.URL, code);
+            case BODY_PARAMETER:
+                return injectParameter(request, target.getName(), HttpParameterType.BODY, code);
+            case JSON_POINTER:
+                return injectJson(request, target.getJsonPointer(), code);
+            case TEMPLATE:
+                return injectPlaceholders(request, scanLimits, placeholder -> placeholder.getKind() == PlaceholderTemplate.Kind.TOTP ? code.get() : null);
+            default:
+                return pattern != null ? bodyRegexScanner.inject(request, pattern, scanLimits, regexBudget, code) : null;
+        }
+    }
+
+    /**
+     * Replaces the placeholders of a {@link PlaceholderTemplate} anywhere in the request line
+     * and headers, and in the scanned window of the body.
+     *
+     * @param resolver the value of each distinct placeholder, or null to leave it in place
+     * @return the updated request, or null if no placeholder was replaced
+     */
+    public HttpRequest injectPlaceholders(HttpRequest request, BodyScanLimits scanLimits, Function<PlaceholderTemplate.Placeholder, String> resolver) {
+        ByteArray raw = request.toByteArray();
+        int bodyOffset = request.bodyOffset();
+        int scanEnd = (int) Math.min((long) bodyOffset + scanLimits.getMaxScanBytes(), raw.length());
+        if (raw.indexOf(PLACEHOLDER_PREFIX, true, 0, scanEnd) < 0) {
+            return null;
+        }
+
+        byte[] bytes = raw.getBytes();
+        PlaceholderTemplate template = PlaceholderTemplate.parse(bytes, scanEnd);
+        if (template.isEmpty()) {
+            return null;
+        }
+        byte[] rendered = template.render(bytes, resolver);
+        if (rendered == null) {
+            return null;
+        }
+
+        HttpRequest updated = HttpRequest.httpRequest(request.httpService(), ByteArray.byteArray(rendered));
+        // Only withBody keeps Content-Length in step with a body that changed length
+        boolean bodyChanged = template.getOffset(template.size() - 1) >= bodyOffset;
+        return bodyChanged && rendered.length != bytes.length ? updated.withBody(updated.body()) : updated;
+    }
+
+    private static HttpRequest updateHeader(HttpRequest request, String name, String code) {
+        return code != null ? request.withUpdatedHeader(name, code) : null;
+    }
+
+    private HttpRequest injectParameter(HttpRequest request, String name, HttpParameterType type, Supplier<String> code) {
+        if (!request.hasParameter(name, type)) {
+            return null;
+        }
+        String value = code.get();
+        return value != null ? request.withUpdatedParameters(HttpParameter.parameter(name, value, type)) : null;
+    }
+
+    private HttpRequest injectJson(HttpRequest request, JsonPointer pointer, Supplier<String> code) throws IOException {
+        ByteArray body = request.body();
+        if (body == null || body.length() == 0) {
+            return null;
+        }
+
+        JsonNode root = Json.mapper().readTree(body.getBytes());
+        JsonNode parent = root == null ? null : root.at(pointer.head());
+        JsonPointer leaf = pointer.last();
+
+        boolean inObject = parent instanceof ObjectNode && parent.has(leaf.getMatchingProperty());
+        boolean inArray = parent instanceof ArrayNode && leaf.getMatchingIndex() >= 0 && leaf.getMatchingIndex() < parent.size();
+        String value = inObject || inArray ? code.get() : null;
+        if (value == null) {
+            return null;
+        }
+        if (inObject) {
+            ((ObjectNode) parent).set(leaf.getMatchingProperty(), TextNode.valueOf(value));
+        } else {
+            ((ArrayNode) parent).set(leaf.getMatchingIndex(), TextNode.valueOf(value));
+        }
+
+        return request.withBody(ByteArray.byteArray(Json.mapper().writeValueAsBytes(root)));
+    }
+}
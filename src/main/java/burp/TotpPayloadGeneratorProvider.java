@@ -0,0 +1,53 @@
+package burp;
+
+import burp.api.montoya.intruder.AttackConfiguration;
+import burp.api.montoya.intruder.GeneratedPayload;
+import burp.api.montoya.intruder.IntruderInsertionPoint;
+import burp.api.montoya.intruder.PayloadGenerator;
+import burp.api.montoya.intruder.PayloadGeneratorProvider;
+import okta.EventLog;
+import okta.IntruderPayloads;
+import okta.OktaHandler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Intruder payload generator emitting one fresh code per payload, as set up under
+ * {@link IntruderPayloads}. Codes come from the handler's precomputed code table, so a payload
+ * costs a table read, not an HMAC, however many threads the attack runs.
+ */
+public class TotpPayloadGeneratorProvider implements PayloadGeneratorProvider {
+    private final OktaHandler oktaHandler;
+
+    public TotpPayloadGeneratorProvider(OktaHandler oktaHandler) {
+        this.oktaHandler = oktaHandler;
+    }
+
+    @Override
+    public String displayName() {
+        return "Okta TOTP codes";
+    }
+
+    @Override
+    public PayloadGenerator providePayloadGenerator(AttackConfiguration attackConfiguration) {
+        // Window, account and limit are fixed when the attack starts; Update Intruder only
+        // affects later attacks
+        IntruderPayloads settings = oktaHandler.getIntruderPayloads();
+        AtomicLong generated = new AtomicLong();
+        return insertionPoint -> generate(insertionPoint, settings, generated);
+    }
+
+    private GeneratedPayload generate(IntruderInsertionPoint insertionPoint, IntruderPayloads settings, AtomicLong generated) {
+        long maxPayloads = settings.getMaxPayloads();
+        if (maxPayloads > 0 && generated.incrementAndGet() > maxPayloads) {
+            return GeneratedPayload.end();
+        }
+        String code = oktaHandler.intruderPayload(settings, null);
+        if (code == null) {
+            oktaHandler.getEventLog().log(EventLog.Level.ERROR, "intruder-no-code",
+                    "Intruder asked for a TOTP payload but the selected account has no code. Ending the attack.");
+            return GeneratedPayload.end();
+        }
+        return GeneratedPayload.payload(code);
+    }
+}
@@ -0,0 +1,40 @@
+package burp;
+
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.intruder.PayloadData;
+import burp.api.montoya.intruder.PayloadProcessingResult;
+import burp.api.montoya.intruder.PayloadProcessor;
+import okta.EventLog;
+import okta.OktaHandler;
+
+/**
+ * Intruder payload processor replacing each payload with a code from the handler's
+ * precomputed code table. A payload naming an account gets that account's code, so a payload
+ * list of account names rotates through them in any order; any other payload gets the code
+ * chosen by the Intruder settings.
+ */
+public class TotpPayloadProcessor implements PayloadProcessor {
+    private final OktaHandler oktaHandler;
+
+    public TotpPayloadProcessor(OktaHandler oktaHandler) {
+        this.oktaHandler = oktaHandler;
+    }
+
+    @Override
+    public String displayName() {
+        return "Okta TOTP code";
+    }
+
+    @Override
+    public PayloadProcessingResult processPayload(PayloadData payloadData) {
+        String payload = payloadData.currentPayload().toString().trim();
+        String account = oktaHandler.getAccountRegistry().byName(payload) != null ? payload : null;
+        String code = oktaHandler.intruderPayload(account);
+        if (code == null) {
+            oktaHandler.getEventLog().log(EventLog.Level.ERROR, "intruder-no-code",
+                    "Intruder asked for a TOTP payload but the selected account has no code. Skipping the payload.");
+            return PayloadProcessingResult.skipPayload();
+        }
+        return PayloadProcessingResult.usePayload(ByteArray.byteArray(code));
+    }
+}
@@ -0,0 +1,159 @@
+package okta;
+
+import burp.api.montoya.MontoyaApi;
+
+import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lists the named accounts of the {@link AccountRegistry} together with their live codes.
+ * New accounts are created from the configuration currently active in the main panel.
+ */
+public class AccountsPanel extends JPanel {
+    private final MontoyaApi api;
+    private final OktaHandler oktaHandler;
+    private final AccountTableModel tableModel;
+    private final JTable table;
+
+    public AccountsPanel(MontoyaApi api, OktaHandler oktaHandler) {
+        super(new BorderLayout(5, 5));
+        this.api = api;
+        this.oktaHandler = oktaHandler;
+        this.tableModel = new AccountTableModel(oktaHandler.getAccountRegistry());
+
+        setBorder(BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.GRAY), "Accounts", TitledBorder.LEFT, TitledBorder.TOP));
+
+        table = new JTable(tableModel);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(600, 140));
+        add(scrollPane, BorderLayout.CENTER);
+
+        JButton addButton = new JButton("Save Current as Account");
+        addButton.addActionListener(e -> addAccount());
+        JButton removeButton = new JButton("Remove");
+        removeButton.addActionListener(e -> removeSelectedAccount());
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttonPanel.add(addButton);
+        buttonPanel.add(removeButton);
+        buttonPanel.add(new JLabel("Select an account per request with the " + AccountRegistry.MARKER_HEADER + " header, or by host and path."));
+        add(buttonPanel, BorderLayout.SOUTH);
+    }
+
+    /**
+     * Repaints the code column; must be called on the Event Dispatch Thread.
+     */
+    public void refreshCodes() {
+        tableModel.refresh();
+    }
+
+    private void addAccount() {
+        OktaConfig current = oktaHandler.getConfig();
+        if (current.getTotpGenerator() == null) {
+            JOptionPane.showMessageDialog(this,
+                    "Add a shared secret before saving it as an account.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        JTextField nameField = new JTextField(20);
+        JTextField hostsField = new JTextField(20);
+        hostsField.setToolTipText("Comma separated, e.g. tenant.okta.com, *.example.com. Leave empty for any host.");
+        JTextField pathField = new JTextField(20);
+
+        JPanel form = new JPanel(new GridLayout(0, 2, 5, 5));
+        form.add(new JLabel("Account Name:"));
+        form.add(nameField);
+        form.add(new JLabel("Hosts:"));
+        form.add(hostsField);
+        form.add(new JLabel("Path Prefix:"));
+        form.add(pathField);
+
+        int choice = JOptionPane.showConfirmDialog(this, form, "Save Account", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        try {
+            List<String> hosts = hostsField.getText().trim().isEmpty()
+                    ? Collections.emptyList()
+                    : Arrays.asList(hostsField.getText().split(","));
+            OktaAccount account = new OktaAccount(nameField.getText(), hosts, pathField.getText(), current);
+            oktaHandler.getAccountRegistry().put(account);
+            tableModel.refresh();
+            api.logging().logToOutput("Okta account '" + account.getName() + "' saved.");
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Invalid account: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void removeSelectedAccount() {
+        int row = table.getSelectedRow();
+        if (row < 0) {
+            return;
+        }
+        String name = (String) tableModel.getValueAt(table.convertRowIndexToModel(row), 0);
+        oktaHandler.getAccountRegistry().remove(name);
+        tableModel.refresh();
+        api.logging().logToOutput("Okta account '" + name + "' removed.");
+    }
+
+    private static class AccountTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"Name", "Hosts", "Path Prefix", "Injection", "Code"};
+
+        private final AccountRegistry registry;
+        private List<OktaAccount> rows;
+
+        AccountTableModel(AccountRegistry registry) {
+            this.registry = registry;
+            this.rows = registry.getAccounts();
+        }
+
+        void refresh() {
+            List<OktaAccount> latest = registry.getAccounts();
+            if (latest != rows) {
+                rows = latest;
+                fireTableDataChanged();
+            } else if (!rows.isEmpty()) {
+                fireTableRowsUpdated(0, rows.size() - 1);
+            }
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            OktaAccount account = rows.get(rowIndex);
+            switch (columnIndex) {
+                case 0:
+                    return account.getName();
+                case 1:
+                    return account.getHosts().isEmpty() ? "(any)" : String.join(", ", account.getHosts());
+                case 2:
+                    return account.getPathPrefix();
+                case 3:
+                    return account.getConfig().getInjectionTarget().toString();
+                default:
+                    return account.getConfig().currentCode();
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package okta;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Enrolls every QR image or PDF in a folder as a named account. Images are decoded in parallel on
+ * one pool, and enrollments run on a second pool whose size is the concurrency limit. Each
+ * domain's signing key is fetched once through the handler's JWKS cache. Every account is
+ * named after its file and stored in the {@link AccountRegistry}.
+ */
+public class BatchEnrollment {
+    private static final List<String> IMAGE_EXTENSIONS = Arrays.asList(".png", ".jpg", ".jpeg", ".gif", ".bmp", ".pdf");
+
+    private final OktaHandler oktaHandler;
+    private final QrDecoder qrDecoder;
+    private final int enrollmentConcurrency;
+
+    public BatchEnrollment(OktaHandler oktaHandler, QrDecoder qrDecoder, int enrollmentConcurrency) {
+        if (enrollmentConcurrency < 1) {
+            throw new IllegalArgumentException("Enrollment concurrency must be at least 1.");
+        }
+        this.oktaHandler = oktaHandler;
+        this.qrDecoder = qrDecoder;
+        this.enrollmentConcurrency = enrollmentConcurrency;
+    }
+
+    public static class Result {
+        public final File file;
+        public final String accountName;
+        public final String error;
+
+        Result(File file, String accountName, String error) {
+            this.file = file;
+            this.accountName = accountName;
+            this.error = error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Blocks until every image in the folder has been processed.
+     *
+     * @return one result per image, in file name order
+     */
+    public List<Result> enrollFolder(File folder) {
+        File[] files = folder.listFiles(file -> file.isFile() && isImage(file));
+        if (files == null || files.length == 0) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files);
+
+        int decodeThreads = Math.max(1, Math.min(files.length, Runtime.getRuntime().availableProcessors()));
+        ExecutorService decodePool = Executors.newFixedThreadPool(decodeThreads, daemonThreads("okta-qr-decode"));
+        ExecutorService enrollPool = Executors.newFixedThreadPool(Math.min(files.length, enrollmentConcurrency), daemonThreads("okta-enroll"));
+        try {
+            List<CompletableFuture<Result>> futures = new ArrayList<>();
+            for (File file : files) {
+                futures.add(CompletableFuture
+                        .supplyAsync(() -> decode(file), decodePool)
+                        .thenApplyAsync(qrData -> enroll(file, qrData), enrollPool)
+                        .exceptionally(e -> new Result(file, null, rootMessage(e))));
+            }
+
+            List<Result> results = new ArrayList<>();
+            for (CompletableFuture<Result> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        } finally {
+            decodePool.shutdownNow();
+            enrollPool.shutdownNow();
+        }
+    }
+
+    private String decode(File file) {
+        try {
+            return qrDecoder.decode(file);
+        } catch (Exception e) {
+            throw new IllegalStateException("QR decoding failed: " + (e.getMessage() != null ? e.getMessage() : "no QR code found"), e);
+        }
+    }
+
+    private Result enroll(File file, String qrData) {
+        String accountName = accountNameFor(file);
+        try {
+            String sharedSecret = oktaHandler.getEnrollment().enroll("Burp", qrData);
+
+            OktaConfig accountConfig = oktaHandler.configForSecret(oktaHandler.getConfig(), sharedSecret,
+                    TotpGenerator.Algorithm.SHA1, TotpGenerator.DEFAULT_DIGITS, TotpGenerator.DEFAULT_PERIOD_SECONDS);
+            oktaHandler.getAccountRegistry().put(new OktaAccount(accountName, Collections.emptyList(), "", accountConfig));
+            return new Result(file, accountName, null);
+        } catch (Exception e) {
+            return new Result(file, accountName, rootMessage(e));
+        }
+    }
+
+    private static boolean isImage(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        return IMAGE_EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    private static String accountNameFor(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null && (cause.getMessage() == null || cause instanceof CompletionException)) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
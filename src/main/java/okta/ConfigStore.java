@@ -0,0 +1,251 @@
+package okta;
+
+import burp.api.montoya.persistence.Preferences;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Saves the default configuration and the named accounts in Burp's extension preferences, so
+ * they survive restarts of Burp and the extension. Settings are stored as plain JSON; shared
+ * secrets are stored separately, encrypted under a user-supplied passphrase with
+ * {@link SecretCipher}.
+ * <p>
+ * Restoring happens in two steps: {@link #restoreSettings()} applies everything except the
+ * secrets and needs no passphrase, {@link #unlock(char[])} decrypts the secrets and recreates
+ * the accounts.
+ * <p>
+ * HOTP counters move with every request, so besides being saved with the settings they are
+ * checkpointed to their own keys by {@link #checkpointCounters()}, without a passphrase. On
+ * unlock a checkpoint wins over the counter saved with the settings.
+ */
+public class ConfigStore {
+    static final String SETTINGS_KEY = "okta.config.settings";
+    static final String SECRETS_KEY = "okta.config.secrets";
+    static final String DEFAULT_COUNTER_KEY = "okta.config.counter.default";
+    static final String ACCOUNT_COUNTER_KEY_PREFIX = "okta.config.counter.account.";
+
+    private final OktaHandler oktaHandler;
+    private final Preferences preferences;
+    // Last counter written per key, so unchanged counters are not written again
+    private final Map<String, Long> checkpointed = new ConcurrentHashMap<>();
+
+    public ConfigStore(OktaHandler oktaHandler, Preferences preferences) {
+        this.oktaHandler = oktaHandler;
+        this.preferences = preferences;
+    }
+
+    public boolean hasSavedSecrets() {
+        return preferences.getString(SECRETS_KEY) != null;
+    }
+
+    /**
+     * Saves the current configuration and accounts. Slow on purpose when secrets are present,
+     * since deriving the key takes a few hundred milliseconds; call it off the EDT.
+     *
+     * @throws IllegalArgumentException if there are secrets to save but no passphrase
+     */
+    public void save(char[] passphrase) throws IOException, GeneralSecurityException {
+        OktaConfig defaultConfig = oktaHandler.getConfig();
+        List<OktaAccount> accounts = oktaHandler.getAccountRegistry().getAccounts();
+
+        ObjectNode settings = Json.mapper().createObjectNode();
+        settings.set("default", toJson(defaultConfig));
+        ArrayNode accountNodes = settings.putArray("accounts");
+        ObjectNode secrets = Json.mapper().createObjectNode();
+        ObjectNode accountSecrets = secrets.putObject("accounts");
+        if (defaultConfig.getDecodedSecret() != null) {
+            secrets.put("default", defaultConfig.getDecodedSecret());
+        }
+        for (OktaAccount account : accounts) {
+            ObjectNode accountNode = accountNodes.addObject();
+            accountNode.put("name", account.getName());
+            ArrayNode hosts = accountNode.putArray("hosts");
+            account.getHosts().forEach(hosts::add);
+            accountNode.put("pathPrefix", account.getPathPrefix());
+            accountNode.set("config", toJson(account.getConfig()));
+            accountSecrets.put(account.getName(), account.getConfig().getDecodedSecret());
+        }
+
+        boolean hasSecrets = secrets.has("default") || !accounts.isEmpty();
+        if (hasSecrets && (passphrase == null || passphrase.length == 0)) {
+            throw new IllegalArgumentException("A passphrase is required to save shared secrets.");
+        }
+
+        preferences.setString(SETTINGS_KEY, Json.mapper().writeValueAsString(settings));
+        if (hasSecrets) {
+            preferences.setString(SECRETS_KEY, SecretCipher.encrypt(passphrase, Json.mapper().writeValueAsBytes(secrets)));
+        } else {
+            preferences.deleteString(SECRETS_KEY);
+        }
+        checkpointCounters();
+    }
+
+    /**
+     * Writes the HOTP counters that moved since the last checkpoint. Cheap enough to call every
+     * few seconds from the tick thread.
+     */
+    public synchronized void checkpointCounters() {
+        checkpoint(DEFAULT_COUNTER_KEY, oktaHandler.getConfig());
+        for (OktaAccount account : oktaHandler.getAccountRegistry().getAccounts()) {
+            checkpoint(ACCOUNT_COUNTER_KEY_PREFIX + account.getName(), account.getConfig());
+        }
+    }
+
+    /**
+     * Applies the saved regex, injection target, guard, gate, body scan and regex budget settings to the default
+     * configuration. Secrets and accounts stay locked until {@link #unlock(char[])}.
+     *
+     * @return whether anything was saved
+     */
+    public boolean restoreSettings() throws IOException {
+        JsonNode settings = readSettings();
+        if (settings == null) {
+            return false;
+        }
+
+        // Parsed into a detached config first so invalid saved data changes nothing
+        OktaConfig saved = baseConfig(settings.path("default"));
+        oktaHandler.setRegex(saved.getRegex());
+        oktaHandler.setInjectionTarget(saved.getInjectionTarget().getType(), saved.getInjectionTarget().getName());
+        oktaHandler.setRolloverGuard(saved.getRolloverGuard().getGuardBandMillis(), saved.getRolloverGuard().getPolicy());
+        CodeReuseGate gate = saved.getReuseGate();
+        oktaHandler.setReuseGate(gate.getMaxUsesPerWindow(), gate.getMaxWaiters(), gate.getTimeoutMillis());
+        BodyScanLimits scanLimits = saved.getBodyScanLimits();
+        oktaHandler.setBodyScanLimits(scanLimits.getMaxScanBytes(), new ArrayList<>(scanLimits.getPartNames()));
+        oktaHandler.setRegexBudget(saved.getRegexBudget().getMaxMillis());
+        return true;
+    }
+
+    /**
+     * Decrypts the saved secrets, sets the default secret and recreates the saved accounts.
+     * Slow on purpose; call it off the EDT.
+     *
+     * @return the number of accounts restored
+     * @throws IllegalArgumentException if the passphrase is wrong or the saved data is corrupted
+     */
+    public int unlock(char[] passphrase) throws IOException, GeneralSecurityException {
+        JsonNode settings = readSettings();
+        String encrypted = preferences.getString(SECRETS_KEY);
+        if (settings == null || encrypted == null) {
+            throw new IllegalArgumentException("No saved secrets found.");
+        }
+        JsonNode secrets = Json.mapper().readTree(SecretCipher.decrypt(passphrase, encrypted));
+
+        // Build every account first so a bad entry leaves the running configuration untouched
+        List<OktaAccount> accounts = new ArrayList<>();
+        for (JsonNode accountNode : settings.path("accounts")) {
+            String name = accountNode.path("name").asText();
+            String secret = secrets.path("accounts").path(name).asText(null);
+            if (secret == null) {
+                continue;
+            }
+            JsonNode configNode = accountNode.path("config");
+            List<String> hosts = new ArrayList<>();
+            accountNode.path("hosts").forEach(host -> hosts.add(host.asText()));
+            TotpGenerator.Algorithm algorithm = TotpGenerator.Algorithm.valueOf(configNode.path("algorithm").asText(TotpGenerator.Algorithm.SHA1.name()));
+            int digits = configNode.path("digits").asInt(TotpGenerator.DEFAULT_DIGITS);
+            OktaConfig config = isHotp(configNode)
+                    ? baseConfig(configNode).withHotpSecret(secret, algorithm, digits,
+                    savedCounter(ACCOUNT_COUNTER_KEY_PREFIX + name, configNode), oktaHandler.getMetrics())
+                    : oktaHandler.configForSecret(baseConfig(configNode), secret, algorithm, digits,
+                    configNode.path("periodSeconds").asInt(TotpGenerator.DEFAULT_PERIOD_SECONDS));
+            accounts.add(new OktaAccount(name, hosts, accountNode.path("pathPrefix").asText(""), config));
+        }
+
+        String defaultSecret = secrets.path("default").asText(null);
+        if (defaultSecret != null) {
+            JsonNode defaults = settings.path("default");
+            TotpGenerator.Algorithm algorithm = TotpGenerator.Algorithm.valueOf(defaults.path("algorithm").asText(TotpGenerator.Algorithm.SHA1.name()));
+            int digits = defaults.path("digits").asInt(TotpGenerator.DEFAULT_DIGITS);
+            if (isHotp(defaults)) {
+                oktaHandler.setHotpSecret(defaultSecret, algorithm, digits, savedCounter(DEFAULT_COUNTER_KEY, defaults));
+            } else {
+                oktaHandler.setSharedSecret(defaultSecret, algorithm, digits,
+                        defaults.path("periodSeconds").asInt(TotpGenerator.DEFAULT_PERIOD_SECONDS));
+            }
+        }
+        accounts.forEach(oktaHandler.getAccountRegistry()::put);
+        return accounts.size();
+    }
+
+    private void checkpoint(String key, OktaConfig config) {
+        HotpCounter counter = config.getHotpCounter();
+        if (counter == null) {
+            return;
+        }
+        long value = counter.getCounter();
+        Long previous = checkpointed.put(key, value);
+        if (previous == null || previous != value) {
+            preferences.setLong(key, value);
+        }
+    }
+
+    private long savedCounter(String key, JsonNode configNode) {
+        Long value = preferences.getLong(key);
+        return value != null ? value : configNode.path("counter").asLong(0);
+    }
+
+    private static boolean isHotp(JsonNode configNode) {
+        return "HOTP".equals(configNode.path("mode").asText());
+    }
+
+    private JsonNode readSettings() throws IOException {
+        String json = preferences.getString(SETTINGS_KEY);
+        return json != null ? Json.mapper().readTree(json) : null;
+    }
+
+    private ObjectNode toJson(OktaConfig config) {
+        ObjectNode node = Json.mapper().createObjectNode();
+        node.put("regex", config.getRegex());
+        node.put("injectionType", config.getInjectionTarget().getType().name());
+        node.put("injectionName", config.getInjectionTarget().getName());
+        node.put("guardBandMillis", config.getRolloverGuard().getGuardBandMillis());
+        node.put("guardPolicy", config.getRolloverGuard().getPolicy().name());
+        node.put("gateUses", config.getReuseGate().getMaxUsesPerWindow());
+        node.put("gateWaiters", config.getReuseGate().getMaxWaiters());
+        node.put("gateTimeoutMillis", config.getReuseGate().getTimeoutMillis());
+        node.put("scanWindowBytes", config.getBodyScanLimits().getMaxScanBytes());
+        ArrayNode scanParts = node.putArray("scanParts");
+        config.getBodyScanLimits().getPartNames().forEach(scanParts::add);
+        node.put("regexBudgetMillis", config.getRegexBudget().getMaxMillis());
+        TotpGenerator generator = config.getTotpGenerator();
+        if (generator != null) {
+            node.put("algorithm", generator.getAlgorithm().name());
+            node.put("digits", generator.getDigits());
+            node.put("periodSeconds", generator.getPeriodMillis() / 1000);
+        }
+        HotpCounter counter = config.getHotpCounter();
+        if (counter != null) {
+            node.put("mode", "HOTP");
+            node.put("counter", counter.getCounter());
+        }
+        return node;
+    }
+
+    private static OktaConfig baseConfig(JsonNode node) {
+        String regex = node.path("regex").asText("");
+        OktaConfig config = OktaConfig.empty()
+                .withRegex(regex, OktaConfig.compile(regex))
+                .withInjectionTarget(InjectionTarget.of(
+                        InjectionTarget.Type.valueOf(node.path("injectionType").asText(InjectionTarget.Type.REGEX.name())),
+                        node.path("injectionName").asText(null)))
+                .withRolloverGuard(new RolloverGuard(node.path("guardBandMillis").asLong(0),
+                        RolloverGuard.Policy.valueOf(node.path("guardPolicy").asText(RolloverGuard.Policy.USE_NEXT_CODE.name()))));
+        List<String> scanParts = new ArrayList<>();
+        node.path("scanParts").forEach(part -> scanParts.add(part.asText()));
+        config = config.withBodyScanLimits(new BodyScanLimits(node.path("scanWindowBytes").asInt(BodyScanLimits.DEFAULT_MAX_SCAN_BYTES), scanParts))
+                .withRegexBudget(new RegexBudget(node.path("regexBudgetMillis").asLong(RegexBudget.DEFAULT_MAX_MILLIS),
+                        RegexBudget.DEFAULT_MAX_STEPS_PER_CHAR));
+        int gateUses = node.path("gateUses").asInt(0);
+        return config.withReuseGate(gateUses == 0 ? CodeReuseGate.DISABLED
+                : new CodeReuseGate(gateUses, node.path("gateWaiters").asInt(0), node.path("gateTimeoutMillis").asLong(0)));
+    }
+}
@@ -0,0 +1,148 @@
+package okta;
+
+import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableRowSorter;
+import java.awt.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Shows the recent {@link EventLog} entries with a search filter and the verbosity setting.
+ */
+public class EventLogPanel extends JPanel {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private final EventLog eventLog;
+    private final EventTableModel tableModel;
+    private final TableRowSorter<EventTableModel> sorter;
+    private final JTextField searchField;
+    private long lastSequence = -1;
+
+    public EventLogPanel(EventLog eventLog) {
+        super(new BorderLayout(5, 5));
+        this.eventLog = eventLog;
+        this.tableModel = new EventTableModel(eventLog.getCapacity());
+
+        setBorder(BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.GRAY), "Event Log", TitledBorder.LEFT, TitledBorder.TOP));
+
+        JTable table = new JTable(tableModel);
+        sorter = new TableRowSorter<>(tableModel);
+        table.setRowSorter(sorter);
+        table.getColumnModel().getColumn(0).setPreferredWidth(90);
+        table.getColumnModel().getColumn(1).setPreferredWidth(60);
+        table.getColumnModel().getColumn(2).setPreferredWidth(600);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(600, 140));
+        add(scrollPane, BorderLayout.CENTER);
+
+        searchField = new JTextField(20);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+        });
+
+        JComboBox<EventLog.Level> verbosityBox = new JComboBox<>(EventLog.Level.values());
+        verbosityBox.setSelectedItem(eventLog.getVerbosity());
+        verbosityBox.setToolTipText("DEBUG also keeps every repeated event here; only the first of each kind per minute reaches Burp's output");
+        verbosityBox.addActionListener(e -> eventLog.setVerbosity((EventLog.Level) verbosityBox.getSelectedItem()));
+
+        JButton clearButton = new JButton("Clear");
+        clearButton.addActionListener(e -> tableModel.clear());
+
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controlPanel.add(new JLabel("Search:"));
+        controlPanel.add(searchField);
+        controlPanel.add(new JLabel("Verbosity:"));
+        controlPanel.add(verbosityBox);
+        controlPanel.add(clearButton);
+        add(controlPanel, BorderLayout.NORTH);
+    }
+
+    /**
+     * Appends the events recorded since the last call; must be called on the Event Dispatch Thread.
+     */
+    public void refresh() {
+        List<EventLog.Event> events = eventLog.eventsAfter(lastSequence);
+        if (!events.isEmpty()) {
+            lastSequence = events.get(events.size() - 1).getSequence();
+            tableModel.append(events);
+        }
+    }
+
+    private void applyFilter() {
+        String text = searchField.getText().trim();
+        sorter.setRowFilter(text.isEmpty() ? null : RowFilter.regexFilter("(?i)" + Pattern.quote(text)));
+    }
+
+    private static class EventTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"Time", "Level", "Event"};
+
+        private final int capacity;
+        private final List<EventLog.Event> rows = new ArrayList<>();
+
+        EventTableModel(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void append(List<EventLog.Event> latest) {
+            rows.addAll(latest);
+            if (rows.size() > capacity) {
+                rows.subList(0, rows.size() - capacity).clear();
+            }
+            fireTableDataChanged();
+        }
+
+        void clear() {
+            rows.clear();
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            EventLog.Event event = rows.get(rowIndex);
+            switch (columnIndex) {
+                case 0:
+                    return TIME_FORMAT.format(Instant.ofEpochMilli(event.getTimeMillis()));
+                case 1:
+                    return event.getLevel();
+                default:
+                    return event.getMessage();
+            }
+        }
+    }
+}
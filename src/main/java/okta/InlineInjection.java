@@ -0,0 +1,61 @@
+package okta;
+
+import burp.api.montoya.core.ToolType;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Settings of the inline injection mode, where codes are injected by an HTTP handler instead of
+ * a session handling rule: the tools whose requests are handled and the {@link RequestFilter}
+ * they must pass. Immutable, so the handler reads one consistent snapshot per request.
+ */
+public final class InlineInjection {
+    /**
+     * Tools offered in the UI; extension traffic is never handled, so the extension's own
+     * requests are left alone.
+     */
+    public static final Set<ToolType> SELECTABLE_TOOLS = Collections.unmodifiableSet(EnumSet.of(
+            ToolType.PROXY, ToolType.SCANNER, ToolType.INTRUDER, ToolType.REPEATER, ToolType.SEQUENCER, ToolType.TARGET));
+    // Declared after SELECTABLE_TOOLS, which the constructor reads
+    public static final InlineInjection DISABLED = new InlineInjection(false, EnumSet.noneOf(ToolType.class), RequestFilter.NONE);
+
+    private final boolean enabled;
+    private final Set<ToolType> tools;
+    private final RequestFilter filter;
+
+    /**
+     * @throws IllegalArgumentException if enabled without any tool
+     */
+    public InlineInjection(boolean enabled, Set<ToolType> tools, RequestFilter filter) {
+        EnumSet<ToolType> selected = tools.isEmpty() ? EnumSet.noneOf(ToolType.class) : EnumSet.copyOf(tools);
+        selected.retainAll(SELECTABLE_TOOLS);
+        if (enabled && selected.isEmpty()) {
+            throw new IllegalArgumentException("Select at least one tool for inline injection.");
+        }
+        this.enabled = enabled;
+        this.tools = Collections.unmodifiableSet(selected);
+        this.filter = filter;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Set<ToolType> getTools() {
+        return tools;
+    }
+
+    public RequestFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * The part of the filter that needs nothing parsed from the request: the tool and a hash
+     * lookup of the host. Method and path are only worth checking when this passes.
+     */
+    public boolean acceptsHost(ToolType tool, String host) {
+        return enabled && tools.contains(tool) && filter.matchesHost(host);
+    }
+}
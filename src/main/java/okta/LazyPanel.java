@@ -0,0 +1,42 @@
+package okta;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.HierarchyEvent;
+import java.util.function.Supplier;
+
+/**
+ * Placeholder registered as a suite tab that builds its real content the first time it is
+ * shown, so the extension loads without creating the whole Swing tree up front.
+ */
+public class LazyPanel<T extends Component> extends JPanel {
+    private final Supplier<T> factory;
+    private T content;
+
+    public LazyPanel(Supplier<T> factory) {
+        super(new BorderLayout());
+        this.factory = factory;
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && isShowing()) {
+                build();
+            }
+        });
+    }
+
+    /**
+     * @return the content, or null if the tab has not been shown yet
+     */
+    public T getIfBuilt() {
+        return content;
+    }
+
+    private void build() {
+        if (content != null) {
+            return;
+        }
+        content = factory.get();
+        add(content, BorderLayout.CENTER);
+        revalidate();
+        repaint();
+    }
+}
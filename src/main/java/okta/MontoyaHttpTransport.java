@@ -0,0 +1,38 @@
+package okta;
+
+import burp.api.montoya.MontoyaApi;
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import burp.api.montoya.http.message.responses.HttpResponse;
+
+import java.util.Map;
+
+/**
+ * Sends enrollment requests through Burp, so they honour its upstream proxy and TLS settings
+ * and show up in the extension's traffic.
+ */
+class MontoyaHttpTransport implements HttpTransport {
+    private final MontoyaApi api;
+
+    MontoyaHttpTransport(MontoyaApi api) {
+        this.api = api;
+    }
+
+    @Override
+    public Response send(String method, String url, Map<String, String> headers, String body) {
+        HttpRequest request = HttpRequest.httpRequestFromUrl(url).withMethod(method);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request = request.withHeader(header.getKey(), header.getValue());
+        }
+        if (body != null) {
+            request = request.withBody(body);
+        }
+
+        HttpRequestResponse requestResponse = api.http().sendRequest(request);
+        if (requestResponse == null || !requestResponse.hasResponse()) {
+            throw new IllegalStateException("No response from " + url + ".");
+        }
+        HttpResponse response = requestResponse.response();
+        return new Response(response.statusCode(), response.bodyToString());
+    }
+}
@@ -1,211 +1,521 @@
 package okta;
 
 import burp.api.montoya.MontoyaApi;
-import burp.api.montoya.utilities.Base64Utils;
+import burp.api.montoya.core.ByteArray;
 import burp.api.montoya.http.message.requests.HttpRequest;
-import burp.api.montoya.http.message.responses.HttpResponse;
-import burp.api.montoya.http.message.HttpRequestResponse;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.warrenstrange.googleauth.GoogleAuthenticator;
-
-import java.net.URI;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
-import java.util.*;
+import burp.api.montoya.proxy.ProxyHttpRequestResponse;
 
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+/**
+ * Burp side of the extension: holds the live configuration and accounts and connects the
+ * Montoya-free core (codes, enrollment, the local TOTP service) to Burp's logging, HTTP stack
+ * and preferences.
+ */
 public class OktaHandler {
+    // How long before a window boundary the next code is computed in the background
+    private static final long PRECOMPUTE_LEAD_MILLIS = 1_000L;
+    // How often moved HOTP counters are written to the preferences
+    private static final long COUNTER_CHECKPOINT_MILLIS = 5_000L;
+    // How many counter values ahead a resync looks for the given code
+    public static final int HOTP_RESYNC_WINDOW = 1_000;
+
     private final MontoyaApi api;
-    private final Base64Utils base64Utils;
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private String sharedSecretEncoded;
-    private String regex;
+    // Created on first use; most sessions never enroll
+    private volatile OktaEnrollment enrollment;
+    private final TickService tickService;
+    private final AtomicReference<OktaConfig> config = new AtomicReference<>(OktaConfig.empty());
+    private final AccountRegistry accountRegistry = new AccountRegistry();
+    private final OktaMetrics metrics = new OktaMetrics();
+    private final EventLog eventLog = new EventLog(EventLog.DEFAULT_CAPACITY, EventLog.DEFAULT_SUMMARY_INTERVAL_MILLIS);
+    private final ConfigStore configStore;
+    private final MfaSessionCache mfaSessionCache = new MfaSessionCache();
+    private final ClockSkewEstimator clockSkew = new ClockSkewEstimator();
+    private final CodeTable codeTable = new CodeTable(metrics);
+    private volatile boolean mfaResponderEnabled;
+    // Hosts besides the challenging one that may receive MFA answers
+    private volatile List<String> mfaOktaHosts = Collections.emptyList();
+    private volatile boolean clockCalibrationEnabled;
+    private volatile InlineInjection inlineInjection = InlineInjection.DISABLED;
+    private volatile IntruderPayloads intruderPayloads = IntruderPayloads.DEFAULT;
+    // The code table is only kept up to date once Intruder has asked for a payload
+    private volatile boolean codeTableInUse;
+    private volatile CompletableFuture<String> settingsRestored = CompletableFuture.completedFuture(null);
+    private TotpServer localService;
+    private long lastCounterCheckpoint;
 
     public OktaHandler(MontoyaApi api) {
         this.api = api;
-        this.base64Utils = api.utilities().base64Utils();
-        this.sharedSecretEncoded = null;
-        this.regex = "";
+        this.configStore = new ConfigStore(this, api.persistence().preferences());
+
+        this.tickService = new TickService(message -> api.logging().logToError(message));
+        tickService.subscribe(this::getPeriodMillis, (timeMillis, millisRemaining) -> precomputeDueCodes(timeMillis));
+        tickService.subscribe(this::getPeriodMillis, (timeMillis, millisRemaining) -> eventLog.drain(timeMillis, this::forwardEvent));
+        tickService.subscribe(this::getPeriodMillis, (timeMillis, millisRemaining) -> checkpointCounters(timeMillis));
+        tickService.subscribe(this::getPeriodMillis, (timeMillis, millisRemaining) -> {
+            if (codeTableInUse) {
+                codeTable.precompute(config.get(), accountRegistry.getAccounts(), timeMillis + clockOffsetMillis(null));
+            }
+        });
     }
 
-    public String getSharedSecretEncoded() {
-        return this.sharedSecretEncoded;
+    public OktaConfig getConfig() {
+        return config.get();
     }
 
-    public void setSharedSecret(String secret) {
-        if (secret == null || secret.trim().isEmpty()) {
-            this.sharedSecretEncoded = null;
-            api.logging().logToError("Shared secret cleared.");
-        } else {
-            this.sharedSecretEncoded = base64Utils.encodeToString(secret.trim());
+    public OktaMetrics getMetrics() {
+        return metrics;
+    }
+
+    public AccountRegistry getAccountRegistry() {
+        return accountRegistry;
+    }
+
+    public MfaSessionCache getMfaSessionCache() {
+        return mfaSessionCache;
+    }
+
+    public boolean isMfaResponderEnabled() {
+        return mfaResponderEnabled;
+    }
+
+    /**
+     * Turns answering of Okta MFA challenges in responses on or off. Turning it off also
+     * forgets the cached sessions.
+     */
+    public void setMfaResponderEnabled(boolean enabled) {
+        mfaResponderEnabled = enabled;
+        if (!enabled) {
+            mfaSessionCache.clear();
         }
     }
 
-    public String decodeSharedSecret() {
-        try {
-            if (sharedSecretEncoded == null || sharedSecretEncoded.isEmpty()) {
-                return null;
+    public List<String> getMfaOktaHosts() {
+        return mfaOktaHosts;
+    }
+
+    /**
+     * Sets the hosts, besides the one that issued a challenge, that MFA answers may be sent to,
+     * as exact names or wildcards of the form {@code *.okta.com}.
+     */
+    public void setMfaOktaHosts(List<String> hosts) {
+        List<String> normalized = new ArrayList<>();
+        for (String host : hosts) {
+            String trimmed = host.trim().toLowerCase(Locale.ROOT);
+            if (!trimmed.isEmpty()) {
+                normalized.add(trimmed);
             }
-            return new String(base64Utils.decode(sharedSecretEncoded).getBytes(), StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            api.logging().logToError("Error decoding shared secret: " + e.getMessage());
-            return null;
         }
+        mfaOktaHosts = Collections.unmodifiableList(normalized);
     }
 
-    public String getRegex() {
-        return regex;
+    public ClockSkewEstimator getClockSkew() {
+        return clockSkew;
     }
 
-    public void setRegex(String regex) {
-        this.regex = regex;
+    public boolean isClockCalibrationEnabled() {
+        return clockCalibrationEnabled;
     }
 
-    public String generateTOTP() {
-        String decodedSecret = decodeSharedSecret();
-        if (decodedSecret == null || decodedSecret.isEmpty()) {
-            return null;
-        }
-        try {
-            GoogleAuthenticator authenticator = new GoogleAuthenticator();
-            long currentTimeMillis = System.currentTimeMillis();
-            int totp = authenticator.getTotpPassword(decodedSecret, currentTimeMillis);
-            return String.format("%06d", totp);
-        } catch (Exception e) {
-            api.logging().logToError("Error generating TOTP: " + e.getMessage());
-            return null;
+    /**
+     * Turns clock-skew calibration from response {@code Date} headers on or off. Turning it
+     * off also forgets the estimates, so codes go back to the local clock.
+     */
+    public void setClockCalibrationEnabled(boolean enabled) {
+        clockCalibrationEnabled = enabled;
+        if (!enabled) {
+            clockSkew.clear();
         }
     }
 
-    public static class OktaVerifyData {
-        public String t;
-        public String f;
-        public String domain;
+    /**
+     * @return milliseconds to add to the local clock when picking codes for {@code host}, or 0
+     * while calibration is off
+     */
+    public long clockOffsetMillis(String host) {
+        return clockCalibrationEnabled ? clockSkew.offsetFor(host) : 0L;
+    }
+
+    public InlineInjection getInlineInjection() {
+        return inlineInjection;
+    }
+
+    public void setInlineInjection(InlineInjection inlineInjection) {
+        this.inlineInjection = inlineInjection;
+    }
+
+    public IntruderPayloads getIntruderPayloads() {
+        return intruderPayloads;
+    }
+
+    public void setIntruderPayloads(IntruderPayloads intruderPayloads) {
+        this.intruderPayloads = intruderPayloads;
     }
 
-    public OktaVerifyData extractVerifyData(String qrUrl) {
-        URI uri = URI.create(qrUrl);
+    /**
+     * Same as {@link #intruderPayload(IntruderPayloads, String)} with the current Intruder settings.
+     */
+    public String intruderPayload(String accountName) {
+        return intruderPayload(intruderPayloads, accountName);
+    }
 
-        if (!"oktaverify".equals(uri.getScheme())) {
-            throw new IllegalArgumentException("Invalid QR code URL schema. Expected 'oktaverify'.");
+    /**
+     * The code for one Intruder payload, read from the precomputed {@link CodeTable}. Windows
+     * are picked by the local clock plus the Okta clock-skew estimate, if calibration is on.
+     *
+     * @param settings    the Intruder settings, as captured when the attack started
+     * @param accountName the account to use, or null to follow the Intruder settings
+     * @return the code, or null if the account is unknown or has no secret
+     */
+    public String intruderPayload(IntruderPayloads settings, String accountName) {
+        if (!codeTableInUse) {
+            codeTableInUse = true;
+        }
+        OktaConfig defaultConfig = config.get();
+        long now = System.currentTimeMillis() + clockOffsetMillis(null);
+        codeTable.update(defaultConfig, accountRegistry.getAccounts(), now);
+
+        if (accountName == null && settings.isRotate()) {
+            return codeTable.rotate(settings.getWindow(), now);
+        }
+        String name = accountName != null ? accountName : settings.getAccount();
+        if (name == null) {
+            return codeTable.code(defaultConfig, settings.getWindow(), now);
         }
+        OktaAccount account = accountRegistry.byName(name);
+        return account != null ? codeTable.code(account.getConfig(), settings.getWindow(), now) : null;
+    }
+
+    public OktaEnrollment getEnrollment() {
+        OktaEnrollment current = enrollment;
+        if (current == null) {
+            synchronized (this) {
+                current = enrollment;
+                if (current == null) {
+                    current = new OktaEnrollment(new MontoyaHttpTransport(api));
+                    enrollment = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    public ConfigStore getConfigStore() {
+        return configStore;
+    }
+
+    /**
+     * Restores the saved settings on a background thread so extension loading is not held up.
+     * Secrets stay encrypted until the user unlocks them.
+     *
+     * @return completes with a message for the user, or null if nothing was saved or restoring
+     * failed; failures are logged
+     */
+    public CompletableFuture<String> restoreSavedSettings() {
+        settingsRestored = CompletableFuture.supplyAsync(() -> {
+            try {
+                if (!configStore.restoreSettings()) {
+                    return null;
+                }
+            } catch (Exception e) {
+                api.logging().logToError("Saved configuration error: " + e.getMessage());
+                return null;
+            }
+            String message = configStore.hasSavedSecrets()
+                    ? "Saved settings restored. Enter the passphrase and click Unlock to restore the shared secrets."
+                    : "Saved settings restored.";
+            api.logging().logToOutput(message);
+            return message;
+        });
+        return settingsRestored;
+    }
+
+    /**
+     * @return the last {@link #restoreSavedSettings()}, so a UI built later can still show what
+     * was restored
+     */
+    public CompletableFuture<String> getSettingsRestored() {
+        return settingsRestored;
+    }
 
-        var queryParams = parseQuery(uri);
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    public TickService getTickService() {
+        return tickService;
+    }
+
+    /**
+     * @return the window length of the default configuration, or the standard 30 seconds
+     * while no secret is set
+     */
+    public long getPeriodMillis() {
+        TotpCache cache = config.get().getTotpCache();
+        return cache != null ? cache.getPeriodMillis() : TotpGenerator.DEFAULT_PERIOD_SECONDS * 1000L;
+    }
+
+    /**
+     * Picks the configuration for a request: the account named by the marker if given,
+     * otherwise the best host and path match, otherwise the default configuration.
+     */
+    public OktaConfig resolveConfig(String accountMarker, String host, String path) {
+        OktaAccount account = accountMarker != null
+                ? accountRegistry.byName(accountMarker)
+                : accountRegistry.resolve(host, path);
+        return account != null ? account.getConfig() : config.get();
+    }
 
-        OktaVerifyData verifyData = new OktaVerifyData();
-        verifyData.t = queryParams.get("t");
-        verifyData.f = queryParams.get("f");
-        verifyData.domain = queryParams.get("issuer");
+    public String getSharedSecretEncoded() {
+        return config.get().getSharedSecretEncoded();
+    }
 
-        if (verifyData.domain == null || verifyData.t == null || verifyData.f == null) {
-            throw new IllegalArgumentException("Missing required parameters in QR code URL.");
+    public void setSharedSecret(String secret) {
+        setSharedSecret(secret, TotpGenerator.Algorithm.SHA1, TotpGenerator.DEFAULT_DIGITS, TotpGenerator.DEFAULT_PERIOD_SECONDS);
+    }
+
+    /**
+     * Replaces the shared secret and the TOTP parameters used to derive codes from it.
+     *
+     * @throws IllegalArgumentException if the secret is not valid Base32 or the parameters are
+     *                                  out of range; the current configuration is left untouched
+     */
+    public void setSharedSecret(String secret, TotpGenerator.Algorithm algorithm, int digits, int periodSeconds) {
+        if (secret == null || secret.trim().isEmpty()) {
+            config.updateAndGet(current -> current.withSharedSecret(null, null, null, metrics));
+            api.logging().logToError("Shared secret cleared.");
+        } else {
+            // Validate once outside the update so a bad secret leaves the configuration untouched
+            OktaConfig validated = OktaConfig.empty().withSecret(secret, algorithm, digits, periodSeconds, metrics);
+            config.updateAndGet(current -> current.withSharedSecret(validated.getSharedSecretEncoded(),
+                    validated.getDecodedSecret(), validated.getTotpGenerator(), metrics));
         }
+    }
 
-        return verifyData;
+    /**
+     * Replaces the shared secret with a counter-based HOTP secret, handing out codes from
+     * {@code counter} on.
+     *
+     * @throws IllegalArgumentException if the secret is not valid Base32, the digits are out of
+     *                                  range or the counter is negative; the current
+     *                                  configuration is left untouched
+     */
+    public void setHotpSecret(String secret, TotpGenerator.Algorithm algorithm, int digits, long counter) {
+        OktaConfig validated = OktaConfig.empty().withHotpSecret(secret, algorithm, digits, counter, metrics);
+        config.updateAndGet(current -> current.withHotpSecret(validated.getDecodedSecret(), algorithm, digits, counter, metrics));
     }
 
-    public String[] getDomainKey(String domain) throws Exception {
-        String url = "https://" + domain + "/oauth2/v1/keys";
-        HttpRequest request = HttpRequest.httpRequestFromUrl(url).withMethod("GET");
-        HttpRequestResponse requestResponse = api.http().sendRequest(request);
-        HttpResponse response = requestResponse.response();
+    /**
+     * Moves the HOTP counter of the default configuration, which accounts saved from it share.
+     *
+     * @throws IllegalArgumentException if the default secret is not HOTP or the value is negative
+     */
+    public void resyncHotpCounter(long value) {
+        hotpCounter().resync(value);
+        configStore.checkpointCounters();
+    }
 
-        if (response.statusCode() != 200) {
-            throw new RuntimeException("Failed to fetch domain keys. HTTP Status: " + response.statusCode());
+    /**
+     * Resyncs the HOTP counter from a code the server accepted last, looking up to
+     * {@value #HOTP_RESYNC_WINDOW} values ahead of the current counter.
+     *
+     * @return the new counter, one past the value of the code
+     * @throws IllegalArgumentException if the default secret is not HOTP or the code is not found
+     */
+    public long resyncHotpCounter(String lastAcceptedCode) {
+        HotpCounter counter = hotpCounter();
+        long value = counter.find(lastAcceptedCode.trim(), HOTP_RESYNC_WINDOW);
+        if (value < 0) {
+            throw new IllegalArgumentException("Code not found in the next " + HOTP_RESYNC_WINDOW + " counter values.");
         }
+        counter.resync(value + 1);
+        configStore.checkpointCounters();
+        return value + 1;
+    }
 
-        JsonNode keysNode = objectMapper.readTree(response.bodyToString()).get("keys");
-        if (keysNode == null || !keysNode.isArray() || keysNode.isEmpty()) {
-            throw new IllegalArgumentException("No keys found in the response.");
+    private HotpCounter hotpCounter() {
+        HotpCounter counter = config.get().getHotpCounter();
+        if (counter == null) {
+            throw new IllegalArgumentException("The shared secret is not a HOTP secret.");
         }
+        return counter;
+    }
 
-        String kid = keysNode.get(0).get("kid").asText();
-        String n = keysNode.get(0).get("n").asText();
+    /**
+     * Derives a configuration for another secret from {@code base}, keeping its injection,
+     * guard and gate settings. Used for accounts created without touching the default.
+     *
+     * @throws IllegalArgumentException if the secret is not valid Base32 or the parameters are out of range
+     */
+    public OktaConfig configForSecret(OktaConfig base, String secret, TotpGenerator.Algorithm algorithm, int digits, int periodSeconds) {
+        return base.withSecret(secret, algorithm, digits, periodSeconds, metrics);
+    }
 
-        return new String[]{kid, n};
+    public String decodeSharedSecret() {
+        return config.get().getDecodedSecret();
     }
 
-    public String createOktaAuthenticator(String deviceName, OktaVerifyData verifyData, String kid, String n) throws Exception {
-        String url = "https://" + verifyData.domain + "/idp/authenticators";
+    public String getRegex() {
+        return config.get().getRegex();
+    }
 
-        String authorizationHeader = "OTDT " + verifyData.t;
-        String userAgent = "D2DD7D3915.com.okta.android.auth/6.8.1 DeviceSDK/0.19.0 Android/7.1.1 unknown/Google";
+    /**
+     * Compiles and publishes a new injection pattern.
+     *
+     * @throws java.util.regex.PatternSyntaxException if the pattern is invalid; the current
+     *                                                configuration is left untouched
+     */
+    public void setRegex(String regex) {
+        Pattern pattern = OktaConfig.compile(regex);
+        config.updateAndGet(current -> current.withRegex(regex, pattern));
+    }
 
-        Map<String, Object> deviceDetails = buildDeviceDetails(deviceName, kid, n);
+    /**
+     * @throws IllegalArgumentException if the target name is missing or invalid
+     */
+    public void setInjectionTarget(InjectionTarget.Type type, String name) {
+        InjectionTarget target = InjectionTarget.of(type, name);
+        config.updateAndGet(current -> current.withInjectionTarget(target));
+    }
 
-        List<Map<String, Object>> methods = new ArrayList<>();
-        Map<String, Object> methodDetails = new HashMap<>();
-        methodDetails.put("isFipsCompliant", false);
-        methodDetails.put("supportUserVerification", false);
-        methodDetails.put("type", "totp");
-        methods.add(methodDetails);
+    /**
+     * @throws IllegalArgumentException if the guard band is out of range
+     */
+    public void setRolloverGuard(long guardBandMillis, RolloverGuard.Policy policy) {
+        RolloverGuard guard = new RolloverGuard(guardBandMillis, policy);
+        config.updateAndGet(current -> current.withRolloverGuard(guard));
+    }
 
-        Map<String, Object> requestBodyMap = new HashMap<>();
-        requestBodyMap.put("authenticatorId", verifyData.f);
-        requestBodyMap.put("device", deviceDetails);
-        requestBodyMap.put("key", "okta_verify");
-        requestBodyMap.put("methods", methods);
+    /**
+     * @throws IllegalArgumentException if any setting is negative
+     */
+    public void setReuseGate(int maxUsesPerWindow, int maxWaiters, long timeoutMillis) {
+        CodeReuseGate gate = maxUsesPerWindow == 0 ? CodeReuseGate.DISABLED : new CodeReuseGate(maxUsesPerWindow, maxWaiters, timeoutMillis);
+        config.updateAndGet(current -> current.withReuseGate(gate));
+    }
 
-        String requestBody = objectMapper.writeValueAsString(requestBodyMap);
+    /**
+     * @throws IllegalArgumentException if the scan window is out of range
+     */
+    public void setBodyScanLimits(int maxScanBytes, List<String> partNames) {
+        BodyScanLimits limits = new BodyScanLimits(maxScanBytes, partNames);
+        config.updateAndGet(current -> current.withBodyScanLimits(limits));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the time budget is out of range
+     */
+    public void setRegexBudget(long maxMillis) {
+        RegexBudget budget = new RegexBudget(maxMillis, RegexBudget.DEFAULT_MAX_STEPS_PER_CHAR);
+        config.updateAndGet(current -> current.withRegexBudget(budget));
+    }
+
+    /**
+     * Collects the bodies of the most recent text requests in the proxy history, as sample
+     * input for {@link RegexAnalyzer}.
+     *
+     * @param maxBytes each body is cut to this many bytes, normally the scan window
+     */
+    public List<byte[]> recentRequestBodies(int maxBodies, int maxBytes) {
+        List<ProxyHttpRequestResponse> history = api.proxy().history();
+        List<byte[]> bodies = new ArrayList<>();
+        for (int i = history.size() - 1; i >= 0 && bodies.size() < maxBodies; i--) {
+            HttpRequest request = history.get(i).finalRequest();
+            ByteArray body = request.body();
+            if (body == null || body.length() == 0 || BodyScanLimits.isBinaryContentType(request.headerValue("Content-Type"))) {
+                continue;
+            }
+            bodies.add(body.length() > maxBytes ? body.subArray(0, maxBytes).getBytes() : body.getBytes());
+        }
+        return bodies;
+    }
 
-        HttpRequest request = HttpRequest.httpRequestFromUrl(url)
-                .withMethod("POST")
-                .withHeader("Authorization", authorizationHeader)
-                .withHeader("User-Agent", userAgent)
-                .withHeader("Accept", "application/json; charset=UTF-8")
-                .withHeader("Accept-Encoding", "gzip, deflate")
-                .withHeader("Content-Type", "application/json; charset=UTF-8")
-                .withBody(requestBody);
+    public String generateTOTP() {
+        return config.get().currentCode();
+    }
 
-        HttpRequestResponse requestResponse = api.http().sendRequest(request);
-        HttpResponse response = requestResponse.response();
+    /**
+     * Starts the local TOTP service for tools outside Burp, serving the default configuration
+     * at {@code /totp} and each account at {@code /totp/NAME}. A running service is replaced.
+     *
+     * @param token bearer token clients must send, or empty to accept any local client
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized int startLocalService(int port, String token) throws IOException {
+        stopLocalService();
+        TotpServer server = new TotpServer(port, this::configForName, token);
+        server.start();
+        localService = server;
+        return server.getPort();
+    }
 
-        if (response.statusCode() != 200) {
-            throw new RuntimeException("Failed to create Okta authenticator. HTTP Status: " + response.statusCode());
+    public synchronized void stopLocalService() {
+        if (localService != null) {
+            localService.stop();
+            localService = null;
         }
+    }
 
-        JsonNode responseNode = objectMapper.readTree(response.bodyToString());
-        return responseNode.get("methods").get(0).get("sharedSecret").asText();
+    public synchronized boolean isLocalServiceRunning() {
+        return localService != null;
     }
 
-    private Map<String, Object> buildDeviceDetails(String deviceName, String kid, String n) {
-        Map<String, Object> clientInstanceKey = new HashMap<>();
-        clientInstanceKey.put("alg", "RS256");
-        clientInstanceKey.put("e", "AQAB");
-        clientInstanceKey.put("okta:isFipsCompliant", false);
-        clientInstanceKey.put("okta:kpr", "SOFTWARE");
-        clientInstanceKey.put("kty", "RSA");
-        clientInstanceKey.put("use", "sig");
-        clientInstanceKey.put("kid", kid);
-        clientInstanceKey.put("n", n);
+    public void shutdown() {
+        stopLocalService();
+        tickService.shutdown();
+        configStore.checkpointCounters();
+    }
 
-        Map<String, Object> deviceDetails = new HashMap<>();
-        deviceDetails.put("clientInstanceBundleId", "com.okta.android.auth");
-        deviceDetails.put("clientInstanceDeviceSdkVersion", "DeviceSDK 0.19.0");
-        deviceDetails.put("clientInstanceVersion", "6.8.1");
-        deviceDetails.put("clientInstanceKey", clientInstanceKey);
-        deviceDetails.put("displayName", deviceName);
-        deviceDetails.put("fullDiskEncryption", false);
-        deviceDetails.put("isHardwareProtectionEnabled", false);
-        deviceDetails.put("manufacturer", "unknown");
-        deviceDetails.put("model", "Google");
-        deviceDetails.put("osVersion", "25");
-        deviceDetails.put("platform", "ANDROID");
-        deviceDetails.put("rootPrivileges", true);
-        deviceDetails.put("screenLock", false);
-        deviceDetails.put("secureHardwarePresent", false);
+    private OktaConfig configForName(String name) {
+        if (name == null) {
+            return config.get();
+        }
+        OktaAccount account = accountRegistry.byName(name);
+        return account != null ? account.getConfig() : null;
+    }
 
-        return deviceDetails;
+    private void forwardEvent(EventLog.Event event) {
+        if (event.getLevel() == EventLog.Level.ERROR) {
+            api.logging().logToError(event.getMessage());
+        } else {
+            api.logging().logToOutput(event.getMessage());
+        }
+    }
+
+    private void precomputeDueCodes(long now) {
+        // Accounts may use other periods than the default, so each cache is checked on its own
+        try {
+            precomputeDueCodes(config.get(), now);
+            for (OktaAccount account : accountRegistry.getAccounts()) {
+                precomputeDueCodes(account.getConfig(), now);
+            }
+        } catch (Exception e) {
+            api.logging().logToError("Error generating TOTP: " + e.getMessage());
+        }
+    }
+
+    private static void precomputeDueCodes(OktaConfig config, long now) {
+        // HOTP batches are topped up every tick, TOTP codes just before the window ends
+        HotpCounter counter = config.getHotpCounter();
+        if (counter != null) {
+            counter.precompute();
+            return;
+        }
+        TotpCache cache = config.getTotpCache();
+        if (cache != null && cache.millisUntilNextStep(now) <= PRECOMPUTE_LEAD_MILLIS) {
+            cache.precomputeNext(now);
+        }
     }
 
-    private Map<String, String> parseQuery(URI uri) {
-        Map<String, String> query = new LinkedHashMap<>();
-        String[] pairs = uri.getQuery().split("&");
-        for (String pair : pairs) {
-            int idx = pair.indexOf("=");
-            query.put(URLDecoder.decode(pair.substring(0, idx), StandardCharsets.UTF_8),
-                    URLDecoder.decode(pair.substring(idx + 1), StandardCharsets.UTF_8));
+    private void checkpointCounters(long now) {
+        if (now - lastCounterCheckpoint < COUNTER_CHECKPOINT_MILLIS) {
+            return;
         }
-        return query;
+        lastCounterCheckpoint = now;
+        configStore.checkpointCounters();
     }
-}
\ No newline at end of file
+}
@@ -3,41 +3,75 @@
 package okta;
 
 import burp.api.montoya.MontoyaApi;
-import burp.api.montoya.core.ByteArray;
-import burp.api.montoya.utilities.Base64Utils;
-import com.google.zxing.*;
-import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
-import com.google.zxing.common.HybridBinarizer;
-
-import javax.imageio.ImageIO;
+import burp.api.montoya.core.ToolType;
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.Clipboard;
-import java.awt.image.BufferedImage;
+import java.awt.datatransfer.DataFlavor;
 import java.io.File;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.awt.Dimension;
 
 public class OktaUIInterface extends JPanel {
 
-    private static final ScheduledExecutorService EXECUTOR_SERVICE = Executors.newSingleThreadScheduledExecutor();
-    private ScheduledFuture<?> codeUpdateFuture;
+    private final TickService.Subscription codeTicker;
+    private final TickService.Subscription panelTicker;
 
     private final OktaHandler oktaHandler;
     private final MontoyaApi api;
-    private final Base64Utils base64Utils;
+    // Loads ZXing, so created on the first QR import
+    private QrDecoder qrDecoder;
     private final JTextField sharedSecretField;
     private final JTextField regexField;
+    private final JComboBox<TotpGenerator.Algorithm> algorithmBox;
+    private final JComboBox<Integer> digitsBox;
+    private final JSpinner periodSpinner;
+    private final JCheckBox hotpBox;
+    private final JTextField hotpStartField;
+    private final JLabel hotpCounterLabel;
+    private final JTextField hotpResyncField;
+    private final JComboBox<CodeTable.Window> intruderWindowBox;
+    private final JTextField intruderAccountField;
+    private final JCheckBox intruderRotateBox;
+    private final JSpinner intruderLimitSpinner;
+    private final JComboBox<InjectionTarget.Type> targetTypeBox;
+    private final JTextField targetNameField;
+    private final JSpinner guardBandSpinner;
+    private final JComboBox<RolloverGuard.Policy> guardPolicyBox;
+    private final JSpinner gateUsesSpinner;
+    private final JSpinner gateWaitersSpinner;
+    private final JSpinner gateTimeoutSpinner;
+    private final JPasswordField passphraseField;
+    private final JSpinner scanWindowSpinner;
+    private final JTextField scanPartsField;
+    private final JSpinner regexBudgetSpinner;
+    private final JLabel clockSkewLabel;
+    private final JCheckBox inlineInjectionBox;
+    private final Map<ToolType, JCheckBox> inlineToolBoxes = new EnumMap<>(ToolType.class);
+    private final JTextField inlineHostsField;
+    private final JTextField inlineMethodsField;
+    private final JTextField inlinePathsField;
     private final CircularProgressBar circularProgressBar;
     private final JButton copyTotpButton;
+    private final AccountsPanel accountsPanel;
+    private final StatisticsPanel statisticsPanel;
+    private final EventLogPanel eventLogPanel;
 
     public OktaUIInterface(MontoyaApi api, OktaHandler oktaHandler) {
         this.api = api;
         this.oktaHandler = oktaHandler;
-        this.base64Utils = api.utilities().base64Utils();
 
         setLayout(new BorderLayout(10, 10));
         setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
@@ -70,7 +104,24 @@ public class OktaUIInterface extends JPanel {
         uploadQrButton.addActionListener(e -> showQrFileChooser());
         inputPanel.add(uploadQrButton, gbc);
 
+        gbc.gridx = 1;
+        gbc.fill = GridBagConstraints.NONE;
+        JButton uploadQrFolderButton = new JButton("Import QR Folder", qrIcon);
+        uploadQrFolderButton.setHorizontalTextPosition(SwingConstants.RIGHT);
+        uploadQrFolderButton.setToolTipText("Enroll every QR image in a folder as a named account");
+        uploadQrFolderButton.addActionListener(e -> showQrFolderChooser());
+        inputPanel.add(uploadQrFolderButton, gbc);
+
+        gbc.gridx = 2;
+        JButton pasteQrButton = new JButton("Paste QR", qrIcon);
+        pasteQrButton.setHorizontalTextPosition(SwingConstants.RIGHT);
+        pasteQrButton.setToolTipText("Import a QR code from an image on the clipboard");
+        pasteQrButton.addActionListener(e -> pasteQrFromClipboard());
+        inputPanel.add(pasteQrButton, gbc);
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+
         // Shared Secret
+        gbc.gridx = 0;
         gbc.gridy = 1;
         inputPanel.add(new JLabel("Shared Secret:"), gbc);
 
@@ -83,9 +134,36 @@ public class OktaUIInterface extends JPanel {
         updateSecretButton.addActionListener(e -> updateSharedSecret());
         inputPanel.add(updateSecretButton, gbc);
 
-        // Regex Pattern
+        // TOTP Parameters
         gbc.gridx = 0;
         gbc.gridy = 2;
+        inputPanel.add(new JLabel("TOTP Settings:"), gbc);
+
+        gbc.gridx = 1;
+        JPanel totpSettingsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        algorithmBox = new JComboBox<>(TotpGenerator.Algorithm.values());
+        digitsBox = new JComboBox<>(new Integer[]{6, 7, 8});
+        periodSpinner = new JSpinner(new SpinnerNumberModel(TotpGenerator.DEFAULT_PERIOD_SECONDS, 1, 300, 1));
+        totpSettingsPanel.add(algorithmBox);
+        totpSettingsPanel.add(new JLabel("Digits:"));
+        totpSettingsPanel.add(digitsBox);
+        totpSettingsPanel.add(new JLabel("Period (s):"));
+        totpSettingsPanel.add(periodSpinner);
+        hotpBox = new JCheckBox("HOTP from counter");
+        hotpBox.setToolTipText("Counter-based codes instead of time-based ones; applied with Add");
+        hotpStartField = new JTextField("0", 6);
+        hotpStartField.setEnabled(false);
+        hotpBox.addActionListener(e -> {
+            hotpStartField.setEnabled(hotpBox.isSelected());
+            periodSpinner.setEnabled(!hotpBox.isSelected());
+        });
+        totpSettingsPanel.add(hotpBox);
+        totpSettingsPanel.add(hotpStartField);
+        inputPanel.add(totpSettingsPanel, gbc);
+
+        // Regex Pattern
+        gbc.gridx = 0;
+        gbc.gridy = 3;
         inputPanel.add(new JLabel("Regex Pattern:"), gbc);
 
         gbc.gridx = 1;
@@ -98,6 +176,313 @@ public class OktaUIInterface extends JPanel {
         updateRegexButton.addActionListener(e -> updateRegex());
         inputPanel.add(updateRegexButton, gbc);
 
+        // Injection Target
+        gbc.gridx = 0;
+        gbc.gridy = 4;
+        inputPanel.add(new JLabel("Inject Into:"), gbc);
+
+        gbc.gridx = 1;
+        JPanel targetPanel = new JPanel(new BorderLayout(5, 0));
+        targetTypeBox = new JComboBox<>(InjectionTarget.Type.values());
+        targetNameField = new JTextField(14);
+        targetNameField.setToolTipText("Header name, parameter name or JSON pointer such as /credentials/passcode");
+        targetNameField.setEnabled(false);
+        targetTypeBox.addActionListener(e -> targetNameField.setEnabled(((InjectionTarget.Type) targetTypeBox.getSelectedItem()).isNamed()));
+        targetPanel.add(targetTypeBox, BorderLayout.WEST);
+        targetPanel.add(targetNameField, BorderLayout.CENTER);
+        inputPanel.add(targetPanel, gbc);
+
+        gbc.gridx = 2;
+        JButton updateTargetButton = new JButton("Update Target");
+        updateTargetButton.addActionListener(e -> updateInjectionTarget());
+        inputPanel.add(updateTargetButton, gbc);
+
+        // Rollover Guard
+        gbc.gridx = 0;
+        gbc.gridy = 5;
+        inputPanel.add(new JLabel("Rollover Guard:"), gbc);
+
+        gbc.gridx = 1;
+        JPanel guardPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        guardBandSpinner = new JSpinner(new SpinnerNumberModel(0, 0, (int) RolloverGuard.MAX_GUARD_BAND_MILLIS, 100));
+        guardPolicyBox = new JComboBox<>(RolloverGuard.Policy.values());
+        guardPanel.add(guardBandSpinner);
+        guardPanel.add(new JLabel("ms before rollover:"));
+        guardPanel.add(guardPolicyBox);
+        inputPanel.add(guardPanel, gbc);
+
+        gbc.gridx = 2;
+        JButton updateGuardButton = new JButton("Update Guard");
+        updateGuardButton.addActionListener(e -> updateRolloverGuard());
+        inputPanel.add(updateGuardButton, gbc);
+
+        // Reuse Gate
+        gbc.gridx = 0;
+        gbc.gridy = 6;
+        inputPanel.add(new JLabel("Reuse Gate:"), gbc);
+
+        gbc.gridx = 1;
+        JPanel gatePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        gateUsesSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 1000, 1));
+        gateUsesSpinner.setToolTipText("How often one window's code may be used; 0 disables the gate");
+        gateWaitersSpinner = new JSpinner(new SpinnerNumberModel(50, 0, 10_000, 10));
+        gateTimeoutSpinner = new JSpinner(new SpinnerNumberModel(65, 1, 600, 5));
+        gatePanel.add(gateUsesSpinner);
+        gatePanel.add(new JLabel("uses/window, queue:"));
+        gatePanel.add(gateWaitersSpinner);
+        gatePanel.add(new JLabel("timeout (s):"));
+        gatePanel.add(gateTimeoutSpinner);
+        inputPanel.add(gatePanel, gbc);
+
+        gbc.gridx = 2;
+        JButton updateGateButton = new JButton("Update Gate");
+        updateGateButton.addActionListener(e -> updateReuseGate());
+        inputPanel.add(updateGateButton, gbc);
+
+        // Body Scan Limits
+        gbc.gridx = 0;
+        gbc.gridy = 7;
+        inputPanel.add(new JLabel("Body Scan:"), gbc);
+
+        gbc.gridx = 1;
+        JPanel scanPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        scanWindowSpinner = new JSpinner(new SpinnerNumberModel(BodyScanLimits.DEFAULT_MAX_SCAN_BYTES / 1024, 1, BodyScanLimits.MAX_SCAN_BYTES_LIMIT / 1024, 64));
+        scanWindowSpinner.setToolTipText("How much of a body, or of each multipart part, the regex scans");
+        scanPartsField = new JTextField(12);
+        scanPartsField.setToolTipText("Comma separated multipart part names to scan; empty scans every text part");
+        scanPanel.add(scanWindowSpinner);
+        scanPanel.add(new JLabel("KB, parts:"));
+        scanPanel.add(scanPartsField);
+        regexBudgetSpinner = new JSpinner(new SpinnerNumberModel((int) RegexBudget.DEFAULT_MAX_MILLIS, 1, (int) RegexBudget.MAX_MILLIS_LIMIT, 50));
+        regexBudgetSpinner.setToolTipText("Longest the regex may run on one request before it is aborted and the request sent unchanged");
+        scanPanel.add(new JLabel("budget:"));
+        scanPanel.add(regexBudgetSpinner);
+        scanPanel.add(new JLabel("ms"));
+        inputPanel.add(scanPanel, gbc);
+
+        gbc.gridx = 2;
+        JButton updateScanButton = new JButton("Update Scan");
+        updateScanButton.addActionListener(e -> updateBodyScanLimits());
+        inputPanel.add(updateScanButton, gbc);
+
+        // Saved Configuration
+        gbc.gridx = 0;
+        gbc.gridy = 8;
+        inputPanel.add(new JLabel("Passphrase:"), gbc);
+
+        gbc.gridx = 1;
+        passphraseField = new JPasswordField(20);
+        passphraseField.setToolTipText("Encrypts the saved shared secrets; needed again to unlock them after a restart");
+        inputPanel.add(passphraseField, gbc);
+
+        gbc.gridx = 2;
+        JPanel persistencePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        JButton saveConfigButton = new JButton("Save Config");
+        saveConfigButton.addActionListener(e -> saveConfig());
+        JButton unlockButton = new JButton("Unlock");
+        unlockButton.setToolTipText("Restore the saved secrets and accounts");
+        unlockButton.addActionListener(e -> unlockSavedSecrets());
+        persistencePanel.add(saveConfigButton);
+        persistencePanel.add(unlockButton);
+        inputPanel.add(persistencePanel, gbc);
+
+        // MFA Challenge Responder
+        gbc.gridx = 0;
+        gbc.gridy = 9;
+        inputPanel.add(new JLabel("MFA Challenges:"), gbc);
+
+        gbc.gridx = 1;
+        JPanel mfaPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        JCheckBox mfaResponderBox = new JCheckBox("Answer Okta TOTP challenges in responses");
+        mfaResponderBox.setToolTipText("Replaces an in-scope Okta Identity Engine TOTP challenge with the response to its answer and reuses the session until it expires");
+        JTextField mfaHostsField = new JTextField(14);
+        mfaHostsField.setToolTipText("Comma-separated hosts besides the challenging one that may receive answers, e.g. example.okta.com or *.okta.com");
+        mfaResponderBox.addActionListener(e -> {
+            oktaHandler.setMfaOktaHosts(Arrays.asList(mfaHostsField.getText().split(",")));
+            oktaHandler.setMfaResponderEnabled(mfaResponderBox.isSelected());
+            api.logging().logToOutput(mfaResponderBox.isSelected() ? "MFA challenge responder enabled." : "MFA challenge responder disabled.");
+        });
+        mfaHostsField.addActionListener(e -> {
+            oktaHandler.setMfaOktaHosts(Arrays.asList(mfaHostsField.getText().split(",")));
+            api.logging().logToOutput("MFA answers may also go to: " + String.join(", ", oktaHandler.getMfaOktaHosts()) + ".");
+        });
+        mfaPanel.add(mfaResponderBox);
+        mfaPanel.add(new JLabel("Okta hosts:"));
+        mfaPanel.add(mfaHostsField);
+        inputPanel.add(mfaPanel, gbc);
+
+        gbc.gridx = 2;
+        JButton clearSessionsButton = new JButton("Clear Sessions");
+        clearSessionsButton.addActionListener(e -> {
+            oktaHandler.getMfaSessionCache().clear();
+            api.logging().logToOutput("Cached Okta MFA sessions cleared.");
+        });
+        inputPanel.add(clearSessionsButton, gbc);
+
+        // Local TOTP Service
+        gbc.gridx = 0;
+        gbc.gridy = 10;
+        inputPanel.add(new JLabel("Local Service:"), gbc);
+
+        gbc.gridx = 1;
+        JPanel servicePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        JSpinner servicePortSpinner = new JSpinner(new SpinnerNumberModel(TotpServer.DEFAULT_PORT, 1024, 65535, 1));
+        servicePortSpinner.setEditor(new JSpinner.NumberEditor(servicePortSpinner, "#"));
+        JPasswordField serviceTokenField = new JPasswordField(10);
+        serviceTokenField.setToolTipText("Bearer token clients must send; empty accepts any local client");
+        servicePanel.add(new JLabel("Port"));
+        servicePanel.add(servicePortSpinner);
+        servicePanel.add(new JLabel("Token"));
+        servicePanel.add(serviceTokenField);
+        inputPanel.add(servicePanel, gbc);
+
+        gbc.gridx = 2;
+        JButton serviceButton = new JButton("Start Service");
+        serviceButton.setToolTipText("Serves codes on 127.0.0.1 at /totp and /totp/{account} for tools outside Burp");
+        serviceButton.addActionListener(e -> {
+            if (oktaHandler.isLocalServiceRunning()) {
+                oktaHandler.stopLocalService();
+                serviceButton.setText("Start Service");
+                api.logging().logToOutput("Local TOTP service stopped.");
+                return;
+            }
+            char[] token = serviceTokenField.getPassword();
+            try {
+                int port = oktaHandler.startLocalService((Integer) servicePortSpinner.getValue(), new String(token));
+                serviceButton.setText("Stop Service");
+                api.logging().logToOutput("Local TOTP service listening on http://127.0.0.1:" + port + "/totp.");
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(this,
+                        "Could not start the local TOTP service: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            } finally {
+                Arrays.fill(token, '\0');
+            }
+        });
+        inputPanel.add(serviceButton, gbc);
+
+        // Clock-Skew Calibration
+        gbc.gridx = 0;
+        gbc.gridy = 11;
+        inputPanel.add(new JLabel("Clock Skew:"), gbc);
+
+        gbc.gridx = 1;
+        JPanel clockSkewPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        JCheckBox clockCalibrationBox = new JCheckBox("Calibrate from server Date headers");
+        clockCalibrationBox.setToolTipText("Picks code windows by the clocks of Okta and in-scope hosts, estimated from their responses");
+        clockSkewLabel = new JLabel();
+        clockCalibrationBox.addActionListener(e -> {
+            oktaHandler.setClockCalibrationEnabled(clockCalibrationBox.isSelected());
+            api.logging().logToOutput(clockCalibrationBox.isSelected() ? "Clock-skew calibration enabled." : "Clock-skew calibration disabled.");
+            refreshClockSkew();
+        });
+        clockSkewPanel.add(clockCalibrationBox);
+        clockSkewPanel.add(clockSkewLabel);
+        inputPanel.add(clockSkewPanel, gbc);
+
+        gbc.gridx = 2;
+        JButton resetSkewButton = new JButton("Reset Skew");
+        resetSkewButton.addActionListener(e -> {
+            oktaHandler.getClockSkew().clear();
+            api.logging().logToOutput("Clock-skew estimates cleared.");
+            refreshClockSkew();
+        });
+        inputPanel.add(resetSkewButton, gbc);
+        refreshClockSkew();
+
+        // Inline Injection
+        gbc.gridx = 0;
+        gbc.gridy = 12;
+        inputPanel.add(new JLabel("Inline Injection:"), gbc);
+
+        gbc.gridx = 1;
+        JPanel inlineToolsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        inlineInjectionBox = new JCheckBox("Inject without session rules for");
+        inlineInjectionBox.setToolTipText("Injects codes as requests are sent, for the selected tools and the hosts, methods and paths below");
+        inlineInjectionBox.addActionListener(e -> updateInlineInjection());
+        inlineToolsPanel.add(inlineInjectionBox);
+        for (ToolType tool : InlineInjection.SELECTABLE_TOOLS) {
+            JCheckBox toolBox = new JCheckBox(tool.toolName(), tool == ToolType.SCANNER || tool == ToolType.REPEATER);
+            inlineToolBoxes.put(tool, toolBox);
+            inlineToolsPanel.add(toolBox);
+        }
+        inputPanel.add(inlineToolsPanel, gbc);
+
+        gbc.gridx = 2;
+        JButton updateInlineButton = new JButton("Update Inline");
+        updateInlineButton.addActionListener(e -> updateInlineInjection());
+        inputPanel.add(updateInlineButton, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 13;
+        inputPanel.add(new JLabel("Inline Filter:"), gbc);
+
+        gbc.gridx = 1;
+        JPanel inlineFilterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        inlineHostsField = new JTextField(14);
+        inlineHostsField.setToolTipText("Comma separated hosts, e.g. login.example.com, *.okta.com; required");
+        inlineMethodsField = new JTextField("POST", 5);
+        inlineMethodsField.setToolTipText("Comma separated methods; empty accepts any method");
+        inlinePathsField = new JTextField(10);
+        inlinePathsField.setToolTipText("Comma separated path prefixes, e.g. /idp/idx/challenge; empty accepts any path");
+        inlineFilterPanel.add(new JLabel("Hosts"));
+        inlineFilterPanel.add(inlineHostsField);
+        inlineFilterPanel.add(new JLabel("Methods"));
+        inlineFilterPanel.add(inlineMethodsField);
+        inlineFilterPanel.add(new JLabel("Paths"));
+        inlineFilterPanel.add(inlinePathsField);
+        inputPanel.add(inlineFilterPanel, gbc);
+
+        // HOTP Counter
+        gbc.gridx = 0;
+        gbc.gridy = 14;
+        inputPanel.add(new JLabel("HOTP Counter:"), gbc);
+
+        gbc.gridx = 1;
+        JPanel hotpPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        hotpCounterLabel = new JLabel();
+        hotpResyncField = new JTextField(10);
+        hotpResyncField.setToolTipText("A counter value, or with Resync from Code the code the server accepted last");
+        JButton setCounterButton = new JButton("Set Counter");
+        setCounterButton.addActionListener(e -> setHotpCounter());
+        hotpPanel.add(hotpCounterLabel);
+        hotpPanel.add(hotpResyncField);
+        hotpPanel.add(setCounterButton);
+        inputPanel.add(hotpPanel, gbc);
+
+        gbc.gridx = 2;
+        JButton resyncButton = new JButton("Resync from Code");
+        resyncButton.addActionListener(e -> resyncHotpFromCode());
+        inputPanel.add(resyncButton, gbc);
+        refreshHotpCounter();
+
+        // Intruder Payloads
+        gbc.gridx = 0;
+        gbc.gridy = 15;
+        inputPanel.add(new JLabel("Intruder Payloads:"), gbc);
+
+        gbc.gridx = 1;
+        JPanel intruderPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        intruderWindowBox = new JComboBox<>(CodeTable.Window.values());
+        intruderWindowBox.setToolTipText("Which window's code each payload gets");
+        intruderAccountField = new JTextField(8);
+        intruderAccountField.setToolTipText("Account name; empty uses the default configuration");
+        intruderRotateBox = new JCheckBox("Rotate accounts");
+        intruderRotateBox.addActionListener(e -> intruderAccountField.setEnabled(!intruderRotateBox.isSelected()));
+        intruderLimitSpinner = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 100));
+        intruderLimitSpinner.setToolTipText("Payloads per attack from the Okta TOTP codes generator; 0 for no limit");
+        intruderPanel.add(intruderWindowBox);
+        intruderPanel.add(new JLabel("Account"));
+        intruderPanel.add(intruderAccountField);
+        intruderPanel.add(intruderRotateBox);
+        intruderPanel.add(new JLabel("Limit"));
+        intruderPanel.add(intruderLimitSpinner);
+        inputPanel.add(intruderPanel, gbc);
+
+        gbc.gridx = 2;
+        JButton updateIntruderButton = new JButton("Update Intruder");
+        updateIntruderButton.addActionListener(e -> updateIntruderPayloads());
+        inputPanel.add(updateIntruderButton, gbc);
+
         // ========== TOTP PANEL ==========
         JPanel totpPanel = new JPanel(new BorderLayout());
         totpPanel.setBorder(BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.GRAY), "TOTP Code", TitledBorder.LEFT, TitledBorder.TOP));
@@ -133,39 +518,151 @@ public class OktaUIInterface extends JPanel {
         JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, inputPanel, totpPanel);
         splitPane.setDividerLocation(750);
         add(splitPane, BorderLayout.CENTER);
+
+        // ========== ACCOUNTS, STATISTICS AND EVENT LOG PANELS ==========
+        accountsPanel = new AccountsPanel(api, oktaHandler);
+        statisticsPanel = new StatisticsPanel(api, oktaHandler.getMetrics());
+        JSplitPane bottomPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, accountsPanel, statisticsPanel);
+        bottomPane.setResizeWeight(0.7);
+        eventLogPanel = new EventLogPanel(oktaHandler.getEventLog());
+        JTabbedPane bottomTabs = new JTabbedPane();
+        bottomTabs.addTab("Accounts & Statistics", bottomPane);
+        bottomTabs.addTab("Event Log", eventLogPanel);
+        add(bottomTabs, BorderLayout.SOUTH);
+
+        TickService tickService = oktaHandler.getTickService();
+        codeTicker = tickService.subscribe(oktaHandler::getPeriodMillis, new TickService.Listener() {
+            @Override
+            public void onRollover(long timeMillis, long step) {
+                // The only place the ticker touches a TOTP code; countdown ticks just move the ring
+                String totp = oktaHandler.generateTOTP();
+                if (totp != null) {
+                    SwingUtilities.invokeLater(() -> circularProgressBar.setTotpCode(totp));
+                }
+            }
+
+            @Override
+            public void onCountdown(long timeMillis, long millisRemaining) {
+                if (oktaHandler.getSharedSecretEncoded() != null && oktaHandler.getConfig().getHotpCounter() == null) {
+                    long periodMillis = oktaHandler.getPeriodMillis();
+                    SwingUtilities.invokeLater(() -> showCountdown(periodMillis, millisRemaining));
+                }
+            }
+        });
+        panelTicker = tickService.subscribe(oktaHandler::getPeriodMillis, (timeMillis, millisRemaining) -> SwingUtilities.invokeLater(() -> {
+            accountsPanel.refreshCodes();
+            statisticsPanel.refresh();
+            eventLogPanel.refresh();
+            refreshClockSkew();
+            refreshHotpCounter();
+        }));
+
+        // The tab may be built before or after the saved settings are restored
+        oktaHandler.getSettingsRestored().thenAccept(message -> {
+            if (message != null) {
+                SwingUtilities.invokeLater(() -> {
+                    showConfig();
+                    accountsPanel.refreshCodes();
+                });
+            }
+        });
+    }
+
+    /**
+     * Shows the next counter value and, since HOTP codes change with every request rather than
+     * on rollover, the code it will get.
+     */
+    private void refreshHotpCounter() {
+        HotpCounter counter = oktaHandler.getConfig().getHotpCounter();
+        if (counter == null) {
+            hotpCounterLabel.setText("Off");
+            return;
+        }
+        hotpCounterLabel.setText("next " + counter.getCounter());
+        String code = counter.peek();
+        if (code != null) {
+            circularProgressBar.setTotpCode(code);
+        }
+    }
+
+    private void setHotpCounter() {
+        try {
+            long value = Long.parseLong(hotpResyncField.getText().trim());
+            oktaHandler.resyncHotpCounter(value);
+            api.logging().logToOutput("HOTP counter set to " + value + ".");
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Invalid HOTP counter: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        refreshHotpCounter();
+    }
+
+    private void resyncHotpFromCode() {
+        try {
+            long value = oktaHandler.resyncHotpCounter(hotpResyncField.getText());
+            api.logging().logToOutput("HOTP counter resynced to " + value + ".");
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "HOTP resync failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        refreshHotpCounter();
+    }
+
+    private void refreshClockSkew() {
+        if (!oktaHandler.isClockCalibrationEnabled()) {
+            clockSkewLabel.setText("Off");
+            return;
+        }
+        ClockSkewEstimator.Estimate estimate = oktaHandler.getClockSkew().getReference();
+        clockSkewLabel.setText(estimate.getSamples() < ClockSkewEstimator.MIN_SAMPLES
+                ? "Measuring (" + estimate.getSamples() + " samples)"
+                : String.format("Servers %+d ms (%d samples)", estimate.getOffsetMillis(), estimate.getSamples()));
     }
 
     private void showQrFileChooser() {
         JFileChooser fileChooser = new JFileChooser();
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
-            new QrProcessingWorker(file).execute();
+            new QrProcessingWorker(() -> qrDecoder().decode(file)).execute();
+        }
+    }
+
+    private void pasteQrFromClipboard() {
+        Image image;
+        try {
+            Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
+            image = clipboard.isDataFlavorAvailable(DataFlavor.imageFlavor)
+                    ? (Image) clipboard.getData(DataFlavor.imageFlavor)
+                    : null;
+        } catch (Exception e) {
+            image = null;
+        }
+
+        if (image == null) {
+            JOptionPane.showMessageDialog(this, "The clipboard does not contain an image.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
         }
+        Image clipboardImage = image;
+        new QrProcessingWorker(() -> qrDecoder().decode(clipboardImage)).execute();
     }
 
     private class QrProcessingWorker extends SwingWorker<Void, Void> {
-        private final File qrFile;
+        private final Callable<String> qrSource;
         private String errorMessage = null;
 
-        QrProcessingWorker(File file) {
-            this.qrFile = file;
+        QrProcessingWorker(Callable<String> qrSource) {
+            this.qrSource = qrSource;
         }
 
         @Override
         protected Void doInBackground() {
             try {
-                String qrCodeData = readQRCode(qrFile);
-                OktaHandler.OktaVerifyData verifyData = oktaHandler.extractVerifyData(qrCodeData);
-                String[] keys = oktaHandler.getDomainKey(verifyData.domain);
-                String sharedSecret = oktaHandler.createOktaAuthenticator("Burp", verifyData, keys[0], keys[1]);
-
-                ByteArray secretBytes = ByteArray.byteArray(sharedSecret.getBytes(StandardCharsets.UTF_8));
-                String encodedSecret = base64Utils.encodeToString(secretBytes);
-
+                String qrCodeData = qrSource.call();
+                String sharedSecret = oktaHandler.getEnrollment().enroll("Burp", qrCodeData);
                 oktaHandler.setSharedSecret(sharedSecret);
 
                 SwingUtilities.invokeLater(() -> {
-                    sharedSecretField.setText(encodedSecret);
+                    sharedSecretField.setText(sharedSecret);
                     initializeAuthenticator();
                     api.logging().logToOutput("Shared secret updated.");
                 });
@@ -185,127 +682,560 @@ public class OktaUIInterface extends JPanel {
         }
     }
 
-    private String readQRCode(File qrFile) throws Exception {
-        BufferedImage bufferedImage = ImageIO.read(qrFile);
-        LuminanceSource source = new BufferedImageLuminanceSource(bufferedImage);
-        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-        return new MultiFormatReader().decode(bitmap).getText();
+    private void showQrFolderChooser() {
+        JFileChooser folderChooser = new JFileChooser();
+        folderChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (folderChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        JSpinner concurrencySpinner = new JSpinner(new SpinnerNumberModel(4, 1, 64, 1));
+        int choice = JOptionPane.showConfirmDialog(this, new Object[]{"Concurrent enrollments:", concurrencySpinner},
+                "Import QR Folder", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice == JOptionPane.OK_OPTION) {
+            new BatchEnrollmentWorker(folderChooser.getSelectedFile(), (Integer) concurrencySpinner.getValue()).execute();
+        }
+    }
+
+    private class BatchEnrollmentWorker extends SwingWorker<List<BatchEnrollment.Result>, Void> {
+        private final File folder;
+        private final int concurrency;
+
+        BatchEnrollmentWorker(File folder, int concurrency) {
+            this.folder = folder;
+            this.concurrency = concurrency;
+        }
+
+        @Override
+        protected List<BatchEnrollment.Result> doInBackground() {
+            api.logging().logToOutput("Enrolling QR codes from " + folder.getAbsolutePath() + "...");
+            return new BatchEnrollment(oktaHandler, qrDecoder(), concurrency).enrollFolder(folder);
+        }
+
+        @Override
+        protected void done() {
+            List<BatchEnrollment.Result> results;
+            try {
+                results = get();
+            } catch (Exception e) {
+                api.logging().logToError("Batch enrollment failed: " + e.getMessage());
+                JOptionPane.showMessageDialog(OktaUIInterface.this,
+                        "Batch enrollment failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            StringBuilder report = new StringBuilder();
+            int succeeded = 0;
+            for (BatchEnrollment.Result result : results) {
+                if (result.isSuccess()) {
+                    succeeded++;
+                    report.append("OK      ").append(result.file.getName()).append(" -> account '").append(result.accountName).append("'\n");
+                } else {
+                    report.append("FAILED  ").append(result.file.getName()).append(": ").append(result.error).append('\n');
+                }
+            }
+            String summary = "Enrolled " + succeeded + " of " + results.size() + " QR code(s).";
+            api.logging().logToOutput(summary + "\n" + report);
+            accountsPanel.refreshCodes();
+
+            JTextArea reportArea = new JTextArea(summary + "\n\n" + report, 15, 60);
+            reportArea.setEditable(false);
+            reportArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            JOptionPane.showMessageDialog(OktaUIInterface.this, new JScrollPane(reportArea),
+                    "Import QR Folder", succeeded == results.size() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
+    private void saveConfig() {
+        char[] passphrase = passphraseField.getPassword();
+        new ConfigStoreWorker(() -> {
+            try {
+                oktaHandler.getConfigStore().save(passphrase);
+            } finally {
+                Arrays.fill(passphrase, '\0');
+            }
+            return "Configuration saved.";
+        }, true).execute();
+    }
+
+    private void unlockSavedSecrets() {
+        char[] passphrase = passphraseField.getPassword();
+        new ConfigStoreWorker(() -> {
+            try {
+                int accounts = oktaHandler.getConfigStore().unlock(passphrase);
+                return "Saved secrets unlocked, " + accounts + " account(s) restored.";
+            } finally {
+                Arrays.fill(passphrase, '\0');
+            }
+        }, true).execute();
+    }
+
+    private class ConfigStoreWorker extends SwingWorker<String, Void> {
+        private final Callable<String> task;
+        private final boolean showErrors;
+
+        ConfigStoreWorker(Callable<String> task, boolean showErrors) {
+            this.task = task;
+            this.showErrors = showErrors;
+        }
+
+        @Override
+        protected String doInBackground() throws Exception {
+            return task.call();
+        }
+
+        @Override
+        protected void done() {
+            String message;
+            try {
+                message = get();
+            } catch (InterruptedException | ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                api.logging().logToError("Saved configuration error: " + cause.getMessage());
+                if (showErrors) {
+                    JOptionPane.showMessageDialog(OktaUIInterface.this,
+                            "Saved configuration error: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+                return;
+            }
+            if (message != null) {
+                showConfig();
+                accountsPanel.refreshCodes();
+                api.logging().logToOutput(message);
+            }
+        }
+    }
+
+    /**
+     * Copies the active default configuration into the input fields.
+     */
+    private void showConfig() {
+        OktaConfig config = oktaHandler.getConfig();
+        regexField.setText(config.getRegex() != null ? config.getRegex() : "");
+        targetTypeBox.setSelectedItem(config.getInjectionTarget().getType());
+        targetNameField.setText(config.getInjectionTarget().getName() != null ? config.getInjectionTarget().getName() : "");
+        guardBandSpinner.setValue((int) config.getRolloverGuard().getGuardBandMillis());
+        guardPolicyBox.setSelectedItem(config.getRolloverGuard().getPolicy());
+        CodeReuseGate gate = config.getReuseGate();
+        if (gate.isEnabled()) {
+            gateUsesSpinner.setValue(gate.getMaxUsesPerWindow());
+            gateWaitersSpinner.setValue(gate.getMaxWaiters());
+            gateTimeoutSpinner.setValue((int) Math.max(1, gate.getTimeoutMillis() / 1000));
+        }
+        BodyScanLimits scanLimits = config.getBodyScanLimits();
+        scanWindowSpinner.setValue(Math.max(1, scanLimits.getMaxScanBytes() / 1024));
+        scanPartsField.setText(String.join(", ", scanLimits.getPartNames()));
+        regexBudgetSpinner.setValue((int) config.getRegexBudget().getMaxMillis());
+        TotpGenerator generator = config.getTotpGenerator();
+        if (generator != null) {
+            algorithmBox.setSelectedItem(generator.getAlgorithm());
+            digitsBox.setSelectedItem(generator.getDigits());
+            periodSpinner.setValue((int) (generator.getPeriodMillis() / 1000));
+            sharedSecretField.setText(config.getDecodedSecret());
+            HotpCounter counter = config.getHotpCounter();
+            hotpBox.setSelected(counter != null);
+            hotpStartField.setEnabled(counter != null);
+            periodSpinner.setEnabled(counter == null);
+            if (counter != null) {
+                hotpStartField.setText(Long.toString(counter.getCounter()));
+            }
+        }
+        initializeAuthenticator();
     }
 
     private void updateRegex() {
         String regex = regexField.getText();
-        oktaHandler.setRegex(regex);
-        api.logging().logToOutput("Regex updated.");
+        Pattern pattern;
+        try {
+            pattern = OktaConfig.compile(regex);
+        } catch (PatternSyntaxException e) {
+            api.logging().logToError("Invalid regex pattern: " + e.getDescription());
+            JOptionPane.showMessageDialog(this,
+                    "Invalid regex pattern: " + e.getDescription(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (pattern == null) {
+            oktaHandler.setRegex(regex);
+            api.logging().logToOutput("Regex cleared.");
+            return;
+        }
+        // Try the pattern on recent traffic before it goes live
+        new RegexCheckWorker(regex, pattern).execute();
+    }
+
+    private class RegexCheckWorker extends SwingWorker<RegexAnalyzer.Report, Void> {
+        private static final int SAMPLE_BODIES = 200;
+
+        private final String regex;
+        private final Pattern pattern;
+
+        RegexCheckWorker(String regex, Pattern pattern) {
+            this.regex = regex;
+            this.pattern = pattern;
+        }
+
+        @Override
+        protected RegexAnalyzer.Report doInBackground() {
+            OktaConfig config = oktaHandler.getConfig();
+            List<byte[]> samples = oktaHandler.recentRequestBodies(SAMPLE_BODIES, config.getBodyScanLimits().getMaxScanBytes());
+            return RegexAnalyzer.analyze(pattern, samples, config.getRegexBudget());
+        }
+
+        @Override
+        protected void done() {
+            RegexAnalyzer.Report report;
+            try {
+                report = get();
+            } catch (Exception e) {
+                api.logging().logToError("Regex check failed: " + e.getMessage());
+                report = null;
+            }
+            if (report != null && report.isExpensive()) {
+                int choice = JOptionPane.showConfirmDialog(OktaUIInterface.this,
+                        "This pattern is expensive: " + report + ".\n"
+                                + "On Scanner traffic it may be aborted and leave requests without a code. Use it anyway?",
+                        "Expensive Regex", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+                if (choice != JOptionPane.YES_OPTION) {
+                    api.logging().logToOutput("Regex not updated.");
+                    return;
+                }
+            }
+            oktaHandler.setRegex(regex);
+            api.logging().logToOutput(report != null ? "Regex updated (" + report + ")." : "Regex updated.");
+        }
+    }
+
+    private void updateInjectionTarget() {
+        InjectionTarget.Type type = (InjectionTarget.Type) targetTypeBox.getSelectedItem();
+        try {
+            oktaHandler.setInjectionTarget(type, targetNameField.getText());
+        } catch (IllegalArgumentException e) {
+            api.logging().logToError("Invalid injection target: " + e.getMessage());
+            JOptionPane.showMessageDialog(this,
+                    "Invalid injection target: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        api.logging().logToOutput("Injection target updated: " + oktaHandler.getConfig().getInjectionTarget());
+    }
+
+    private void updateRolloverGuard() {
+        int guardBandMillis = (Integer) guardBandSpinner.getValue();
+        RolloverGuard.Policy policy = (RolloverGuard.Policy) guardPolicyBox.getSelectedItem();
+        try {
+            oktaHandler.setRolloverGuard(guardBandMillis, policy);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this,
+                    "Invalid rollover guard: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        api.logging().logToOutput(guardBandMillis == 0
+                ? "Rollover guard disabled."
+                : "Rollover guard set to " + guardBandMillis + " ms (" + policy + ").");
+    }
+
+    private void updateReuseGate() {
+        int maxUses = (Integer) gateUsesSpinner.getValue();
+        int maxWaiters = (Integer) gateWaitersSpinner.getValue();
+        int timeoutSeconds = (Integer) gateTimeoutSpinner.getValue();
+        try {
+            oktaHandler.setReuseGate(maxUses, maxWaiters, timeoutSeconds * 1000L);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this,
+                    "Invalid reuse gate: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        api.logging().logToOutput(maxUses == 0
+                ? "Reuse gate disabled."
+                : "Reuse gate set to " + maxUses + " use(s) per window, " + maxWaiters + " waiting, " + timeoutSeconds + " s timeout.");
+    }
+
+    private void updateBodyScanLimits() {
+        int windowKb = (Integer) scanWindowSpinner.getValue();
+        List<String> partNames = Arrays.asList(scanPartsField.getText().split(","));
+        try {
+            oktaHandler.setBodyScanLimits(windowKb * 1024, partNames);
+            oktaHandler.setRegexBudget((Integer) regexBudgetSpinner.getValue());
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this,
+                    "Invalid body scan limits: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        api.logging().logToOutput("Body scan limits set to " + oktaHandler.getConfig().getBodyScanLimits()
+                + ", regex budget " + oktaHandler.getConfig().getRegexBudget() + ".");
+    }
+
+    private void updateInlineInjection() {
+        if (!inlineInjectionBox.isSelected()) {
+            oktaHandler.setInlineInjection(InlineInjection.DISABLED);
+            api.logging().logToOutput("Inline injection disabled.");
+            return;
+        }
+
+        Set<ToolType> tools = EnumSet.noneOf(ToolType.class);
+        inlineToolBoxes.forEach((tool, box) -> {
+            if (box.isSelected()) {
+                tools.add(tool);
+            }
+        });
+        InlineInjection inline;
+        try {
+            RequestFilter filter = new RequestFilter(Arrays.asList(inlineHostsField.getText().split(",")),
+                    Arrays.asList(inlineMethodsField.getText().split(",")),
+                    Arrays.asList(inlinePathsField.getText().split(",")));
+            inline = new InlineInjection(true, tools, filter);
+        } catch (IllegalArgumentException e) {
+            inlineInjectionBox.setSelected(false);
+            oktaHandler.setInlineInjection(InlineInjection.DISABLED);
+            JOptionPane.showMessageDialog(this,
+                    "Invalid inline injection settings: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        oktaHandler.setInlineInjection(inline);
+        api.logging().logToOutput("Inline injection enabled for " + inline.getTools() + " requests to " + inline.getFilter().getHosts() + ".");
+    }
+
+    private void updateIntruderPayloads() {
+        String account = intruderAccountField.getText().trim();
+        boolean rotate = intruderRotateBox.isSelected();
+        if (!rotate && !account.isEmpty() && oktaHandler.getAccountRegistry().byName(account) == null) {
+            JOptionPane.showMessageDialog(this,
+                    "Invalid Intruder settings: unknown account '" + account + "'.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        IntruderPayloads payloads = new IntruderPayloads((CodeTable.Window) intruderWindowBox.getSelectedItem(),
+                account, rotate, (Integer) intruderLimitSpinner.getValue());
+        oktaHandler.setIntruderPayloads(payloads);
+        api.logging().logToOutput("Intruder payloads set to the " + payloads.getWindow().name().toLowerCase(Locale.ROOT) + " window's code for "
+                + (rotate ? "each account in turn" : account.isEmpty() ? "the default configuration" : "account '" + account + "'") + ".");
     }
 
     private void updateSharedSecret() {
         String secret = sharedSecretField.getText();
-        oktaHandler.setSharedSecret(secret);
-        sharedSecretField.setText(oktaHandler.getSharedSecretEncoded());
+        try {
+            if (hotpBox.isSelected() && !secret.trim().isEmpty()) {
+                oktaHandler.setHotpSecret(secret,
+                        (TotpGenerator.Algorithm) algorithmBox.getSelectedItem(),
+                        (Integer) digitsBox.getSelectedItem(),
+                        Long.parseLong(hotpStartField.getText().trim()));
+            } else {
+                oktaHandler.setSharedSecret(secret,
+                        (TotpGenerator.Algorithm) algorithmBox.getSelectedItem(),
+                        (Integer) digitsBox.getSelectedItem(),
+                        (Integer) periodSpinner.getValue());
+            }
+        } catch (IllegalArgumentException e) {
+            api.logging().logToError("Invalid TOTP settings: " + e.getMessage());
+            JOptionPane.showMessageDialog(this,
+                    "Invalid TOTP settings: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        // The field keeps the Base32 secret so that Add can validate it again
+        sharedSecretField.setText(oktaHandler.decodeSharedSecret());
         initializeAuthenticator();
     }
 
     private void initializeAuthenticator() {
-        if (codeUpdateFuture != null) {
-            codeUpdateFuture.cancel(false);
-        }
-
         String sharedSecret = oktaHandler.getSharedSecretEncoded();
         if (sharedSecret == null || sharedSecret.isEmpty()) {
+            circularProgressBar.setTotpCode(CircularProgressBar.NO_CODE);
             circularProgressBar.setProgress(0);
-            circularProgressBar.repaint();
             copyTotpButton.setEnabled(false);
             return;
         }
 
+        // Show the new secret's code right away instead of waiting for the next rollover
         copyTotpButton.setEnabled(true);
+        String totp = oktaHandler.generateTOTP();
+        if (totp != null) {
+            circularProgressBar.setTotpCode(totp);
+        }
+        if (oktaHandler.getConfig().getHotpCounter() != null) {
+            // No windows to count down
+            circularProgressBar.setProgress(0);
+            refreshHotpCounter();
+            return;
+        }
+        long periodMillis = oktaHandler.getPeriodMillis();
+        showCountdown(periodMillis, periodMillis - Math.floorMod(System.currentTimeMillis(), periodMillis));
+    }
 
-        codeUpdateFuture = Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(() -> {
-            try {
-                long currentTimeMillis = System.currentTimeMillis();
-                long timeStep = 30;
-                long timeSinceEpoch = currentTimeMillis / 1000;
-                long remaining = timeStep - (timeSinceEpoch % timeStep);
-                int progressPercent = (int) ((timeStep - remaining) * 100 / timeStep);
-                String totp = oktaHandler.generateTOTP();
-
-                SwingUtilities.invokeLater(() -> {
-                    if (totp != null) {
-                        circularProgressBar.setTotpCode(totp);
-                    }
-                    circularProgressBar.setProgress(progressPercent);
-                    circularProgressBar.setSecondsRemaining((int) remaining);
-                    circularProgressBar.repaint();
-                });
+    private void showCountdown(long periodMillis, long millisRemaining) {
+        long secondsRemaining = (millisRemaining + 999) / 1000;
+        long periodSeconds = periodMillis / 1000;
+        circularProgressBar.setProgress((int) ((periodSeconds - secondsRemaining) * 100 / periodSeconds));
+        circularProgressBar.setSecondsRemaining((int) secondsRemaining);
+    }
 
-            } catch (Exception e) {
-                api.logging().logToError("TOTP Update Error: " + e.getMessage());
-            }
-        }, 0, 1, TimeUnit.SECONDS);
+    private synchronized QrDecoder qrDecoder() {
+        if (qrDecoder == null) {
+            qrDecoder = new QrDecoder();
+        }
+        return qrDecoder;
     }
 
     public void stopAuthenticator() {
-        if (codeUpdateFuture != null) {
-            codeUpdateFuture.cancel(false);
-            EXECUTOR_SERVICE.shutdown();
+        codeTicker.cancel();
+        panelTicker.cancel();
+    }
+
+    /**
+     * Stops the tickers and the QR decoder's threads when the extension is unloaded.
+     */
+    public synchronized void shutdown() {
+        stopAuthenticator();
+        if (qrDecoder != null) {
+            qrDecoder.shutdown();
         }
     }
 
+    /**
+     * Draws the countdown ring and code. Fonts, colors and strokes are created once, and each
+     * setter repaints only the area its value occupies and only when the value changed.
+     */
     static class CircularProgressBar extends JComponent {
+        static final String NO_CODE = "------";
+        private static final int STROKE_WIDTH = 14;
+        private static final BasicStroke RING_STROKE = new BasicStroke(STROKE_WIDTH);
+        private static final Color PROGRESS_COLOR = new Color(0x4285F4);
+        private static final Font CODE_FONT = new Font("Arial", Font.BOLD, 36);
+        private static final Font SECONDS_FONT = new Font("Arial", Font.PLAIN, 16);
+
         private int progress = 0;
-        private String totpCode = "------";
+        private String totpCode = NO_CODE;
         private int secondsRemaining = 30;
+        private String secondsText = secondsRemaining + " seconds left";
+        private Color textColor;
+        private Color trackColor;
+
+        CircularProgressBar() {
+            loadThemeColors();
+        }
 
         public void setProgress(int progress) {
+            if (progress == this.progress) {
+                return;
+            }
+            int previous = this.progress;
             this.progress = progress;
+            if (progress < previous) {
+                // Wrapped around at rollover, so the whole ring is redrawn
+                repaint(ringBounds());
+            } else {
+                repaint(arcBounds(previous, progress));
+            }
         }
 
         public void setTotpCode(String code) {
+            if (code.equals(totpCode)) {
+                return;
+            }
             this.totpCode = code;
+            repaint(textBand(codeBaseline(), getFontMetrics(CODE_FONT)));
         }
 
         public void setSecondsRemaining(int seconds) {
+            if (seconds == secondsRemaining) {
+                return;
+            }
             this.secondsRemaining = seconds;
+            this.secondsText = seconds + " seconds left";
+            repaint(textBand(secondsBaseline(), getFontMetrics(SECONDS_FONT)));
         }
 
         public String getTotpCode() {
             return this.totpCode;
         }
 
+        @Override
+        public void updateUI() {
+            super.updateUI();
+            // Burp switches between light and dark themes at runtime
+            loadThemeColors();
+        }
+
+        private void loadThemeColors() {
+            Color foreground = UIManager.getColor("Label.foreground");
+            textColor = foreground != null ? foreground : Color.BLACK;
+            trackColor = textColor.darker().darker();
+        }
+
+        private int ringSize() {
+            return Math.min(getWidth(), getHeight()) - 20;
+        }
+
+        private Rectangle ringBounds() {
+            int size = ringSize();
+            int x = (getWidth() - size) / 2;
+            int y = (getHeight() - size) / 2;
+            return new Rectangle(x - STROKE_WIDTH, y - STROKE_WIDTH, size + 2 * STROKE_WIDTH, size + 2 * STROKE_WIDTH);
+        }
+
+        /**
+         * Bounds of the ring segment between two progress values, including any compass point the
+         * segment passes, since that is where an arc bulges past its end points.
+         */
+        private Rectangle arcBounds(int fromProgress, int toProgress) {
+            double radius = ringSize() / 2.0;
+            double centerX = getWidth() / 2.0;
+            double centerY = getHeight() / 2.0;
+            Rectangle bounds = null;
+            int fromAngle = (int) (360 * (fromProgress / 100.0));
+            int toAngle = (int) (360 * (toProgress / 100.0));
+            for (int angle = fromAngle; angle <= toAngle; angle++) {
+                if (angle != fromAngle && angle != toAngle && angle % 90 != 0) {
+                    continue;
+                }
+                // Progress runs clockwise from twelve o'clock
+                double radians = Math.toRadians(90 - angle);
+                Rectangle point = new Rectangle((int) (centerX + radius * Math.cos(radians)), (int) (centerY - radius * Math.sin(radians)), 0, 0);
+                bounds = bounds == null ? point : bounds.union(point);
+            }
+            bounds.grow(STROKE_WIDTH, STROKE_WIDTH);
+            return bounds;
+        }
+
+        private int codeBaseline() {
+            return getHeight() / 2 - 5;
+        }
+
+        private int secondsBaseline() {
+            return getHeight() / 2 + 25;
+        }
+
+        private Rectangle textBand(int baseline, FontMetrics fm) {
+            int size = ringSize();
+            int x = (getWidth() - size) / 2 + STROKE_WIDTH;
+            return new Rectangle(x, baseline - fm.getAscent(), Math.max(0, size - 2 * STROKE_WIDTH), fm.getAscent() + fm.getDescent());
+        }
+
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
-            int size = Math.min(getWidth(), getHeight()) - 20;
+            int size = ringSize();
             int x = (getWidth() - size) / 2;
             int y = (getHeight() - size) / 2;
 
             Graphics2D g2 = (Graphics2D) g;
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setStroke(RING_STROKE);
 
-            //Color ringBg = UIManager.getColor("Panel.background");
-            Color ringFg = UIManager.getColor("Label.foreground");
-            Color ringProgress = new Color(0x4285F4);
-
-            g2.setColor(ringFg.darker().darker());
-            g2.setStroke(new BasicStroke(14));
+            g2.setColor(trackColor);
             g2.drawOval(x, y, size, size);
 
-            g2.setColor(ringProgress);
-            g2.setStroke(new BasicStroke(14));
+            g2.setColor(PROGRESS_COLOR);
             int angle = (int) (360 * (progress / 100.0));
             g2.drawArc(x, y, size, size, 90, -angle);
 
-            g2.setColor(ringFg);
-            g2.setFont(new Font("Arial", Font.BOLD, 36));
+            g2.setColor(textColor);
+            g2.setFont(CODE_FONT);
             FontMetrics fm = g2.getFontMetrics();
             int codeWidth = fm.stringWidth(totpCode);
-            g2.drawString(totpCode, getWidth() / 2 - codeWidth / 2, getHeight() / 2 - 5);
+            g2.drawString(totpCode, getWidth() / 2 - codeWidth / 2, codeBaseline());
 
             g2.setColor(Color.GRAY);
-            g2.setFont(new Font("Arial", Font.PLAIN, 16));
-            String secText = secondsRemaining + " seconds left";
-            int secWidth = g2.getFontMetrics().stringWidth(secText);
-            g2.drawString(secText, getWidth() / 2 - secWidth / 2, getHeight() / 2 + 25);
+            g2.setFont(SECONDS_FONT);
+            int secWidth = g2.getFontMetrics().stringWidth(secondsText);
+            g2.drawString(secondsText, getWidth() / 2 - secWidth / 2, secondsBaseline());
         }
     }
-}
\ No newline at end of file
+}
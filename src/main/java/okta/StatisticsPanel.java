@@ -0,0 +1,128 @@
+package okta;
+
+import burp.api.montoya.MontoyaApi;
+
+import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import java.awt.*;
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shows the {@link OktaMetrics} counters and latency percentiles, and exports them as JSON.
+ */
+public class StatisticsPanel extends JPanel {
+    private static final String[][] ROWS = {
+            {"actionCalls", "Requests handled:"},
+            {"matches", "TOTP applied:"},
+            {"misses", "No target found:"},
+            {"errors", "Errors:"},
+            {"totpGenerations", "TOTP generations:"},
+            {"cacheHits", "Cache hits:"},
+            {"guardNextCodes", "Guard band: next code used:"},
+            {"guardWaits", "Guard band: waited for rollover:"},
+            {"guardWaitMillis", "Guard band: total wait (ms):"},
+            {"gateWaits", "Reuse gate: waited:"},
+            {"gateRejections", "Reuse gate: queue full:"},
+            {"gateTimeouts", "Reuse gate: timed out:"},
+            {"mfaAnswers", "MFA challenges answered:"},
+            {"mfaRejections", "MFA answers rejected:"},
+            {"mfaSessionReuses", "MFA sessions reused:"},
+            {"regexAborts", "Regex over budget:"},
+    };
+    private static final String[][] LATENCY_ROWS = {
+            {"p50", "Latency p50 (us):"},
+            {"p90", "Latency p90 (us):"},
+            {"p99", "Latency p99 (us):"},
+            {"max", "Latency max (us):"},
+    };
+    private static final String[][] GATE_WAIT_ROWS = {
+            {"p50", "Reuse gate wait p50 (ms):"},
+            {"p99", "Reuse gate wait p99 (ms):"},
+    };
+
+    private final MontoyaApi api;
+    private final OktaMetrics metrics;
+    private final Map<String, JLabel> valueLabels = new LinkedHashMap<>();
+
+    public StatisticsPanel(MontoyaApi api, OktaMetrics metrics) {
+        super(new BorderLayout(5, 5));
+        this.api = api;
+        this.metrics = metrics;
+
+        setBorder(BorderFactory.createTitledBorder(BorderFactory.createLineBorder(Color.GRAY), "Statistics", TitledBorder.LEFT, TitledBorder.TOP));
+
+        JPanel grid = new JPanel(new GridLayout(0, 2, 10, 2));
+        for (String[] row : ROWS) {
+            addRow(grid, row);
+        }
+        for (String[] row : LATENCY_ROWS) {
+            addRow(grid, row);
+        }
+        for (String[] row : GATE_WAIT_ROWS) {
+            addRow(grid, row, "gate." + row[0]);
+        }
+        add(grid, BorderLayout.CENTER);
+
+        JButton exportButton = new JButton("Export JSON");
+        exportButton.addActionListener(e -> exportJson());
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            metrics.reset();
+            refresh();
+        });
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttonPanel.add(exportButton);
+        buttonPanel.add(resetButton);
+        add(buttonPanel, BorderLayout.SOUTH);
+    }
+
+    /**
+     * Must be called on the Event Dispatch Thread.
+     */
+    @SuppressWarnings("unchecked")
+    public void refresh() {
+        Map<String, Object> snapshot = metrics.snapshot();
+        Map<String, Object> latency = (Map<String, Object>) snapshot.get("actionLatencyMicros");
+        for (String[] row : ROWS) {
+            valueLabels.get(row[0]).setText(String.valueOf(snapshot.get(row[0])));
+        }
+        for (String[] row : LATENCY_ROWS) {
+            valueLabels.get(row[0]).setText(String.format("%.1f", (Double) latency.get(row[0])));
+        }
+        Map<String, Object> gateWait = (Map<String, Object>) snapshot.get("gateWaitMillis");
+        for (String[] row : GATE_WAIT_ROWS) {
+            valueLabels.get("gate." + row[0]).setText(String.format("%.1f", (Double) gateWait.get(row[0])));
+        }
+    }
+
+    private void addRow(JPanel grid, String[] row) {
+        addRow(grid, row, row[0]);
+    }
+
+    private void addRow(JPanel grid, String[] row, String key) {
+        JLabel value = new JLabel("0");
+        grid.add(new JLabel(row[1]));
+        grid.add(value);
+        valueLabels.put(key, value);
+    }
+
+    private void exportJson() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File("okta-totp-statistics.json"));
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        File file = fileChooser.getSelectedFile();
+        try {
+            Json.mapper().writerWithDefaultPrettyPrinter().writeValue(file, metrics.snapshot());
+            api.logging().logToOutput("Statistics exported to " + file.getAbsolutePath());
+        } catch (Exception e) {
+            api.logging().logToError("Statistics export failed: " + e.getMessage());
+            JOptionPane.showMessageDialog(this, "Statistics export failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
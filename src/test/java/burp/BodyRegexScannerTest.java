@@ -0,0 +1,57 @@
+package burp;
+
+import burp.api.montoya.http.message.requests.HttpRequest;
+import okta.BodyScanLimits;
+import okta.RegexBudget;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BodyRegexScannerTest {
+    private static final Pattern DIGITS = Pattern.compile("\\d+");
+
+    private final BodyRegexScanner scanner = new BodyRegexScanner();
+
+    @BeforeAll
+    static void installObjectFactory() {
+        MontoyaStubs.installObjectFactory();
+    }
+
+    @Test
+    void overwritesMatchesOfTheCodeLength() {
+        HttpRequest updated = scanner.inject(MontoyaStubs.request("a=111111&b=222222"), DIGITS, BodyScanLimits.DEFAULT,
+                RegexBudget.DEFAULT, () -> "123456");
+        assertEquals("a=123456&b=123456", updated.bodyToString());
+    }
+
+    @Test
+    void splicesMatchesOfOtherLengths() {
+        HttpRequest updated = scanner.inject(MontoyaStubs.request("1x22y333333z4444444444"), DIGITS, BodyScanLimits.DEFAULT,
+                RegexBudget.DEFAULT, () -> "123456");
+        assertEquals("123456x123456y123456z123456", updated.bodyToString());
+    }
+
+    @Test
+    void splicesManyMatches() {
+        StringBuilder body = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            body.append("7,");
+            expected.append("12345678,");
+        }
+        HttpRequest updated = scanner.inject(MontoyaStubs.request(body.toString()), DIGITS, BodyScanLimits.DEFAULT,
+                RegexBudget.DEFAULT, () -> "12345678");
+        assertEquals(expected.toString(), updated.bodyToString());
+    }
+
+    @Test
+    void noMatchAsksForNoCode() {
+        assertNull(scanner.inject(MontoyaStubs.request("a=b"), DIGITS, BodyScanLimits.DEFAULT, RegexBudget.DEFAULT, () -> {
+            throw new AssertionError("code claimed without a match");
+        }));
+    }
+}
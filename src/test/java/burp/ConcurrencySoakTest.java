@@ -0,0 +1,325 @@
+package burp;
+
+import burp.api.montoya.http.message.requests.HttpRequest;
+import okta.AccountRegistry;
+import okta.FakeOkta;
+import okta.InjectionTarget;
+import okta.OktaAccount;
+import okta.OktaConfig;
+import okta.OktaEnrollment;
+import okta.OktaHandler;
+import okta.TotpGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Concurrency soak to run before a release. Hundreds of threads drive
+ * {@link MySessionHandlingAction#performAction} and the enrollment path against
+ * {@link FakeOkta}, and every code they get is checked.
+ * <p>
+ * Each timed scenario runs for {@code soak.seconds} (default 3). The injection scenario also
+ * enforces {@code soak.maxP99Micros} and {@code soak.minActionsPerSecond}; 0 disables a limit.
+ */
+class ConcurrencySoakTest {
+    private static final long SOAK_MILLIS = Long.getLong("soak.seconds", 3) * 1000;
+    private static final long MAX_P99_MICROS = Long.getLong("soak.maxP99Micros", 100_000);
+    private static final long MIN_ACTIONS_PER_SECOND = Long.getLong("soak.minActionsPerSecond", 1_000);
+
+    private static final String ACCOUNT = "soak";
+    private static final String HEADER = "X-Code";
+    private static final String HEADER_A = "X-Code-A";
+    private static final String HEADER_B = "X-Code-B";
+    private static final String UNSET = "unset";
+    private static final int ENROLLED_ACCOUNTS = 64;
+
+    private FakeOkta fakeOkta;
+    private OktaHandler oktaHandler;
+    private MySessionHandlingAction action;
+
+    @BeforeAll
+    static void installObjectFactory() {
+        MontoyaStubs.installObjectFactory();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        fakeOkta = new FakeOkta();
+        oktaHandler = new OktaHandler(MontoyaStubs.api());
+        action = new MySessionHandlingAction(MontoyaStubs.api(), oktaHandler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        oktaHandler.shutdown();
+        fakeOkta.stop();
+    }
+
+    /**
+     * One thread keeps swapping the account between two secrets that inject into different
+     * headers. Every request must carry exactly one code, valid for that header's secret;
+     * anything else is a torn configuration.
+     */
+    @Test
+    void injectsCorrectCodesWhileAccountsAreSwapped() throws Exception {
+        String secretA = fakeOkta.newSecret();
+        String secretB = fakeOkta.newSecret();
+        OktaAccount accountA = account(secretA, HEADER_A);
+        OktaAccount accountB = account(secretB, HEADER_B);
+        oktaHandler.getAccountRegistry().put(accountA);
+
+        Map<String, String> headers = new TreeMap<>();
+        headers.put(AccountRegistry.MARKER_HEADER, ACCOUNT);
+        headers.put(HEADER_A, UNSET);
+        headers.put(HEADER_B, UNSET);
+        HttpRequest request = MontoyaStubs.request("app.example.com", "/login", headers);
+
+        LongAdder actions = new LongAdder();
+        LongAdder wrongCodes = new LongAdder();
+        LongAdder tornConfigs = new LongAdder();
+        long startNanos = System.nanoTime();
+        long deadline = System.currentTimeMillis() + SOAK_MILLIS;
+        ExecutorService swapper = Executors.newSingleThreadExecutor();
+        Future<?> swaps = swapper.submit(() -> {
+            boolean useA = true;
+            while (System.currentTimeMillis() < deadline) {
+                useA = !useA;
+                oktaHandler.getAccountRegistry().put(useA ? accountA : accountB);
+            }
+        });
+        runUntil(256, deadline, () -> {
+            HttpRequest result = action.performAction(MontoyaStubs.actionData(request)).request();
+            actions.increment();
+
+            String codeA = result.headerValue(HEADER_A);
+            String codeB = result.headerValue(HEADER_B);
+            boolean injectedA = !UNSET.equals(codeA);
+            boolean injectedB = !UNSET.equals(codeB);
+            if (injectedA == injectedB || result.hasHeader(AccountRegistry.MARKER_HEADER)) {
+                tornConfigs.increment();
+            } else if (fakeOkta.verify(injectedA ? secretA : secretB, injectedA ? codeA : codeB) == FakeOkta.Verdict.INVALID) {
+                // Replays are expected: every thread shares the window's code
+                wrongCodes.increment();
+            }
+        });
+        swaps.get();
+        swapper.shutdown();
+
+        double actionsPerSecond = actions.sum() / ((System.nanoTime() - startNanos) / 1e9);
+        double p99Micros = ((Number) ((Map<?, ?>) oktaHandler.getMetrics().snapshot().get("actionLatencyMicros")).get("p99")).doubleValue();
+        assertEquals(0, tornConfigs.sum(), "torn configurations");
+        assertEquals(0, wrongCodes.sum(), "wrong codes");
+        assertTrue(actions.sum() > 0, "no actions ran");
+        if (MAX_P99_MICROS > 0) {
+            assertTrue(p99Micros <= MAX_P99_MICROS, "p99 action latency " + p99Micros + " us exceeds " + MAX_P99_MICROS + " us");
+        }
+        if (MIN_ACTIONS_PER_SECOND > 0) {
+            assertTrue(actionsPerSecond >= MIN_ACTIONS_PER_SECOND,
+                    "throughput " + (long) actionsPerSecond + " actions/s is below " + MIN_ACTIONS_PER_SECOND);
+        }
+    }
+
+    /**
+     * Enrolls authenticators from 128 threads while accounts are saved from each result. Every
+     * secret must be the one the fake issued and yield an accepted code, and the domain keys
+     * must be fetched at most once.
+     */
+    @Test
+    void enrollsFromManyThreads() throws Exception {
+        OktaEnrollment enrollment = new OktaEnrollment(fakeOkta.transport());
+        AtomicLong tokens = new AtomicLong();
+        LongAdder failedEnrollments = new LongAdder();
+        runUntil(128, System.currentTimeMillis() + SOAK_MILLIS, () -> {
+            String token = "soak-" + tokens.incrementAndGet();
+            try {
+                String secret = enrollment.enroll("Soak", fakeOkta.qrUrl(token));
+                OktaConfig config = oktaHandler.configForSecret(oktaHandler.getConfig(), secret,
+                        TotpGenerator.Algorithm.SHA1, TotpGenerator.DEFAULT_DIGITS, TotpGenerator.DEFAULT_PERIOD_SECONDS);
+                oktaHandler.getAccountRegistry().put(new OktaAccount("enrolled-" + Math.floorMod(token.hashCode(), ENROLLED_ACCOUNTS),
+                        Collections.emptyList(), "", config));
+                if (!secret.equals(fakeOkta.issuedSecret(token)) || fakeOkta.verify(secret, config.currentCode()) != FakeOkta.Verdict.ACCEPTED) {
+                    failedEnrollments.increment();
+                }
+            } catch (Exception e) {
+                failedEnrollments.increment();
+            }
+        });
+
+        assertEquals(0, failedEnrollments.sum(), "failed enrollments");
+        assertEquals(0, fakeOkta.getRejectedEnrollments(), "rejected enrollments");
+        assertTrue(fakeOkta.getEnrollments() > 0, "no enrollments ran");
+        assertTrue(fakeOkta.getKeyFetches() <= 1, "domain keys fetched " + fakeOkta.getKeyFetches() + " times");
+    }
+
+    /**
+     * Every request that carries the target claims its own HOTP counter value, and requests without it
+     * claim none: the codes handed out are exactly those of the claimed range, each once.
+     */
+    @Test
+    void claimsEachHotpCounterValueOnce() throws Exception {
+        String secret = fakeOkta.newSecret();
+        oktaHandler.setHotpSecret(secret, TotpGenerator.Algorithm.SHA1, TotpGenerator.DEFAULT_DIGITS, 0);
+        oktaHandler.setInjectionTarget(InjectionTarget.Type.HEADER, HEADER);
+        HttpRequest request = MontoyaStubs.request("app.example.com", "/login", Collections.singletonMap(HEADER, UNSET));
+        HttpRequest miss = MontoyaStubs.request("app.example.com", "/login", Collections.emptyMap());
+
+        int threads = 64;
+        int requestsPerThread = 1_000;
+        Queue<String> codes = new ConcurrentLinkedQueue<>();
+        runTimes(threads, requestsPerThread, () -> {
+            // Requests without the header must not use up counter values
+            action.performAction(MontoyaStubs.actionData(miss));
+            codes.add(action.performAction(MontoyaStubs.actionData(request)).request().headerValue(HEADER));
+        });
+
+        int claims = threads * requestsPerThread;
+        TotpGenerator generator = TotpGenerator.fromBase32(secret, TotpGenerator.Algorithm.SHA1, TotpGenerator.DEFAULT_DIGITS,
+                TotpGenerator.DEFAULT_PERIOD_SECONDS);
+        // Codes of the range minus codes handed out; any leftover is a duplicate or skipped claim
+        Map<String, Integer> unclaimed = new HashMap<>();
+        for (int counter = 0; counter < claims; counter++) {
+            unclaimed.merge(generator.generate(counter), 1, Integer::sum);
+        }
+        for (String code : codes) {
+            unclaimed.merge(code, -1, Integer::sum);
+        }
+        unclaimed.values().removeIf(count -> count == 0);
+        assertEquals(0, unclaimed.size(), "codes claimed other than once: " + unclaimed.size());
+        assertEquals(claims, codes.size());
+        assertEquals(claims, oktaHandler.getConfig().getHotpCounter().getCounter());
+    }
+
+    /**
+     * With the reuse gate on, no window's code is handed out more often than the quota, even
+     * when far more threads want a code than one window allows.
+     */
+    @Test
+    void respectsReuseGateQuota() throws Exception {
+        int quota = 16;
+        int threads = 64;
+        String secret = fakeOkta.newSecret();
+        oktaHandler.setSharedSecret(secret, TotpGenerator.Algorithm.SHA1, TotpGenerator.DEFAULT_DIGITS, 1);
+        oktaHandler.setInjectionTarget(InjectionTarget.Type.HEADER, HEADER);
+        oktaHandler.setReuseGate(quota, threads, 10_000);
+        TotpGenerator generator = oktaHandler.getConfig().getTotpGenerator();
+        HttpRequest request = MontoyaStubs.request("app.example.com", "/login", Collections.singletonMap(HEADER, UNSET));
+
+        Map<Long, LongAdder> usesPerStep = new ConcurrentHashMap<>();
+        LongAdder unmatched = new LongAdder();
+        runTimes(threads, 1, () -> {
+            long firstStep = generator.timeStep(System.currentTimeMillis());
+            String code = action.performAction(MontoyaStubs.actionData(request)).request().headerValue(HEADER);
+            long lastStep = generator.timeStep(System.currentTimeMillis());
+            Long step = stepOf(generator, code, firstStep, lastStep);
+            if (step == null) {
+                unmatched.increment();
+            } else {
+                usesPerStep.computeIfAbsent(step, key -> new LongAdder()).increment();
+            }
+        });
+
+        assertEquals(0, unmatched.sum(), "requests without a valid code");
+        Map<Long, Long> uses = new HashMap<>();
+        usesPerStep.forEach((step, count) -> uses.put(step, count.sum()));
+        assertTrue(uses.values().stream().allMatch(count -> count <= quota), "uses per window " + uses);
+        assertEquals(threads, uses.values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    /**
+     * With a one second period, requests keep crossing window boundaries; each must carry the
+     * code of a window that was current while it ran.
+     */
+    @Test
+    void injectsCurrentCodeAcrossRollover() throws Exception {
+        String secret = fakeOkta.newSecret();
+        oktaHandler.setSharedSecret(secret, TotpGenerator.Algorithm.SHA1, TotpGenerator.DEFAULT_DIGITS, 1);
+        oktaHandler.setInjectionTarget(InjectionTarget.Type.HEADER, HEADER);
+        TotpGenerator generator = oktaHandler.getConfig().getTotpGenerator();
+        HttpRequest request = MontoyaStubs.request("app.example.com", "/login", Collections.singletonMap(HEADER, UNSET));
+
+        Set<Long> steps = ConcurrentHashMap.newKeySet();
+        LongAdder staleCodes = new LongAdder();
+        runUntil(64, System.currentTimeMillis() + Math.max(SOAK_MILLIS, 2_500), () -> {
+            long firstStep = generator.timeStep(System.currentTimeMillis());
+            String code = action.performAction(MontoyaStubs.actionData(request)).request().headerValue(HEADER);
+            long lastStep = generator.timeStep(System.currentTimeMillis());
+            Long step = stepOf(generator, code, firstStep, lastStep);
+            if (step == null) {
+                staleCodes.increment();
+            } else {
+                steps.add(step);
+            }
+        });
+
+        assertEquals(0, staleCodes.sum(), "codes outside the windows current during the request");
+        assertTrue(steps.size() >= 2, "no window boundary was crossed");
+    }
+
+    private OktaAccount account(String secret, String header) {
+        OktaConfig config = oktaHandler.configForSecret(OktaConfig.empty(), secret,
+                TotpGenerator.Algorithm.SHA1, TotpGenerator.DEFAULT_DIGITS, TotpGenerator.DEFAULT_PERIOD_SECONDS)
+                .withInjectionTarget(InjectionTarget.of(InjectionTarget.Type.HEADER, header));
+        return new OktaAccount(ACCOUNT, Collections.emptyList(), "", config);
+    }
+
+    private static Long stepOf(TotpGenerator generator, String code, long firstStep, long lastStep) {
+        for (long step = firstStep; step <= lastStep; step++) {
+            if (generator.generate(step).equals(code)) {
+                return step;
+            }
+        }
+        return null;
+    }
+
+    private static void runUntil(int threads, long deadlineMillis, Runnable task) throws Exception {
+        run(threads, () -> {
+            while (System.currentTimeMillis() < deadlineMillis) {
+                task.run();
+            }
+        });
+    }
+
+    private static void runTimes(int threads, int timesPerThread, Runnable task) throws Exception {
+        run(threads, () -> {
+            for (int i = 0; i < timesPerThread; i++) {
+                task.run();
+            }
+        });
+    }
+
+    private static void run(int threads, Runnable body) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(body));
+            }
+            // Rethrows the first failure of any thread
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
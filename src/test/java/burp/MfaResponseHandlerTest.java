@@ -0,0 +1,184 @@
+package burp;
+
+import burp.api.montoya.http.handler.HttpRequestToBeSent;
+import burp.api.montoya.http.message.params.HttpParameterType;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import burp.api.montoya.http.message.responses.HttpResponse;
+import okta.FakeOkta;
+import okta.OktaHandler;
+import okta.TotpGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives {@link MfaResponseHandler} the way Burp does, with the application and Okta played by
+ * {@link FakeOkta}: requests pass {@code handleHttpRequestToBeSent}, go to the fake over
+ * loopback, and their responses pass {@code handleHttpResponseReceived}.
+ */
+class MfaResponseHandlerTest {
+    private static final String APP_HOST = "app.example.test";
+    private static final String APP_PATH = "/app/home";
+    // Short enough that a second answer does not wait long for an unused code
+    private static final int PERIOD_SECONDS = 1;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private FakeOkta fakeOkta;
+    private OktaHandler oktaHandler;
+    private MfaResponseHandler handler;
+    private String secret;
+
+    @BeforeAll
+    static void installObjectFactory() {
+        MontoyaStubs.installObjectFactory();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        fakeOkta = new FakeOkta();
+        secret = fakeOkta.newSecret();
+        fakeOkta.enableIdx(secret, PERIOD_SECONDS);
+        oktaHandler = new OktaHandler(MontoyaStubs.api());
+        oktaHandler.setSharedSecret(secret, TotpGenerator.Algorithm.SHA1, TotpGenerator.DEFAULT_DIGITS, PERIOD_SECONDS);
+        oktaHandler.setMfaResponderEnabled(true);
+        handler = new MfaResponseHandler(MontoyaStubs.api(this::send), oktaHandler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        oktaHandler.shutdown();
+        fakeOkta.stop();
+    }
+
+    @Test
+    void answersChallengeAndReusesTheSession() {
+        HttpResponse first = exchange(FakeOkta.DOMAIN, Map.of("app", "1"));
+        assertEquals(200, first.statusCode());
+        assertTrue(first.bodyToString().contains("success"));
+        assertEquals(1, fakeOkta.getIdxChallenges());
+        // The answer carries the transaction cookie from the challenge and the request's own cookies
+        String answerCookies = fakeOkta.getIdxAnswerCookies().get(0);
+        assertTrue(answerCookies.contains(FakeOkta.TRANSACTION_COOKIE + "="), answerCookies);
+        assertTrue(answerCookies.contains("app=1"), answerCookies);
+
+        // The cached session gets later requests through without another challenge
+        HttpRequestToBeSent next = sent(FakeOkta.DOMAIN, Map.of("app", "1"));
+        assertNotNull(next.parameter(FakeOkta.SESSION_COOKIE, HttpParameterType.COOKIE));
+        // The deleted transaction cookie is not replayed
+        assertNull(next.parameter(FakeOkta.TRANSACTION_COOKIE, HttpParameterType.COOKIE));
+        assertEquals(200, received(next).statusCode());
+        assertEquals(1, fakeOkta.getIdxChallenges());
+        assertEquals(1, fakeOkta.getIdxAnswerCookies().size());
+    }
+
+    @Test
+    void answersAgainWhenChallengedDespiteTheSession() throws InterruptedException {
+        exchange(FakeOkta.DOMAIN, Collections.emptyMap());
+        String oldSession = sent(FakeOkta.DOMAIN, Collections.emptyMap()).parameter(FakeOkta.SESSION_COOKIE, HttpParameterType.COOKIE).value();
+
+        fakeOkta.endIdxSessions();
+        // The fake accepts each code once, as Okta does
+        Thread.sleep(PERIOD_SECONDS * 1000L + 100);
+        HttpResponse rechallenged = exchange(FakeOkta.DOMAIN, Collections.emptyMap());
+        assertEquals(200, rechallenged.statusCode());
+        assertEquals(2, fakeOkta.getIdxChallenges());
+
+        // A request still carrying the old session's value gets the new one
+        String newSession = sent(FakeOkta.DOMAIN, Map.of(FakeOkta.SESSION_COOKIE, oldSession))
+                .parameter(FakeOkta.SESSION_COOKIE, HttpParameterType.COOKIE).value();
+        assertNotEquals(oldSession, newSession);
+        // A value the user set on purpose is left alone
+        assertEquals("chosen", sent(FakeOkta.DOMAIN, Map.of(FakeOkta.SESSION_COOKIE, "chosen"))
+                .parameter(FakeOkta.SESSION_COOKIE, HttpParameterType.COOKIE).value());
+    }
+
+    @Test
+    void passesRejectionsThroughWithoutCachingASession() {
+        oktaHandler.setSharedSecret(fakeOkta.newSecret(), TotpGenerator.Algorithm.SHA1, TotpGenerator.DEFAULT_DIGITS,
+                TotpGenerator.DEFAULT_PERIOD_SECONDS);
+
+        HttpResponse response = exchange(FakeOkta.DOMAIN, Collections.emptyMap());
+        assertEquals(401, response.statusCode());
+        assertTrue(response.bodyToString().contains("Invalid code"));
+        assertEquals(1, fakeOkta.getRejectedIdxAnswers());
+        assertTrue(oktaHandler.getMfaSessionCache().isEmpty());
+    }
+
+    @Test
+    void keepsApplicationCookiesAwayFromASeparateOktaHost() {
+        oktaHandler.setMfaOktaHosts(List.of(FakeOkta.DOMAIN));
+
+        HttpResponse response = exchange(APP_HOST, Map.of("app", "1"));
+        assertEquals(200, response.statusCode());
+        String answerCookies = fakeOkta.getIdxAnswerCookies().get(0);
+        assertFalse(answerCookies.contains("app="), answerCookies);
+        assertFalse(answerCookies.contains(FakeOkta.TRANSACTION_COOKIE + "="), answerCookies);
+
+        // Okta's session cookie only goes back to Okta
+        assertNull(sent(APP_HOST, Collections.emptyMap()).parameter(FakeOkta.SESSION_COOKIE, HttpParameterType.COOKIE));
+        assertNotNull(sent(FakeOkta.DOMAIN, Collections.emptyMap()).parameter(FakeOkta.SESSION_COOKIE, HttpParameterType.COOKIE));
+    }
+
+    @Test
+    void ignoresChallengesFromUntrustedHosts() {
+        HttpResponse response = exchange(APP_HOST, Collections.emptyMap());
+        assertEquals(401, response.statusCode());
+        assertEquals(0, fakeOkta.getIdxAnswerCookies().size());
+        assertTrue(oktaHandler.getMfaSessionCache().isEmpty());
+    }
+
+    /**
+     * One request through the handler, the fake and back through the handler.
+     */
+    private HttpResponse exchange(String host, Map<String, String> cookies) {
+        return received(sent(host, cookies));
+    }
+
+    private HttpRequestToBeSent sent(String host, Map<String, String> cookies) {
+        return (HttpRequestToBeSent) handler.handleHttpRequestToBeSent(MontoyaStubs.requestToBeSent(host, APP_PATH, cookies)).request();
+    }
+
+    private HttpResponse received(HttpRequest request) {
+        return handler.handleHttpResponseReceived(MontoyaStubs.responseReceived(request, send(request))).response();
+    }
+
+    // Every host is served by the fake
+    private HttpResponse send(HttpRequest request) {
+        java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(URI.create(fakeOkta.local(request.url())));
+        String body = request.bodyToString();
+        builder.method(request.method(), body.isEmpty() ? BodyPublishers.noBody() : BodyPublishers.ofString(body));
+        for (String header : List.of("Cookie", "Content-Type", "Accept")) {
+            String value = request.headerValue(header);
+            if (value != null) {
+                builder.header(header, value);
+            }
+        }
+        try {
+            java.net.http.HttpResponse<String> response = client.send(builder.build(), BodyHandlers.ofString());
+            return MontoyaStubs.response(response.statusCode(), response.body(), response.headers().allValues("Set-Cookie"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
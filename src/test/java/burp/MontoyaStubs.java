@@ -0,0 +1,569 @@
+package burp;
+
+import burp.api.montoya.MontoyaApi;
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.core.ToolSource;
+import burp.api.montoya.core.ToolType;
+import burp.api.montoya.extension.ExtensionUnloadingHandler;
+import burp.api.montoya.http.Http;
+import burp.api.montoya.http.HttpService;
+import burp.api.montoya.http.handler.HttpRequestToBeSent;
+import burp.api.montoya.http.handler.HttpResponseReceived;
+import burp.api.montoya.http.handler.RequestToBeSentAction;
+import burp.api.montoya.http.handler.ResponseReceivedAction;
+import burp.api.montoya.http.message.ContentType;
+import burp.api.montoya.http.message.Cookie;
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.params.HttpParameter;
+import burp.api.montoya.http.message.params.HttpParameterType;
+import burp.api.montoya.http.message.params.ParsedHttpParameter;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import burp.api.montoya.http.message.responses.HttpResponse;
+import burp.api.montoya.http.sessions.ActionResult;
+import burp.api.montoya.http.sessions.SessionHandlingActionData;
+import burp.api.montoya.internal.MontoyaObjectFactory;
+import burp.api.montoya.internal.ObjectFactoryLocator;
+import burp.api.montoya.logging.Logging;
+import burp.api.montoya.persistence.Persistence;
+import burp.api.montoya.persistence.Preferences;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Minimal stand-ins for the Montoya interfaces touched by the tests and benchmarks. Montoya's static
+ * factories need a running Burp, so these are plain dynamic proxies that implement only the
+ * calls the hot paths make and fail loudly on anything else; {@link #installObjectFactory()}
+ * backs the few factories the session handling path calls.
+ */
+public final class MontoyaStubs {
+    private MontoyaStubs() {
+    }
+
+    public static MontoyaApi api() {
+        Logging logging = stub(Logging.class, (proxy, method, args) -> null);
+        Map<String, String> strings = new ConcurrentHashMap<>();
+        Map<String, Long> longs = new ConcurrentHashMap<>();
+        Preferences preferences = stub(Preferences.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getString":
+                    return strings.get((String) args[0]);
+                case "setString":
+                    return strings.put((String) args[0], (String) args[1]);
+                case "deleteString":
+                    return strings.remove((String) args[0]);
+                case "getLong":
+                    return longs.get((String) args[0]);
+                case "setLong":
+                    longs.put((String) args[0], (Long) args[1]);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        });
+        Persistence persistence = stub(Persistence.class, (proxy, method, args) -> {
+            if (method.getName().equals("preferences")) {
+                return preferences;
+            }
+            throw new UnsupportedOperationException(method.toString());
+        });
+        return stub(MontoyaApi.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "logging":
+                    return logging;
+                case "persistence":
+                    return persistence;
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+
+    /**
+     * Like {@link #api()}, but every other call succeeds: methods returning a Montoya interface
+     * return another lenient stub and the rest return null, false or zero. Enough to run
+     * {@link BurpExtender#initialize} outside Burp. Registered unloading handlers are added to
+     * {@code unloadingHandlers}.
+     */
+    public static MontoyaApi extensionApi(List<Runnable> unloadingHandlers) {
+        MontoyaApi api = api();
+        return stub(MontoyaApi.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "logging":
+                    return api.logging();
+                case "persistence":
+                    return api.persistence();
+                default:
+                    return lenient(method.getReturnType(), unloadingHandlers);
+            }
+        });
+    }
+
+    private static Object lenient(Class<?> type, List<Runnable> unloadingHandlers) {
+        if (type.isPrimitive()) {
+            // The zero value of the type
+            return type == void.class ? null : Array.get(Array.newInstance(type, 1), 0);
+        }
+        if (!type.isInterface() || !type.getName().startsWith("burp.api.montoya.")) {
+            return null;
+        }
+        return stub(type, (proxy, method, args) -> {
+            if (method.getName().equals("registerUnloadingHandler")) {
+                unloadingHandlers.add(((ExtensionUnloadingHandler) args[0])::extensionUnloaded);
+                return null;
+            }
+            return lenient(method.getReturnType(), unloadingHandlers);
+        });
+    }
+
+    /**
+     * A url-encoded request that supports body access as a String or as bytes, the paths taken
+     * by regex injection.
+     */
+    public static HttpRequest request(String body) {
+        return request(body.getBytes(StandardCharsets.ISO_8859_1), "application/x-www-form-urlencoded", ContentType.URL_ENCODED);
+    }
+
+    /**
+     * A request with the given body and Content-Type. Like Burp, {@code body()} hands out a copy.
+     */
+    public static HttpRequest request(byte[] body, String contentTypeHeader, ContentType contentType) {
+        return stub(HttpRequest.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "bodyToString":
+                    return new String(body, StandardCharsets.ISO_8859_1);
+                case "body":
+                    return byteArray(body.clone());
+                case "contentType":
+                    return contentType;
+                case "headerValue":
+                    return "Content-Type".equalsIgnoreCase((String) args[0]) ? contentTypeHeader : null;
+                case "withBody":
+                    if (args[0] instanceof String) {
+                        return request((String) args[0]);
+                    }
+                    if (args[0] instanceof ByteArray) {
+                        return request(((ByteArray) args[0]).getBytes(), contentTypeHeader, contentType);
+                    }
+                    throw new UnsupportedOperationException(method.toString());
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+
+    /**
+     * A ByteArray over {@code bytes} supporting the search, slicing and in-place writes of the
+     * body scanner. The array is shared, not copied.
+     */
+    public static ByteArray byteArray(byte[] bytes) {
+        return stub(ByteArray.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "length":
+                    return bytes.length;
+                case "getBytes":
+                    return bytes;
+                case "subArray":
+                    if (args.length == 2) {
+                        return byteArray(Arrays.copyOfRange(bytes, (int) args[0], (int) args[1]));
+                    }
+                    break;
+                case "setBytes":
+                    if (args[1] instanceof byte[]) {
+                        byte[] data = (byte[]) args[1];
+                        System.arraycopy(data, 0, bytes, (int) args[0], data.length);
+                        return null;
+                    }
+                    break;
+                case "indexOf":
+                    if (args.length == 1 && args[0] instanceof String) {
+                        return indexOf(bytes, ((String) args[0]).getBytes(StandardCharsets.ISO_8859_1), 0, bytes.length);
+                    }
+                    if (args.length == 4 && args[0] instanceof String) {
+                        return indexOf(bytes, ((String) args[0]).getBytes(StandardCharsets.ISO_8859_1), (int) args[2], (int) args[3]);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            throw new UnsupportedOperationException(method.toString());
+        });
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target, int from, int to) {
+        outer:
+        for (int i = Math.max(0, from); i <= to - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Points Montoya's static factories at stubs, so code that calls
+     * {@code ActionResult.actionResult(...)} runs outside Burp. Only the factories used on
+     * the session handling path, by {@code ByteArray.byteArray(byte[])} and by the MFA
+     * responder are implemented.
+     */
+    public static synchronized void installObjectFactory() {
+        if (ObjectFactoryLocator.FACTORY != null) {
+            return;
+        }
+        ObjectFactoryLocator.FACTORY = stub(MontoyaObjectFactory.class, (proxy, method, args) -> {
+            if (method.getName().equals("actionResult") && args.length == 1) {
+                HttpRequest request = (HttpRequest) args[0];
+                return stub(ActionResult.class, (resultProxy, resultMethod, resultArgs) -> {
+                    if (resultMethod.getName().equals("request")) {
+                        return request;
+                    }
+                    throw new UnsupportedOperationException(resultMethod.toString());
+                });
+            }
+            if (method.getName().equals("byteArray") && args.length == 1 && args[0] instanceof byte[]) {
+                return byteArray((byte[]) args[0]);
+            }
+            // The HTTP handler factories are matched by signature rather than by name
+            Class<?> type = method.getReturnType();
+            if (type == HttpRequest.class && args.length == 1 && args[0] instanceof String) {
+                return outgoingRequest((String) args[0], "GET", new TreeMap<>(String.CASE_INSENSITIVE_ORDER), "");
+            }
+            if (type == HttpParameter.class && args.length == 2 && args[0] instanceof String && args[1] instanceof String) {
+                return cookieParameter((String) args[0], (String) args[1]);
+            }
+            if (type == RequestToBeSentAction.class && args.length == 1) {
+                return stub(RequestToBeSentAction.class, (actionProxy, actionMethod, actionArgs) -> {
+                    if (actionMethod.getName().equals("request")) {
+                        return args[0];
+                    }
+                    throw new UnsupportedOperationException(actionMethod.toString());
+                });
+            }
+            if (type == ResponseReceivedAction.class && args.length == 1) {
+                return stub(ResponseReceivedAction.class, (actionProxy, actionMethod, actionArgs) -> {
+                    if (actionMethod.getName().equals("response")) {
+                        return args[0];
+                    }
+                    throw new UnsupportedOperationException(actionMethod.toString());
+                });
+            }
+            throw new UnsupportedOperationException(method.toString());
+        });
+    }
+
+    public static SessionHandlingActionData actionData(HttpRequest request) {
+        return stub(SessionHandlingActionData.class, (proxy, method, args) -> {
+            if (method.getName().equals("request")) {
+                return request;
+            }
+            throw new UnsupportedOperationException(method.toString());
+        });
+    }
+
+    /**
+     * A GET request with the given headers, supporting the header reads and updates made by
+     * header injection and the account marker. Header names are case-insensitive.
+     */
+    public static HttpRequest request(String host, String path, Map<String, String> headers) {
+        Map<String, String> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        copy.putAll(headers);
+        HttpService service = service(host);
+        return stub(HttpRequest.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "httpService":
+                    return service;
+                case "method":
+                    return "GET";
+                case "path":
+                case "pathWithoutQuery":
+                    return path;
+                case "hasHeader":
+                    if (args.length == 1 && args[0] instanceof String) {
+                        return copy.containsKey((String) args[0]);
+                    }
+                    break;
+                case "headerValue":
+                    return copy.get((String) args[0]);
+                case "withUpdatedHeader":
+                    if (args.length == 2) {
+                        Map<String, String> updated = new TreeMap<>(copy);
+                        updated.put((String) args[0], (String) args[1]);
+                        return request(host, path, updated);
+                    }
+                    break;
+                case "withRemovedHeader":
+                    if (args[0] instanceof String) {
+                        Map<String, String> updated = new TreeMap<>(copy);
+                        updated.remove((String) args[0]);
+                        return request(host, path, updated);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            throw new UnsupportedOperationException(method.toString());
+        });
+    }
+
+    /**
+     * Like {@link #api()}, with {@code http().sendRequest} answered by {@code sender}.
+     */
+    public static MontoyaApi api(Function<HttpRequest, HttpResponse> sender) {
+        MontoyaApi api = api();
+        Http http = stub(Http.class, (proxy, method, args) -> {
+            if (method.getName().equals("sendRequest") && args.length == 1) {
+                HttpRequest request = (HttpRequest) args[0];
+                HttpResponse response = sender.apply(request);
+                return stub(HttpRequestResponse.class, (resultProxy, resultMethod, resultArgs) -> {
+                    switch (resultMethod.getName()) {
+                        case "request":
+                            return request;
+                        case "response":
+                            return response;
+                        case "hasResponse":
+                            return response != null;
+                        default:
+                            throw new UnsupportedOperationException(resultMethod.toString());
+                    }
+                });
+            }
+            throw new UnsupportedOperationException(method.toString());
+        });
+        return stub(MontoyaApi.class, (proxy, method, args) -> {
+            if (method.getName().equals("http")) {
+                return http;
+            }
+            return method.invoke(api, args);
+        });
+    }
+
+    /**
+     * An in-scope GET request from the proxy carrying {@code cookies}, supporting the cookie
+     * reads and updates of the MFA responder.
+     */
+    public static HttpRequestToBeSent requestToBeSent(String host, String path, Map<String, String> cookies) {
+        Map<String, String> copy = new LinkedHashMap<>(cookies);
+        HttpService service = service(host);
+        return stub(HttpRequestToBeSent.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "httpService":
+                    return service;
+                case "method":
+                    return "GET";
+                case "url":
+                    return "https://" + host + path;
+                case "path":
+                case "pathWithoutQuery":
+                    return path;
+                case "isInScope":
+                    return true;
+                case "toolSource":
+                    return toolSource();
+                case "bodyToString":
+                    return "";
+                case "headerValue":
+                    if ("Cookie".equalsIgnoreCase((String) args[0])) {
+                        return copy.isEmpty() ? null : copy.entrySet().stream()
+                                .map(cookie -> cookie.getKey() + "=" + cookie.getValue())
+                                .collect(Collectors.joining("; "));
+                    }
+                    return null;
+                case "parameter":
+                    if (args[1] == HttpParameterType.COOKIE && copy.containsKey((String) args[0])) {
+                        return cookieParameter((String) args[0], copy.get((String) args[0]));
+                    }
+                    return null;
+                case "parameters":
+                    if (args.length == 1 && args[0] == HttpParameterType.COOKIE) {
+                        List<ParsedHttpParameter> parameters = new ArrayList<>();
+                        copy.forEach((name, value) -> parameters.add(cookieParameter(name, value)));
+                        return parameters;
+                    }
+                    break;
+                case "withAddedParameters":
+                case "withUpdatedParameters":
+                    if (args[0] instanceof HttpParameter[]) {
+                        Map<String, String> updated = new LinkedHashMap<>(copy);
+                        for (HttpParameter parameter : (HttpParameter[]) args[0]) {
+                            updated.put(parameter.name(), parameter.value());
+                        }
+                        return requestToBeSent(host, path, updated);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            throw new UnsupportedOperationException(method.toString());
+        });
+    }
+
+    /**
+     * A response with a JSON body; {@code setCookies} are Set-Cookie header values.
+     */
+    public static HttpResponse response(int statusCode, String body, List<String> setCookies) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        List<Cookie> cookies = new ArrayList<>();
+        for (String setCookie : setCookies) {
+            for (HttpCookie parsed : HttpCookie.parse("Set-Cookie: " + setCookie)) {
+                cookies.add(cookie(parsed));
+            }
+        }
+        return stub(HttpResponse.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "statusCode":
+                    return (short) statusCode;
+                case "body":
+                    return byteArray(bytes.clone());
+                case "bodyToString":
+                    return body;
+                case "cookies":
+                    return cookies;
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+
+    /**
+     * {@code response} as received by an HTTP handler for {@code initiatingRequest}.
+     */
+    public static HttpResponseReceived responseReceived(HttpRequest initiatingRequest, HttpResponse response) {
+        return stub(HttpResponseReceived.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "initiatingRequest":
+                    return initiatingRequest;
+                case "toolSource":
+                    return toolSource();
+                default:
+                    return method.invoke(response, args);
+            }
+        });
+    }
+
+    // What HttpRequest.httpRequestFromUrl(...) and its with... methods build
+    private static HttpRequest outgoingRequest(String url, String httpMethod, Map<String, String> headers, String body) {
+        HttpService service = service(URI.create(url).getHost());
+        return stub(HttpRequest.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "url":
+                    return url;
+                case "method":
+                    return httpMethod;
+                case "httpService":
+                    return service;
+                case "headerValue":
+                    return headers.get((String) args[0]);
+                case "bodyToString":
+                    return body;
+                case "withMethod":
+                    return outgoingRequest(url, (String) args[0], headers, body);
+                case "withHeader":
+                    if (args.length == 2) {
+                        Map<String, String> updated = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                        updated.putAll(headers);
+                        updated.put((String) args[0], (String) args[1]);
+                        return outgoingRequest(url, httpMethod, updated, body);
+                    }
+                    break;
+                case "withBody":
+                    if (args[0] instanceof String) {
+                        return outgoingRequest(url, httpMethod, headers, (String) args[0]);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            throw new UnsupportedOperationException(method.toString());
+        });
+    }
+
+    private static ParsedHttpParameter cookieParameter(String name, String value) {
+        return stub(ParsedHttpParameter.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "name":
+                    return name;
+                case "value":
+                    return value;
+                case "type":
+                    return HttpParameterType.COOKIE;
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+
+    private static Cookie cookie(HttpCookie parsed) {
+        // Max-Age=0 deletes a cookie, which Burp reports as an expiry in the past
+        long maxAge = parsed.getMaxAge();
+        Optional<ZonedDateTime> expiration = maxAge < 0 ? Optional.empty()
+                : Optional.of(maxAge == 0 ? Instant.EPOCH.atZone(ZoneOffset.UTC) : ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(maxAge));
+        return stub(Cookie.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "name":
+                    return parsed.getName();
+                case "value":
+                    return parsed.getValue();
+                case "domain":
+                    return parsed.getDomain();
+                case "path":
+                    return parsed.getPath();
+                case "expiration":
+                    return expiration;
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+
+    private static ToolSource toolSource() {
+        return stub(ToolSource.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "toolType":
+                    return ToolType.PROXY;
+                case "isFromTool":
+                    return Arrays.asList((ToolType[]) args[0]).contains(ToolType.PROXY);
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+
+    private static HttpService service(String host) {
+        return stub(HttpService.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "host":
+                    return host;
+                case "port":
+                    return 443;
+                case "secure":
+                    return true;
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(MontoyaStubs.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+}
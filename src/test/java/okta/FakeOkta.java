@@ -0,0 +1,309 @@
+package okta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for the parts of Okta the extension talks to. It serves
+ * {@code /oauth2/v1/keys} and {@code /idp/authenticators} on loopback, issuing a fresh secret
+ * per enrollment, and verifies TOTP codes the way Okta does: current window plus or minus
+ * one, and each window's code accepted only once per secret.
+ * <p>
+ * After {@link #enableIdx(String)} it also plays an application behind Okta Identity Engine:
+ * {@code /app} answers requests without a live {@code sid} cookie with an IDX TOTP challenge,
+ * and {@code /idp/idx/challenge/answer} checks the code and sets a new {@code sid}.
+ */
+public class FakeOkta {
+    public static final String DOMAIN = "fake.okta.test";
+    public static final String AUTHENTICATOR_ID = "fake-authenticator";
+    public static final String KID = "fake-kid";
+    public static final String IDX_ANSWER_PATH = "/idp/idx/challenge/answer";
+    public static final String SESSION_COOKIE = "sid";
+    public static final String TRANSACTION_COOKIE = "idx";
+
+    public enum Verdict {
+        ACCEPTED,
+        REPLAYED,
+        INVALID
+    }
+
+    private static final String BASE32_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+    private static final String KEYS_BODY = "{\"keys\":[{\"kid\":\"" + KID + "\",\"n\":\"fake-modulus\",\"e\":\"AQAB\"}]}";
+
+    static {
+        // Same delayed-ACK stall as in TotpServer
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SecureRandom random = new SecureRandom();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "fake-okta");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, String> issuedSecrets = new ConcurrentHashMap<>();
+    private final Map<String, TotpGenerator> generators = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> acceptedSteps = new ConcurrentHashMap<>();
+    private final LongAdder keyFetches = new LongAdder();
+    private final LongAdder enrollments = new LongAdder();
+    private final LongAdder rejectedEnrollments = new LongAdder();
+    private volatile String idxSecret;
+    private final Set<String> idxTransactions = ConcurrentHashMap.newKeySet();
+    private final Set<String> idxSessions = ConcurrentHashMap.newKeySet();
+    private final Queue<String> idxAnswerCookies = new ConcurrentLinkedQueue<>();
+    private final LongAdder idxChallenges = new LongAdder();
+    private final LongAdder rejectedIdxAnswers = new LongAdder();
+
+    public FakeOkta() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/oauth2/v1/keys", this::handleKeys);
+        server.createContext("/idp/authenticators", this::handleAuthenticators);
+        server.createContext("/app", this::handleApp);
+        server.createContext(IDX_ANSWER_PATH, this::handleIdxAnswer);
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sends enrollment traffic for {@link #DOMAIN} to this server instead of the network.
+     */
+    public HttpTransport transport() {
+        JdkHttpTransport delegate = new JdkHttpTransport();
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        return (method, url, headers, body) -> delegate.send(method, url.replace("https://" + DOMAIN, base), headers, body);
+    }
+
+    /**
+     * @param token the enrollment token; each should be used once
+     */
+    public String qrUrl(String token) {
+        return "oktaverify://user@" + DOMAIN + "/enroll?t=" + token + "&f=" + AUTHENTICATOR_ID + "&issuer=" + DOMAIN;
+    }
+
+    public String newSecret() {
+        StringBuilder secret = new StringBuilder(32);
+        for (int i = 0; i < 32; i++) {
+            secret.append(BASE32_ALPHABET.charAt(random.nextInt(BASE32_ALPHABET.length())));
+        }
+        return secret.toString();
+    }
+
+    /**
+     * @return the secret issued for an enrollment token, or null if it was never enrolled
+     */
+    public String issuedSecret(String token) {
+        return issuedSecrets.get(token);
+    }
+
+    /**
+     * @return {@code url} with its scheme and host replaced by this server's loopback address
+     */
+    public String local(String url) {
+        URI uri = URI.create(url);
+        return "http://127.0.0.1:" + server.getAddress().getPort() + uri.getRawPath()
+                + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+    }
+
+    /**
+     * Starts challenging {@code /app} requests for a TOTP of {@code secret}.
+     */
+    public void enableIdx(String secret) {
+        enableIdx(secret, TotpGenerator.DEFAULT_PERIOD_SECONDS);
+    }
+
+    /**
+     * Like {@link #enableIdx(String)}, with codes that change every {@code periodSeconds}, so
+     * tests can answer more than once without waiting for a 30 s window.
+     */
+    public void enableIdx(String secret, int periodSeconds) {
+        generators.put(secret, TotpGenerator.fromBase32(secret, TotpGenerator.Algorithm.SHA1, TotpGenerator.DEFAULT_DIGITS, periodSeconds));
+        idxSecret = secret;
+    }
+
+    /**
+     * Ends every IDX session, so the next {@code /app} request is challenged again.
+     */
+    public void endIdxSessions() {
+        idxSessions.clear();
+    }
+
+    /**
+     * @return the Cookie header of each answer received, in order; empty strings for none
+     */
+    public List<String> getIdxAnswerCookies() {
+        return new ArrayList<>(idxAnswerCookies);
+    }
+
+    public long getIdxChallenges() {
+        return idxChallenges.sum();
+    }
+
+    public long getRejectedIdxAnswers() {
+        return rejectedIdxAnswers.sum();
+    }
+
+    public Verdict verify(String secret, String code) {
+        TotpGenerator generator = generators.computeIfAbsent(secret, key ->
+                TotpGenerator.fromBase32(key, TotpGenerator.Algorithm.SHA1, TotpGenerator.DEFAULT_DIGITS, TotpGenerator.DEFAULT_PERIOD_SECONDS));
+        long step = generator.timeStep(System.currentTimeMillis());
+        for (long candidate = step - 1; candidate <= step + 1; candidate++) {
+            if (generator.generate(candidate).equals(code)) {
+                Set<Long> accepted = acceptedSteps.computeIfAbsent(secret, key -> ConcurrentHashMap.newKeySet());
+                return accepted.add(candidate) ? Verdict.ACCEPTED : Verdict.REPLAYED;
+            }
+        }
+        return Verdict.INVALID;
+    }
+
+    public long getKeyFetches() {
+        return keyFetches.sum();
+    }
+
+    public long getEnrollments() {
+        return enrollments.sum();
+    }
+
+    public long getRejectedEnrollments() {
+        return rejectedEnrollments.sum();
+    }
+
+    private void handleKeys(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            keyFetches.increment();
+            respond(exchange, 200, KEYS_BODY);
+        }
+    }
+
+    private void handleAuthenticators(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            String token = authorization != null && authorization.startsWith("OTDT ") ? authorization.substring(5) : null;
+            if (!"POST".equals(exchange.getRequestMethod()) || token == null
+                    || !AUTHENTICATOR_ID.equals(body.path("authenticatorId").asText())
+                    || !KID.equals(body.path("device").path("clientInstanceKey").path("kid").asText())) {
+                rejectedEnrollments.increment();
+                respond(exchange, 400, "{\"errorSummary\":\"Invalid enrollment\"}");
+                return;
+            }
+
+            // Enrollment tokens are single use
+            String secret = newSecret();
+            if (issuedSecrets.putIfAbsent(token, secret) != null) {
+                rejectedEnrollments.increment();
+                respond(exchange, 401, "{\"errorSummary\":\"Token already used\"}");
+                return;
+            }
+            enrollments.increment();
+            respond(exchange, 200, "{\"methods\":[{\"type\":\"totp\",\"sharedSecret\":\"" + secret + "\"}]}");
+        }
+    }
+
+    private void handleApp(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String session = cookie(exchange, SESSION_COOKIE);
+            if (session != null && idxSessions.contains(session)) {
+                respond(exchange, 200, "{\"user\":{\"id\":\"fake-user\"}}");
+                return;
+            }
+
+            idxChallenges.increment();
+            String transaction = newSecret();
+            idxTransactions.add(transaction);
+            exchange.getResponseHeaders().add("Set-Cookie", TRANSACTION_COOKIE + "=" + transaction + "; Path=/; Secure; HttpOnly");
+            respond(exchange, 401, challengeBody("https://" + DOMAIN + IDX_ANSWER_PATH, transaction));
+        }
+    }
+
+    private void handleIdxAnswer(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String cookies = exchange.getRequestHeaders().getFirst("Cookie");
+            idxAnswerCookies.add(cookies != null ? cookies : "");
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            String transaction = body.path("stateHandle").asText();
+            String code = body.path("credentials").path("totp").asText();
+            String secret = idxSecret;
+            if (!"POST".equals(exchange.getRequestMethod()) || secret == null || !idxTransactions.contains(transaction)
+                    || verify(secret, code) != Verdict.ACCEPTED) {
+                rejectedIdxAnswers.increment();
+                respond(exchange, 401, "{\"stateHandle\":\"" + transaction + "\",\"messages\":{\"value\":"
+                        + "[{\"class\":\"ERROR\",\"message\":\"Invalid code. Try again.\"}]}}");
+                return;
+            }
+
+            // Transactions are single use; Okta deletes their cookie by expiring it
+            idxTransactions.remove(transaction);
+            String session = newSecret();
+            idxSessions.add(session);
+            exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "=" + session + "; Path=/; Secure; HttpOnly");
+            exchange.getResponseHeaders().add("Set-Cookie", TRANSACTION_COOKIE + "=; Path=/; Max-Age=0");
+            respond(exchange, 200, "{\"success\":{\"name\":\"success-redirect\",\"href\":\"https://" + DOMAIN + "/app\"}}");
+        }
+    }
+
+    private static String challengeBody(String href, String stateHandle) {
+        return "{"
+                + "\"stateHandle\":\"" + stateHandle + "\","
+                + "\"currentAuthenticatorEnrollment\":{\"value\":{\"type\":\"app\",\"key\":\"okta_verify\"}},"
+                + "\"remediation\":{\"type\":\"array\",\"value\":[{"
+                + "\"rel\":[\"create-form\"],\"name\":\"challenge-authenticator\","
+                + "\"href\":\"" + href + "\",\"method\":\"POST\","
+                + "\"accepts\":\"application/json; okta-version=1.0.0\","
+                + "\"value\":["
+                + "{\"name\":\"credentials\",\"type\":\"object\",\"form\":{\"value\":[{\"name\":\"totp\",\"label\":\"Enter code\"}]},\"required\":true},"
+                + "{\"name\":\"stateHandle\",\"required\":true,\"value\":\"" + stateHandle + "\",\"visible\":false,\"mutable\":false}"
+                + "]}]}}";
+    }
+
+    private static String cookie(HttpExchange exchange, String name) {
+        List<String> headers = exchange.getRequestHeaders().get("Cookie");
+        if (headers == null) {
+            return null;
+        }
+        for (String header : headers) {
+            for (String pair : header.split(";")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0 && pair.substring(0, equals).trim().equals(name)) {
+                    return pair.substring(equals + 1).trim();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}